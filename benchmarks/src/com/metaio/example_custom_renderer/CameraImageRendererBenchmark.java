@@ -0,0 +1,99 @@
+package com.metaio.example_custom_renderer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.metaio.sdk.jni.ECOLOR_FORMAT;
+import com.metaio.sdk.jni.ESCREEN_ROTATION;
+import com.metaio.sdk.jni.ImageStruct;
+
+/**
+ * Camera image path: copy/conversion of SDK frames in updateFrame() and the commands of draw()
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CameraImageRendererBenchmark
+{
+	@Param({"480p", "720p", "1080p"})
+	public String resolution;
+
+	@Param({"ECF_YUV420SP", "ECF_A8R8G8B8"})
+	public String colorFormat;
+
+	@Param({"RGBA", "RGB565"})
+	public String uploadFormat;
+
+	private ImageStruct mFrame;
+
+	private HeadlessGL mGL;
+
+	private CameraImageRenderer mRenderer;
+
+	@Setup
+	public void setUp()
+	{
+		mFrame = Resolution.parse(resolution).createFrame(ECOLOR_FORMAT.valueOf(colorFormat));
+		mGL = new HeadlessGL();
+
+		mRenderer = new CameraImageRenderer(mGL.gl, mGL.meshes, mGL.resources);
+		mRenderer.setUploadFormat(CameraImageRenderer.UploadFormat.valueOf(uploadFormat));
+		mRenderer.setViewportSize(Resolution.VIEWPORT_WIDTH, Resolution.VIEWPORT_HEIGHT);
+
+		// The first frame only requests the setup that draw() creates, the second one is drawn
+		for (int i = 0; i < 2; ++i)
+		{
+			mRenderer.updateFrame(mFrame);
+			mRenderer.draw(mGL.gl, ESCREEN_ROTATION.ESCREEN_ROTATION_0);
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		mRenderer.release();
+	}
+
+	/**
+	 * Camera thread: copy and convert a frame into the frame ring
+	 */
+	@Benchmark
+	public void updateFrame()
+	{
+		mRenderer.updateFrame(mFrame);
+	}
+
+	/**
+	 * GL thread without a new camera frame: only the commands that draw the camera quad
+	 */
+	@Benchmark
+	public void draw()
+	{
+		mRenderer.draw(mGL.gl, ESCREEN_ROTATION.ESCREEN_ROTATION_0);
+	}
+
+	/**
+	 * Both threads' work for one new camera frame, including the texture upload
+	 */
+	@Benchmark
+	public void updateAndDraw()
+	{
+		mRenderer.updateFrame(mFrame);
+		mRenderer.draw(mGL.gl, ESCREEN_ROTATION.ESCREEN_ROTATION_0);
+	}
+}
@@ -0,0 +1,184 @@
+package com.metaio.example_custom_renderer;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.metaio.sdk.jni.ECOLOR_FORMAT;
+import com.metaio.sdk.jni.ESCREEN_ROTATION;
+import com.metaio.sdk.jni.ImageStruct;
+import com.metaio.sdk.jni.TrackingValues;
+
+/**
+ * One whole frame the way MainActivity.onDrawFrame() composes it: a new camera frame, then per
+ * target the tracking state, pose prediction, playback hysteresis, culling and the overlay. The
+ * overlays are drawn as cubes, the video textures need a device.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositionBenchmark
+{
+	/**
+	 * Frame time of a 30 Hz camera
+	 */
+	private static final long FRAME_NANOS = 33333333;
+
+	/**
+	 * Targets lose tracking for one frame in this many, which the playback hysteresis hides
+	 */
+	private static final int LOST_INTERVAL = 50;
+
+	private static final float[] OVERLAY_CORNERS = {
+		-40, -40, 40,
+		 40, -40, 40,
+		-40,  40, 40,
+		 40,  40, 40
+	};
+
+	@Param({"480p", "720p", "1080p"})
+	public String resolution;
+
+	@Param({"1", "4"})
+	public int targets;
+
+	private Cube mCube;
+
+	private ImageStruct mFrame;
+
+	private long mFrameCount;
+
+	private HeadlessGL mGL;
+
+	private final float[] mModelMatrix = new float[16];
+
+	private final OverlayCuller mOverlayCuller = new OverlayCuller(OVERLAY_CORNERS);
+
+	private PlaybackController[] mPlaybackControllers;
+
+	private PosePredictor[] mPosePredictors;
+
+	private final float[] mProjectionMatrix = new float[16];
+
+	private CameraImageRenderer mRenderer;
+
+	private TrackingValues[] mTrackingValues;
+
+	@Setup
+	public void setUp()
+	{
+		mFrame = Resolution.parse(resolution).createFrame(ECOLOR_FORMAT.ECF_YUV420SP);
+		mGL = new HeadlessGL();
+
+		mRenderer = new CameraImageRenderer(mGL.gl, mGL.meshes, mGL.resources);
+		mRenderer.setViewportSize(Resolution.VIEWPORT_WIDTH, Resolution.VIEWPORT_HEIGHT);
+		for (int i = 0; i < 2; ++i)
+		{
+			mRenderer.updateFrame(mFrame);
+			mRenderer.draw(mGL.gl, ESCREEN_ROTATION.ESCREEN_ROTATION_0);
+		}
+
+		mCube = new Cube(mGL.meshes);
+
+		// Perspective projection with a field of view of 90 degrees
+		final float near = 10, far = 10000;
+		mProjectionMatrix[0] = 1;
+		mProjectionMatrix[5] = 1;
+		mProjectionMatrix[10] = (far + near) / (near - far);
+		mProjectionMatrix[11] = -1;
+		mProjectionMatrix[14] = 2 * far * near / (near - far);
+		mOverlayCuller.setViewportSize(Resolution.VIEWPORT_WIDTH, Resolution.VIEWPORT_HEIGHT);
+		mOverlayCuller.setProjection(mProjectionMatrix, mRenderer.getScaleX(), mRenderer.getScaleY());
+
+		mTrackingValues = new TrackingValues[targets];
+		mPosePredictors = new PosePredictor[targets];
+		mPlaybackControllers = new PlaybackController[targets];
+		for (int i = 0; i < targets; ++i)
+		{
+			mTrackingValues[i] = new TrackingValues();
+			mPosePredictors[i] = new PosePredictor();
+			mPlaybackControllers[i] = new PlaybackController();
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		mRenderer.release();
+	}
+
+	@Benchmark
+	public void frame()
+	{
+		final long now = ++mFrameCount * FRAME_NANOS;
+		final GL10 gl = mGL.gl;
+
+		mRenderer.updateFrame(mFrame, now);
+		mRenderer.draw(gl, ESCREEN_ROTATION.ESCREEN_ROTATION_0);
+
+		gl.glMatrixMode(GL10.GL_PROJECTION);
+		gl.glLoadMatrixf(mProjectionMatrix, 0);
+		gl.glMatrixMode(GL10.GL_MODELVIEW);
+
+		for (int i = 0; i < targets; ++i)
+		{
+			mTrackingValues[i].setTrackingState((mFrameCount + i) % LOST_INTERVAL != 0);
+			final boolean tracked = mTrackingValues[i].isTrackingState();
+			if (tracked)
+			{
+				// Target slowly moving in front of the camera
+				getPose(i, now, mModelMatrix);
+				mPosePredictors[i].addPose(now, mModelMatrix);
+				mPosePredictors[i].predict(now + FRAME_NANOS, mModelMatrix);
+			}
+
+			final PlaybackController playbackController = mPlaybackControllers[i];
+			playbackController.update(tracked, mModelMatrix, now, now);
+			if (!playbackController.isVisible() || !mOverlayCuller.isVisible(playbackController.getPose(), 0))
+				continue;
+
+			gl.glLoadIdentity();
+			gl.glMultMatrixf(playbackController.getPose(), 0);
+			gl.glTranslatef(0, 0, 40);
+			gl.glScalef(40, 40, 40);
+			mCube.render(gl);
+		}
+	}
+
+	private static void getPose(int target, long timeNanos, float[] result)
+	{
+		final double angle = (timeNanos / 1e9 + target) * 0.5;
+		result[0] = (float)Math.cos(angle);
+		result[1] = (float)Math.sin(angle);
+		result[2] = 0;
+		result[3] = 0;
+		result[4] = -result[1];
+		result[5] = result[0];
+		result[6] = 0;
+		result[7] = 0;
+		result[8] = 0;
+		result[9] = 0;
+		result[10] = 1;
+		result[11] = 0;
+		result[12] = 100 * (target - 1);
+		result[13] = (float)(50 * Math.sin(angle));
+		result[14] = -500;
+		result[15] = 1;
+	}
+}
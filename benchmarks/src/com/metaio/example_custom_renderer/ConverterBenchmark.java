@@ -0,0 +1,110 @@
+package com.metaio.example_custom_renderer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.metaio.sdk.jni.ECOLOR_FORMAT;
+
+/**
+ * Pixel conversions of the camera thread and the frame ring hand-over, without the renderer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConverterBenchmark
+{
+	@Param({"480p", "720p", "1080p"})
+	public String resolution;
+
+	@Param({"RGBA", "RGB565"})
+	public String uploadFormat;
+
+	private CameraImageRenderer.UploadFormat mFormat;
+
+	private FrameRing mFrames;
+
+	private int mHeight;
+
+	private RgbaConverter mRgbaConverter;
+
+	private ByteBuffer mRgbaImage;
+
+	private ByteBuffer mTexture;
+
+	private YuvConverter mYuvConverter;
+
+	private ByteBuffer mYuvImage;
+
+	private int mWidth;
+
+	@Setup
+	public void setUp()
+	{
+		final Resolution resolution = Resolution.parse(this.resolution);
+		mWidth = resolution.width;
+		mHeight = resolution.height;
+		mFormat = CameraImageRenderer.UploadFormat.valueOf(uploadFormat);
+
+		mYuvImage = resolution.createImage(ECOLOR_FORMAT.ECF_YUV420SP);
+		mRgbaImage = resolution.createImage(ECOLOR_FORMAT.ECF_A8R8G8B8);
+		mTexture = ByteBuffer.allocateDirect(mWidth * mHeight * mFormat.bytesPerPixel);
+
+		mYuvConverter = new YuvConverter();
+		mRgbaConverter = new RgbaConverter(mWidth);
+		mFrames = new FrameRing(mWidth * mHeight * mFormat.bytesPerPixel, FrameRing.DropPolicy.DROP_OLDEST);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		mYuvConverter.release();
+	}
+
+	@Benchmark
+	public ByteBuffer convertYuv()
+	{
+		mYuvConverter.convert(mYuvImage, mTexture, mWidth, mHeight, mFormat);
+		return mTexture;
+	}
+
+	/**
+	 * RGBA frame with the origin at the bottom, as some devices deliver them
+	 */
+	@Benchmark
+	public ByteBuffer convertRgbaFlipped()
+	{
+		mRgbaConverter.convert(mRgbaImage, mTexture, mHeight, mFormat, true);
+		return mTexture;
+	}
+
+	/**
+	 * Write, publish and consume one frame, the copy is what updateFrame() does for frames that
+	 * are already in the upload format
+	 */
+	@Benchmark
+	public ByteBuffer frameRing()
+	{
+		final ByteBuffer buffer = mFrames.beginWrite();
+		mTexture.clear();
+		buffer.put(mTexture);
+		mFrames.publish();
+		mFrames.consume();
+		return mFrames.getFrontBuffer();
+	}
+}
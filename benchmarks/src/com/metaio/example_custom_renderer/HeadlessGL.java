@@ -0,0 +1,28 @@
+package com.metaio.example_custom_renderer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * The GL wrapper chain of MainActivity (GLStateCache over GLRecorder) on a headless GLRecorder,
+ * with the registries the renderers are created with. Numbers include the recorder's dynamic
+ * proxy, so they are for comparing changes with each other, not for comparing with the device.
+ */
+final class HeadlessGL
+{
+	final GL10 gl;
+
+	final MeshRegistry meshes;
+
+	final GLRecorder recorder;
+
+	final GpuResourceRegistry resources;
+
+	HeadlessGL()
+	{
+		recorder = new GLRecorder(null);
+		gl = new GLStateCache(recorder.getGL());
+		resources = new GpuResourceRegistry();
+		meshes = new MeshRegistry(resources);
+		meshes.onSurfaceCreated(gl);
+	}
+}
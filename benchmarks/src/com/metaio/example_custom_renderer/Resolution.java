@@ -0,0 +1,61 @@
+package com.metaio.example_custom_renderer;
+
+import java.nio.ByteBuffer;
+
+import com.metaio.sdk.jni.ECOLOR_FORMAT;
+import com.metaio.sdk.jni.ImageStruct;
+
+/**
+ * Camera resolutions the benchmarks run at, selected with the JMH parameter "resolution"
+ */
+enum Resolution
+{
+	P480(640, 480),
+	P720(1280, 720),
+	P1080(1920, 1080);
+
+	/**
+	 * Viewport of all benchmarks, a 1080p display in landscape
+	 */
+	static final int VIEWPORT_WIDTH = 1920;
+
+	static final int VIEWPORT_HEIGHT = 1080;
+
+	final int width;
+
+	final int height;
+
+	private Resolution(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * @param name Parameter value, e.g. "720p"
+	 */
+	static Resolution parse(String name)
+	{
+		return valueOf("P" + name.substring(0, name.length() - 1));
+	}
+
+	/**
+	 * Fill a direct buffer with a camera image of this resolution, NV21 or RGBA
+	 */
+	ByteBuffer createImage(ECOLOR_FORMAT colorFormat)
+	{
+		final int size = colorFormat == ECOLOR_FORMAT.ECF_YUV420SP ? width * height * 3 / 2 : width * height * 4;
+		final ByteBuffer image = ByteBuffer.allocateDirect(size);
+		for (int i = 0; i < size; ++i)
+			image.put(i, (byte)(i * 31 + i / width));
+		return image;
+	}
+
+	/**
+	 * Camera frame as the metaio SDK delivers it to onNewCameraFrame()
+	 */
+	ImageStruct createFrame(ECOLOR_FORMAT colorFormat)
+	{
+		return new ImageStruct(createImage(colorFormat), width, height, colorFormat, true);
+	}
+}
@@ -0,0 +1,101 @@
+package com.metaio.example_custom_renderer;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Texture-coordinate math of the camera quad: the vertex/texture coordinate table of all four
+ * rotations, and the per-tile tables of camera images larger than the maximum texture size
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ViewportLayoutBenchmark
+{
+	@Param({"480p", "720p", "1080p"})
+	public String resolution;
+
+	@Param({"FILL", "LETTERBOX"})
+	public String scaleMode;
+
+	private final ViewportLayout mLayout = new ViewportLayout();
+
+	private Resolution mResolution;
+
+	private final FloatBuffer mTileTable = FloatBuffer.allocate(ViewportLayout.VERTEX_COUNT * ViewportLayout.FLOATS_PER_VERTEX);
+
+	private int mTextureHeight;
+
+	private int mTextureWidth;
+
+	@Setup
+	public void setUp()
+	{
+		mResolution = Resolution.parse(resolution);
+		mLayout.setScaleMode(ViewportLayout.ScaleMode.valueOf(scaleMode));
+
+		// Power of two textures like without NPOT support
+		mTextureWidth = Integer.highestOneBit(mResolution.width - 1) << 1;
+		mTextureHeight = Integer.highestOneBit(mResolution.height - 1) << 1;
+	}
+
+	/**
+	 * Recompute the table, as after a camera restart or viewport change
+	 */
+	@Benchmark
+	public FloatBuffer update()
+	{
+		mLayout.invalidate();
+		mLayout.update(mResolution.width, mResolution.height, mTextureWidth, mTextureHeight,
+			Resolution.VIEWPORT_WIDTH, Resolution.VIEWPORT_HEIGHT);
+		return mLayout.getTable();
+	}
+
+	/**
+	 * Per-frame check whether anything changed, which should be all a steady frame pays
+	 */
+	@Benchmark
+	public boolean updateUnchanged()
+	{
+		return mLayout.update(mResolution.width, mResolution.height, mTextureWidth, mTextureHeight,
+			Resolution.VIEWPORT_WIDTH, Resolution.VIEWPORT_HEIGHT);
+	}
+
+	/**
+	 * Tables of a camera image split into 2x2 tiles, for all rotations
+	 */
+	@Benchmark
+	public FloatBuffer computeTiles()
+	{
+		mLayout.invalidate();
+		mLayout.update(mResolution.width, mResolution.height, mResolution.width, mResolution.height,
+			Resolution.VIEWPORT_WIDTH, Resolution.VIEWPORT_HEIGHT);
+
+		for (int rotation = ViewportLayout.ROTATION_0; rotation <= ViewportLayout.ROTATION_270; ++rotation)
+		{
+			for (int tile = 0; tile < 4; ++tile)
+			{
+				final float u0 = 0.5f * (tile & 1);
+				final float v0 = 0.5f * (tile >> 1);
+				mTileTable.clear();
+				mLayout.computeTile(rotation, u0, v0, u0 + 0.5f, v0 + 0.5f, 1, 1, mTileTable);
+			}
+		}
+		return mTileTable;
+	}
+}
@@ -0,0 +1,46 @@
+package android.util;
+
+/**
+ * Host stand-in for android.util.Log, prints to the standard error stream. Only the methods used
+ * by the host-runnable classes are provided.
+ */
+public final class Log
+{
+	private Log()
+	{
+	}
+
+	public static int e(String tag, String msg)
+	{
+		return println("E", tag, msg, null);
+	}
+
+	public static int e(String tag, String msg, Throwable tr)
+	{
+		return println("E", tag, msg, tr);
+	}
+
+	public static int i(String tag, String msg)
+	{
+		return println("I", tag, msg, null);
+	}
+
+	private static int println(String priority, String tag, String msg, Throwable tr)
+	{
+		System.err.println(priority + "/" + tag + ": " + msg);
+		if (tr != null)
+			tr.printStackTrace();
+
+		return msg.length();
+	}
+
+	public static int w(String tag, String msg)
+	{
+		return println("W", tag, msg, null);
+	}
+
+	public static int w(String tag, String msg, Throwable tr)
+	{
+		return println("W", tag, msg, tr);
+	}
+}
@@ -0,0 +1,102 @@
+package android.util;
+
+import java.util.Arrays;
+
+/**
+ * Host stand-in for android.util.SparseArray: keys are kept sorted in an array and looked up by
+ * binary search, like the framework class. Only the methods used by the host-runnable classes
+ * are provided.
+ */
+public class SparseArray<E>
+{
+	private int[] mKeys;
+
+	private Object[] mValues;
+
+	private int mSize = 0;
+
+	public SparseArray()
+	{
+		this(10);
+	}
+
+	public SparseArray(int initialCapacity)
+	{
+		mKeys = new int[initialCapacity];
+		mValues = new Object[initialCapacity];
+	}
+
+	public void clear()
+	{
+		Arrays.fill(mValues, 0, mSize, null);
+		mSize = 0;
+	}
+
+	public E get(int key)
+	{
+		return get(key, null);
+	}
+
+	@SuppressWarnings("unchecked")
+	public E get(int key, E valueIfKeyNotFound)
+	{
+		final int i = Arrays.binarySearch(mKeys, 0, mSize, key);
+		return i < 0 ? valueIfKeyNotFound : (E)mValues[i];
+	}
+
+	public int indexOfKey(int key)
+	{
+		return Arrays.binarySearch(mKeys, 0, mSize, key);
+	}
+
+	public int keyAt(int index)
+	{
+		return mKeys[index];
+	}
+
+	public void put(int key, E value)
+	{
+		int i = Arrays.binarySearch(mKeys, 0, mSize, key);
+		if (i >= 0)
+		{
+			mValues[i] = value;
+			return;
+		}
+
+		i = ~i;
+		if (mSize == mKeys.length)
+		{
+			final int capacity = Math.max(4, mSize * 2);
+			mKeys = Arrays.copyOf(mKeys, capacity);
+			mValues = Arrays.copyOf(mValues, capacity);
+		}
+
+		System.arraycopy(mKeys, i, mKeys, i + 1, mSize - i);
+		System.arraycopy(mValues, i, mValues, i + 1, mSize - i);
+		mKeys[i] = key;
+		mValues[i] = value;
+		++mSize;
+	}
+
+	public void remove(int key)
+	{
+		final int i = Arrays.binarySearch(mKeys, 0, mSize, key);
+		if (i < 0)
+			return;
+
+		System.arraycopy(mKeys, i + 1, mKeys, i, mSize - i - 1);
+		System.arraycopy(mValues, i + 1, mValues, i, mSize - i - 1);
+		mValues[--mSize] = null;
+	}
+
+	public int size()
+	{
+		return mSize;
+	}
+
+	@SuppressWarnings("unchecked")
+	public E valueAt(int index)
+	{
+		return (E)mValues[index];
+	}
+}
@@ -0,0 +1,10 @@
+package com.metaio.example_custom_renderer;
+
+/**
+ * Host stand-in for the BuildConfig that the Android build generates into gen/. Host builds are
+ * debug builds.
+ */
+public final class BuildConfig
+{
+	public static final boolean DEBUG = true;
+}
@@ -0,0 +1,36 @@
+package com.metaio.sdk.jni;
+
+/**
+ * Host fake of the metaio SDK's color format enum, with the formats the app uses and the SWIG enum
+ * accessors. The values are not the SDK's, recordings must not be exchanged with device builds.
+ */
+public enum ECOLOR_FORMAT
+{
+	ECF_UNKNOWN(-1),
+	ECF_A8R8G8B8(2),
+	ECF_YUV420SP(9),
+	ECF_GRAY(11);
+
+	private final int swigValue;
+
+	private ECOLOR_FORMAT(int swigValue)
+	{
+		this.swigValue = swigValue;
+	}
+
+	public final int swigValue()
+	{
+		return swigValue;
+	}
+
+	public static ECOLOR_FORMAT swigToEnum(int swigValue)
+	{
+		for (ECOLOR_FORMAT format : values())
+		{
+			if (format.swigValue == swigValue)
+				return format;
+		}
+
+		throw new IllegalArgumentException("No enum " + ECOLOR_FORMAT.class + " with value " + swigValue);
+	}
+}
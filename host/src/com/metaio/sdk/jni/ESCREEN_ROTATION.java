@@ -0,0 +1,12 @@
+package com.metaio.sdk.jni;
+
+/**
+ * Host fake of the metaio SDK's screen rotation enum
+ */
+public enum ESCREEN_ROTATION
+{
+	ESCREEN_ROTATION_0,
+	ESCREEN_ROTATION_90,
+	ESCREEN_ROTATION_180,
+	ESCREEN_ROTATION_270
+}
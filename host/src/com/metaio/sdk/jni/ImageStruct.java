@@ -0,0 +1,69 @@
+package com.metaio.sdk.jni;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Host fake of the metaio SDK's camera frame, backed by a Java buffer instead of native memory.
+ * copyBufferToNioBuffer() copies like the SDK does, so that benchmarks include the copy.
+ */
+public class ImageStruct
+{
+	private final ByteBuffer mBuffer;
+
+	private final ECOLOR_FORMAT mColorFormat;
+
+	private final int mHeight;
+
+	private final boolean mOriginIsUpperLeft;
+
+	private final int mWidth;
+
+	/**
+	 * @param buffer Image data, its remaining bytes are the frame
+	 */
+	public ImageStruct(ByteBuffer buffer, int width, int height, ECOLOR_FORMAT colorFormat, boolean originIsUpperLeft)
+	{
+		mBuffer = buffer.duplicate();
+		mWidth = width;
+		mHeight = height;
+		mColorFormat = colorFormat;
+		mOriginIsUpperLeft = originIsUpperLeft;
+	}
+
+	/**
+	 * Copy the image data to the position of the given buffer, which is left unchanged
+	 */
+	public void copyBufferToNioBuffer(ByteBuffer buffer)
+	{
+		final ByteBuffer destination = buffer.duplicate();
+		final ByteBuffer source = mBuffer.duplicate();
+		if (source.remaining() > destination.remaining())
+			source.limit(source.position() + destination.remaining());
+		destination.put(source);
+	}
+
+	public int getBufferSize()
+	{
+		return mBuffer.remaining();
+	}
+
+	public ECOLOR_FORMAT getColorFormat()
+	{
+		return mColorFormat;
+	}
+
+	public int getHeight()
+	{
+		return mHeight;
+	}
+
+	public boolean getOriginIsUpperLeft()
+	{
+		return mOriginIsUpperLeft;
+	}
+
+	public int getWidth()
+	{
+		return mWidth;
+	}
+}
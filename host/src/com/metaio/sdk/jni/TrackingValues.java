@@ -0,0 +1,28 @@
+package com.metaio.sdk.jni;
+
+/**
+ * Host fake of the metaio SDK's tracking result of one coordinate system
+ */
+public class TrackingValues
+{
+	private boolean mTrackingState;
+
+	public TrackingValues()
+	{
+	}
+
+	public TrackingValues(boolean trackingState)
+	{
+		mTrackingState = trackingState;
+	}
+
+	public boolean isTrackingState()
+	{
+		return mTrackingState;
+	}
+
+	public void setTrackingState(boolean trackingState)
+	{
+		mTrackingState = trackingState;
+	}
+}
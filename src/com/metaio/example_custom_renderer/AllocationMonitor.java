@@ -0,0 +1,93 @@
+package com.metaio.example_custom_renderer;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Debug helper that counts the bytes allocated by the rendering thread inside measured sections of
+ * a frame and logs every frame exceeding the allocation budget once the warm-up period is over.
+ * It does not throw, that would end the GL thread and with it the app. Sections allow excluding
+ * metaio SDK calls, whose JNI wrapper objects are outside our control, so the check covers our own
+ * rendering code only.
+ */
+public final class AllocationMonitor
+{
+	private static final String TAG = "AllocationMonitor";
+
+	/**
+	 * Number of bytes that may be allocated per frame after warm-up
+	 */
+	private final int mBudgetBytes;
+
+	/**
+	 * Frames which are not checked, e.g. while lazily created buffers are set up
+	 */
+	private final int mWarmUpFrames;
+
+	private int mFrameBytes;
+
+	private int mFrameCount;
+
+	private int mSectionStartBytes;
+
+	private int mViolations;
+
+	public AllocationMonitor(int warmUpFrames, int budgetBytes)
+	{
+		mWarmUpFrames = warmUpFrames;
+		mBudgetBytes = budgetBytes;
+	}
+
+	/**
+	 * Start counting allocations. Counting slows down the VM, so only use this in debug builds.
+	 * Allocation counting is deprecated since API level 23, but it is the only per-thread count
+	 * on the Android versions this app supports.
+	 */
+	@SuppressWarnings("deprecation")
+	public void start()
+	{
+		Debug.startAllocCounting();
+	}
+
+	@SuppressWarnings("deprecation")
+	public void stop()
+	{
+		Debug.stopAllocCounting();
+	}
+
+	public void beginSection()
+	{
+		mSectionStartBytes = Debug.getThreadAllocSize();
+	}
+
+	public void endSection()
+	{
+		mFrameBytes += Debug.getThreadAllocSize() - mSectionStartBytes;
+	}
+
+	/**
+	 * Check the bytes allocated in all sections since the last call against the budget.
+	 *
+	 * @return true if the frame was within budget (or still in the warm-up period)
+	 */
+	public boolean endFrame()
+	{
+		final int frameBytes = mFrameBytes;
+		mFrameBytes = 0;
+
+		if (++mFrameCount <= mWarmUpFrames || frameBytes <= mBudgetBytes)
+			return true;
+
+		++mViolations;
+		Log.w(TAG, "Frame " + mFrameCount + " allocated " + frameBytes + " bytes (budget " + mBudgetBytes + ")");
+		return false;
+	}
+
+	/**
+	 * Number of frames after warm-up that exceeded the budget
+	 */
+	public int getViolations()
+	{
+		return mViolations;
+	}
+}
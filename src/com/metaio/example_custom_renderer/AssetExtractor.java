@@ -0,0 +1,458 @@
+package com.metaio.example_custom_renderer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Extracts the app's assets into a directory on a background thread, for native code that needs
+ * file paths (e.g. the metaio SDK's tracking configuration). Extraction is incremental: a manifest
+ * stores the size and CRC32 of every extracted asset, and only assets whose content changed are
+ * written again. If the APK was not updated since the last extraction and all files are still in
+ * place, nothing is read at all.
+ *
+ * Assets that are needed first can be prioritized, and callers can wait for just the assets they
+ * need with runWhenExtracted() instead of for the whole extraction.
+ */
+public final class AssetExtractor
+{
+	private static final String TAG = "AssetExtractor";
+
+	private static final String MANIFEST_NAME = ".assets_manifest";
+
+	/**
+	 * Manifest key of the APK's last update time, cannot clash with asset names
+	 */
+	private static final String APK_UPDATE_TIME_KEY = ":apkUpdateTime";
+
+	/**
+	 * Asset directories added by the platform on some devices
+	 */
+	private static final String[] SYSTEM_ASSET_DIRECTORIES = {"images", "sounds", "webkit"};
+
+	private final AssetManager mAssets;
+
+	private final Context mContext;
+
+	private final File mDirectory;
+
+	/**
+	 * Assets that were processed, whether successfully or not
+	 */
+	private final Set<String> mDone = new HashSet<String>();
+
+	/**
+	 * Assets that were extracted or found up to date
+	 */
+	private final Set<String> mExtracted = new HashSet<String>();
+
+	private boolean mFinished = false;
+
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * Callbacks waiting for assets, with the asset names they wait for
+	 */
+	private final Map<Runnable, String[]> mPending = new HashMap<Runnable, String[]>();
+
+	private Thread mThread;
+
+	/**
+	 * @param directory Directory the assets are extracted to, keeping their relative paths
+	 */
+	public AssetExtractor(Context context, File directory)
+	{
+		mContext = context.getApplicationContext();
+		mAssets = mContext.getAssets();
+		mDirectory = directory;
+	}
+
+	/**
+	 * Compute size and CRC32 of an asset, in the manifest's format
+	 */
+	private String computeChecksum(String assetName) throws IOException
+	{
+		final CRC32 crc = new CRC32();
+		final byte[] buffer = new byte[64 * 1024];
+		long size = 0;
+
+		InputStream in = mAssets.open(assetName, AssetManager.ACCESS_STREAMING);
+		try
+		{
+			int count;
+			while ((count = in.read(buffer)) > 0)
+			{
+				crc.update(buffer, 0, count);
+				size += count;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return size + " " + Long.toHexString(crc.getValue());
+	}
+
+	/**
+	 * Copy an asset to its file through a temporary file, so that a partially written file is
+	 * never taken for the asset
+	 */
+	private void copy(String assetName, File file) throws IOException
+	{
+		file.getParentFile().mkdirs();
+		final File tempFile = new File(file.getPath() + ".tmp");
+
+		FileOutputStream out = new FileOutputStream(tempFile);
+		try
+		{
+			FileChannel outChannel = out.getChannel();
+
+			AssetFileDescriptor afd = null;
+			try
+			{
+				// Only works for assets stored uncompressed in the APK
+				afd = mAssets.openFd(assetName);
+			}
+			catch (IOException e)
+			{
+			}
+
+			if (afd != null)
+			{
+				// Copied by the kernel, without passing through the Java heap
+				FileInputStream in = afd.createInputStream();
+				try
+				{
+					final FileChannel inChannel = in.getChannel();
+					final long length = afd.getLength();
+					long position = 0;
+					while (position < length)
+						position += inChannel.transferTo(afd.getStartOffset() + position, length - position, outChannel);
+				}
+				finally
+				{
+					in.close();
+					afd.close();
+				}
+			}
+			else
+			{
+				ReadableByteChannel inChannel = Channels.newChannel(mAssets.open(assetName, AssetManager.ACCESS_STREAMING));
+				try
+				{
+					final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+					while (inChannel.read(buffer) >= 0)
+					{
+						buffer.flip();
+						while (buffer.hasRemaining())
+							outChannel.write(buffer);
+						buffer.clear();
+					}
+				}
+				finally
+				{
+					inChannel.close();
+				}
+			}
+		}
+		finally
+		{
+			out.close();
+		}
+
+		if (!tempFile.renameTo(file))
+			throw new IOException("Failed to rename " + tempFile + " to " + file);
+	}
+
+	/**
+	 * Extract all assets, called on the background thread
+	 */
+	private void extractAll(String[] priorityAssets)
+	{
+		final long startTime = System.nanoTime();
+		mDirectory.mkdirs();
+
+		final File manifestFile = new File(mDirectory, MANIFEST_NAME);
+		final Map<String, String> manifest = readManifest(manifestFile);
+		final Map<String, String> newManifest = new HashMap<String, String>();
+
+		long apkUpdateTime = 0;
+		try
+		{
+			apkUpdateTime = mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0).lastUpdateTime;
+		}
+		catch (PackageManager.NameNotFoundException e)
+		{
+		}
+
+		// Unchanged APK: the manifest is valid as long as the files were not deleted
+		final boolean apkUnchanged = apkUpdateTime != 0 &&
+			String.valueOf(apkUpdateTime).equals(manifest.get(APK_UPDATE_TIME_KEY));
+		newManifest.put(APK_UPDATE_TIME_KEY, String.valueOf(apkUpdateTime));
+
+		final List<String> assetNames = new ArrayList<String>();
+		for (String assetName : priorityAssets)
+			assetNames.add(assetName);
+		try
+		{
+			listAssets("", assetNames);
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Failed to list assets", e);
+		}
+
+		int written = 0;
+		for (String assetName : assetNames)
+		{
+			if (newManifest.containsKey(assetName))
+				continue;
+
+			final File file = new File(mDirectory, assetName);
+			final String oldChecksum = manifest.get(assetName);
+
+			try
+			{
+				String checksum;
+				if (apkUnchanged && oldChecksum != null && file.length() == getSize(oldChecksum))
+				{
+					checksum = oldChecksum;
+				}
+				else
+				{
+					checksum = computeChecksum(assetName);
+					if (!checksum.equals(oldChecksum) || file.length() != getSize(checksum))
+					{
+						copy(assetName, file);
+						++written;
+					}
+				}
+
+				newManifest.put(assetName, checksum);
+				onAssetDone(assetName, true);
+			}
+			catch (IOException e)
+			{
+				// Failed assets count as done as well, so that nobody waits for them forever
+				Log.e(TAG, "Failed to extract " + assetName, e);
+				onAssetDone(assetName, false);
+			}
+		}
+
+		writeManifest(manifestFile, newManifest);
+
+		synchronized (this)
+		{
+			mFinished = true;
+			runPendingCallbacks();
+		}
+
+		Log.i(TAG, "Extracted " + written + " of " + (newManifest.size() - 1) + " assets in " +
+			(System.nanoTime() - startTime) / 1000000 + " ms");
+	}
+
+	/**
+	 * Extracted file of an asset, which may not exist yet, see isExtracted()
+	 */
+	public File getAssetFile(String assetName)
+	{
+		return new File(mDirectory, assetName);
+	}
+
+	private static long getSize(String checksum)
+	{
+		return Long.parseLong(checksum.substring(0, checksum.indexOf(' ')));
+	}
+
+	/**
+	 * Whether an asset was extracted successfully or found up to date
+	 */
+	public synchronized boolean isExtracted(String assetName)
+	{
+		return mExtracted.contains(assetName);
+	}
+
+	private void listAssets(String path, List<String> assetNames) throws IOException
+	{
+		for (String name : mAssets.list(path))
+		{
+			final String assetName = path.length() == 0 ? name : path + "/" + name;
+
+			boolean systemDirectory = false;
+			for (String directory : SYSTEM_ASSET_DIRECTORIES)
+			{
+				if (path.length() == 0 && name.equals(directory))
+					systemDirectory = true;
+			}
+
+			if (systemDirectory)
+				continue;
+
+			// Directories have children, files do not
+			final String[] children = mAssets.list(assetName);
+			if (children != null && children.length > 0)
+				listAssets(assetName, assetNames);
+			else
+				assetNames.add(assetName);
+		}
+	}
+
+	private synchronized void onAssetDone(String assetName, boolean extracted)
+	{
+		if (extracted)
+			mExtracted.add(assetName);
+
+		mDone.add(assetName);
+		runPendingCallbacks();
+	}
+
+	private static Map<String, String> readManifest(File file)
+	{
+		final Map<String, String> manifest = new HashMap<String, String>();
+		if (!file.exists())
+			return manifest;
+
+		BufferedReader reader = null;
+		try
+		{
+			reader = new BufferedReader(new FileReader(file));
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				final int separator = line.indexOf('\t');
+				if (separator > 0)
+					manifest.put(line.substring(0, separator), line.substring(separator + 1));
+			}
+		}
+		catch (IOException e)
+		{
+			Log.w(TAG, "Failed to read " + file + ", extracting all assets", e);
+			manifest.clear();
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (IOException e)
+				{
+				}
+			}
+		}
+
+		return manifest;
+	}
+
+	/**
+	 * Run a callback on the main thread once the given assets are done, immediately if they
+	 * already are. Check isExtracted() in the callback, extraction may have failed.
+	 */
+	public synchronized void runWhenExtracted(String[] assetNames, Runnable callback)
+	{
+		mPending.put(callback, assetNames);
+		runPendingCallbacks();
+	}
+
+	/**
+	 * Post the pending callbacks whose assets are all done
+	 */
+	private void runPendingCallbacks()
+	{
+		for (Iterator<Map.Entry<Runnable, String[]>> it = mPending.entrySet().iterator(); it.hasNext(); )
+		{
+			final Map.Entry<Runnable, String[]> entry = it.next();
+
+			boolean done = true;
+			for (String assetName : entry.getValue())
+			{
+				if (!mFinished && !mDone.contains(assetName))
+					done = false;
+			}
+
+			if (done)
+			{
+				mHandler.post(entry.getKey());
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Start extracting in the background, does nothing if already started
+	 *
+	 * @param priorityAssets Assets extracted before all others
+	 */
+	public synchronized void start(final String... priorityAssets)
+	{
+		if (mThread != null)
+			return;
+
+		mThread = new Thread("AssetExtractor")
+		{
+			@Override
+			public void run()
+			{
+				extractAll(priorityAssets);
+			}
+		};
+		mThread.start();
+	}
+
+	private static void writeManifest(File file, Map<String, String> manifest)
+	{
+		Writer writer = null;
+		try
+		{
+			writer = new FileWriter(file);
+			for (Map.Entry<String, String> entry : manifest.entrySet())
+				writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Failed to write " + file, e);
+		}
+		finally
+		{
+			if (writer != null)
+			{
+				try
+				{
+					writer.close();
+				}
+				catch (IOException e)
+				{
+				}
+			}
+		}
+	}
+}
@@ -6,12 +6,9 @@ import java.nio.FloatBuffer;
 
 import javax.microedition.khronos.opengles.GL10;
 
-import android.content.Context;
-import android.util.DisplayMetrics;
 import android.util.Log;
-import android.view.Display;
-import android.view.WindowManager;
 
+import com.metaio.sdk.jni.ECOLOR_FORMAT;
 import com.metaio.sdk.jni.ESCREEN_ROTATION;
 import com.metaio.sdk.jni.ImageStruct;
 
@@ -20,290 +17,1027 @@ public final class CameraImageRenderer
 	private static final String TAG = "CameraImageRenderer";
 
 	/**
-	 * Camera frame aspect ratio (does not change with screen rotation, e.g. 640/480 = 1.333)
+	 * Pixel format the camera image is converted to and uploaded in
 	 */
-	private float mCameraAspect;
+	public enum UploadFormat
+	{
+		/**
+		 * Full color, 4 bytes per pixel
+		 */
+		RGBA(4, GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE),
+
+		/**
+		 * Reduced color depth, 2 bytes per pixel
+		 */
+		RGB565(2, GL10.GL_RGB, GL10.GL_UNSIGNED_SHORT_5_6_5),
+
+		/**
+		 * Grayscale, 1 byte per pixel, e.g. for tracking debug displays. YUV frames need no
+		 * conversion at all, their Y plane is uploaded as is.
+		 */
+		LUMINANCE(1, GL10.GL_LUMINANCE, GL10.GL_UNSIGNED_BYTE);
+
+		final int bytesPerPixel;
+
+		final int glFormat;
+
+		final int glType;
+
+		private UploadFormat(int bytesPerPixel, int glFormat, int glType)
+		{
+			this.bytesPerPixel = bytesPerPixel;
+			this.glFormat = glFormat;
+			this.glType = glType;
+		}
+	}
+
+	private static final UploadFormat[] UPLOAD_FORMATS = UploadFormat.values();
+
+	/**
+	 * Extensions which allow textures with non-power-of-two dimensions (the "limited" variant is
+	 * sufficient because the camera texture uses neither mipmaps nor GL_REPEAT)
+	 */
+	private static final String[] NPOT_EXTENSIONS = {
+		"GL_OES_texture_npot",
+		"GL_ARB_texture_non_power_of_two",
+		"GL_IMG_texture_npot",
+		"GL_APPLE_texture_2D_limited_npot"
+	};
 
 	private int mCameraImageHeight;
 
 	private int mCameraImageWidth;
 
-	private Context mContext;
+	/**
+	 * Policy applied by the frame ring if the GL thread does not keep up with the camera
+	 */
+	private FrameRing.DropPolicy mDropPolicy = FrameRing.DropPolicy.DROP_OLDEST;
 
-	private boolean mInitialized = false;
+	/**
+	 * Capture and upload time (System.nanoTime() base) of the camera frame in the texture
+	 */
+	private long mFrameCaptureTime;
 
-	private boolean mMustUpdateTexture = false;
+	private long mFrameUploadTime;
 
 	/**
-	 * Value by which the X axis must be scaled in the overall projection matrix in order to make
-	 * up for a aspect-corrected (by cropping) camera image. Set on each draw() call.
+	 * Sequence number of the camera frame currently in the texture
+	 */
+	private long mFrameSequenceNumber = -1;
+
+	/**
+	 * Camera frames handed from updateFrame() to draw(), created by the GL thread for each camera
+	 * image size
+	 */
+	private volatile FrameRing mFrames;
+
+	/**
+	 * Frame ring and capture time of the frame written by the last updateFrame() call while
+	 * holding frames, null if none. Only accessed by the producer.
+	 */
+	private FrameRing mHeldFrames;
+
+	private long mHeldCaptureTime;
+
+	/**
+	 * Whether updateFrame() leaves publishing frames to publishHeldFrame()
 	 */
-	private float mScaleX;
+	private volatile boolean mHoldFrames = false;
 
-	private float mScaleY;
+	/**
+	 * Camera image size and upload format (see getSetup()) that the frame ring, tiles and textures
+	 * are set up for. Written by the GL thread after (re)initializing, publishes these fields to
+	 * updateFrame().
+	 */
+	private volatile long mInitializedSetup = 0;
+
+	/**
+	 * Precomputed camera quad geometry and projection scale factors for all screen rotations
+	 */
+	private final ViewportLayout mLayout = new ViewportLayout();
 
-	private int mTexture = -1;
+	/**
+	 * Set if the layout must be recomputed on the GL thread (viewport, orientation or scale mode
+	 * changed, or the camera image size is known for the first time)
+	 */
+	private volatile boolean mLayoutDirty = true;
 
-	private ByteBuffer mTextureBuffer;
+	/**
+	 * Largest texture dimension supported by the device
+	 */
+	private final int mMaxTextureSize;
+
+	/**
+	 * Registry of the camera quad and tile meshes
+	 */
+	private final MeshRegistry mMeshes;
+
+	/**
+	 * Whether textures can have the exact camera image size instead of being padded to 2^n
+	 */
+	private final boolean mNpotSupported;
+
+	/**
+	 * Camera quad of all four rotations (mLayout's table), VERTEX_COUNT vertices per rotation
+	 */
+	private final MeshRegistry.Mesh mQuad;
+
+	/**
+	 * Camera image size and upload format (see getSetup()) of the latest frame passed to
+	 * updateFrame(), 0 before the first frame. The GL thread reinitializes when it differs from
+	 * mInitializedSetup.
+	 */
+	private volatile long mRequestedSetup = 0;
+
+	private final GpuResourceRegistry mResources;
+
+	/**
+	 * Whether draw() uploads the frame ring's front buffer again because the textures were
+	 * re-created in a new GL context, see recreateTextures()
+	 */
+	private boolean mReuploadFront = false;
+
+	/**
+	 * RGBA camera frame copied out of the metaio SDK, only used if the camera delivers RGBA images
+	 * that need to be converted or flipped
+	 */
+	private ByteBuffer mRgbaBuffer;
+
+	/**
+	 * Converts and flips RGBA camera frames, created on the first RGBA frame that needs it
+	 */
+	private RgbaConverter mRgbaConverter;
+
+	private volatile ViewportLayout.ScaleMode mScaleMode = ViewportLayout.ScaleMode.FILL;
+
+	/**
+	 * Added to the frame ring's sequence numbers, so that they keep increasing across
+	 * reinitializations
+	 */
+	private long mSequenceBase = 0;
+
+	/**
+	 * Value by which the X axis must be scaled in the overall projection matrix in order to make
+	 * up for a aspect-corrected (by cropping) camera image. Set on each draw() call.
+	 */
+	private float mScaleX = 1;
+
+	private float mScaleY = 1;
 
 	private boolean mTextureInitialized = false;
 
+	/**
+	 * Texture size (of each tile if the camera image is split into tiles)
+	 */
 	private int mTextureHeight;
 
 	private int mTextureWidth;
 
-	private FloatBuffer mTexCoordsBuffer;
+	/**
+	 * Upload format the frame ring, tiles and textures are set up for, only used by the GL thread
+	 */
+	private UploadFormat mTextureFormat = UploadFormat.RGBA;
 
-	private FloatBuffer mVertexBuffer;
+	/**
+	 * Texture set (one texture per tile) that holds the latest uploaded camera image
+	 */
+	private int mTextureSlot = 0;
 
-	public CameraImageRenderer(Context context, GL10 gl)
-	{
-		mContext = context;
+	/**
+	 * Number of texture sets used round-robin, so that a frame is uploaded into textures which
+	 * the GPU last sampled several frames ago instead of the ones it may still be reading
+	 */
+	private volatile int mTextureRotationDepth = 1;
 
-		final float[] vertices = {
-			-1, -1, 0,
-			 1, -1, 0,
-			-1,  1, 0,
-			 1,  1, 0
-		};
+	/**
+	 * mTextureRotationDepth sets of one texture per tile (just one texture per set unless the
+	 * camera image exceeds mMaxTextureSize), set after set
+	 */
+	private int[] mTextures;
 
-		ByteBuffer buffer = ByteBuffer.allocateDirect(vertices.length * 4);
-		buffer.order(ByteOrder.nativeOrder());
-		mVertexBuffer = buffer.asFloatBuffer();
-		mVertexBuffer.put(vertices);
-		mVertexBuffer.rewind();
+	/**
+	 * Accumulated CPU time spent in draw() on drawing and on uploading, since the last
+	 * resetTimings() call
+	 */
+	private long mDrawTimeNanos = 0;
 
-		// Create texture coordinates buffer but don't fill it yet
-		buffer = ByteBuffer.allocateDirect(vertices.length/3 * 8);
-		buffer.order(ByteOrder.nativeOrder());
-		mTexCoordsBuffer = buffer.asFloatBuffer();
+	private long mUploadTimeNanos = 0;
 
-		// Generate texture
-		int[] tmp = new int[1];
-		gl.glGenTextures(1, tmp, 0);
-		mTexture = tmp[0];
-	}
+	/**
+	 * Time the last draw() call spent on consuming and uploading a frame
+	 */
+	private long mLastUploadTimeNanos = 0;
 
-	public void draw(GL10 gl, ESCREEN_ROTATION screenRotation)
+	private int mTimedFrames = 0;
+
+	/**
+	 * Upload format requested with setUploadFormat()
+	 */
+	private volatile UploadFormat mUploadFormat = UploadFormat.RGBA;
+
+	/**
+	 * Staging buffer with contiguous rows of one tile (GLES 1.x cannot upload a sub-rectangle of a
+	 * larger image), null if the camera image fits into a single texture
+	 */
+	private ByteBuffer mTileBuffer;
+
+	/**
+	 * Camera image size of a tile, the last tile in each direction may be smaller
+	 */
+	private int mTileHeight;
+
+	private int mTileWidth;
+
+	/**
+	 * Scratch array for copying one tile row
+	 */
+	private byte[] mTileRow;
+
+	/**
+	 * Tables of all tiles and rotations as one mesh, VERTEX_COUNT vertices per table (tiled mode
+	 * only)
+	 */
+	private MeshRegistry.Mesh mTileMesh;
+
+	/**
+	 * Interleaved vertex/texture coordinate tables per tile and rotation, table after table
+	 * (tiled mode only)
+	 */
+	private FloatBuffer mTileTable;
+
+	/**
+	 * Views of mTileTable at each table, for computing it
+	 */
+	private FloatBuffer[] mTileVertices;
+
+	/**
+	 * Whether each tile is at least partly visible per rotation (tiled mode only)
+	 */
+	private boolean[] mTileVisible;
+
+	private int mTilesX = 1;
+
+	private int mTilesY = 1;
+
+	private int mViewportHeight = 1;
+
+	private int mViewportWidth = 1;
+
+	/**
+	 * Raw YUV420SP (NV21) camera frame, only used if the camera delivers YUV images
+	 */
+	private ByteBuffer mYuvBuffer;
+
+	/**
+	 * Converts YUV camera frames to RGBA or RGB565, created on the first YUV frame
+	 */
+	private YuvConverter mYuvConverter;
+
+	/**
+	 * @param meshes Registry the camera quad is drawn from, must have been set up for the current
+	 *        GL context
+	 * @param resources Registry the camera textures are accounted in
+	 */
+	public CameraImageRenderer(GL10 gl, MeshRegistry meshes, GpuResourceRegistry resources)
 	{
-		if (!mInitialized)
-			return;
+		mMeshes = meshes;
+		mResources = resources;
+		mQuad = meshes.registerDynamic(GL10.GL_TRIANGLE_STRIP, MeshRegistry.TEX_COORDS, 4 * ViewportLayout.VERTEX_COUNT);
 
-		gl.glEnable(GL10.GL_TEXTURE_2D);
-		gl.glBindTexture(GL10.GL_TEXTURE_2D, mTexture);
+		int[] tmp = new int[1];
+		gl.glGetIntegerv(GL10.GL_MAX_TEXTURE_SIZE, tmp, 0);
+		mMaxTextureSize = tmp[0] > 0 ? tmp[0] : 2048;
 
-		if (mMustUpdateTexture)
+		final String extensions = gl.glGetString(GL10.GL_EXTENSIONS);
+		boolean npotSupported = false;
+		for (String extension : NPOT_EXTENSIONS)
 		{
-			if(!mTextureInitialized)
-			{
-				// Allocate camera image texture once with 2^n dimensions
-				gl.glTexImage2D(
-					GL10.GL_TEXTURE_2D,
-					0,
-					GL10.GL_RGBA,
-					mTextureWidth,
-					mTextureHeight,
-					0,
-					GL10.GL_RGBA,
-					GL10.GL_UNSIGNED_BYTE,
-					null);
-
-				mTextureInitialized = true;
-			}
+			if (extensions != null && extensions.contains(extension))
+				npotSupported = true;
+		}
+		mNpotSupported = npotSupported;
+	}
 
-			// ...but only overwrite the camera image-sized region
-			gl.glTexSubImage2D(
-				GL10.GL_TEXTURE_2D,
-				0,
-				0,
-				0,
-				mCameraImageWidth,
-				mCameraImageHeight,
-				GL10.GL_RGBA,
-				GL10.GL_UNSIGNED_BYTE,
-				mTextureBuffer);
+	/**
+	 * Copy one tile of the camera image into the staging buffer so that its rows are contiguous
+	 */
+	private void copyTile(ByteBuffer image, int x, int y, int width, int height)
+	{
+		final int bytesPerPixel = mTextureFormat.bytesPerPixel;
+		final int rowBytes = width * bytesPerPixel;
 
-			final float xRatio = (float)mCameraImageWidth / mTextureWidth;
-			final float yRatio = (float)mCameraImageHeight / mTextureHeight;
+		mTileBuffer.clear();
+		for (int row = 0; row < height; ++row)
+		{
+			image.position(((y + row) * mCameraImageWidth + x) * bytesPerPixel);
+			image.get(mTileRow, 0, rowBytes);
+			mTileBuffer.put(mTileRow, 0, rowBytes);
+		}
 
-			final boolean cameraIsRotated = screenRotation == ESCREEN_ROTATION.ESCREEN_ROTATION_90 ||
-			                                screenRotation == ESCREEN_ROTATION.ESCREEN_ROTATION_270;
-			final float cameraAspect = cameraIsRotated ? 1.0f/mCameraAspect : mCameraAspect;
+		image.rewind();
+		mTileBuffer.flip();
+	}
 
-			Display display = ((WindowManager)mContext.getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay();
-			DisplayMetrics displayMetrics = new DisplayMetrics();
-			display.getMetrics(displayMetrics);
+	public void draw(GL10 gl, ESCREEN_ROTATION screenRotation)
+	{
+		final long requestedSetup = mRequestedSetup;
+		if (requestedSetup == 0)
+			return;
 
-			// DisplayMetrics.widthPixels/heightPixels are the width/height in the current
-			// orientation (i.e. values get swapped when you rotate the device)
-			float screenAspect = (float)displayMetrics.widthPixels / displayMetrics.heightPixels;
+		// First frame, or the camera image size or upload format changed, e.g. the camera was
+		// restarted with another resolution
+		if (requestedSetup != mInitializedSetup)
+		{
+			init(gl, (int)(requestedSetup >>> 32), (int)((requestedSetup & 0xffffffffL) >>> 2),
+				UPLOAD_FORMATS[(int)(requestedSetup & 3)]);
+		}
 
-			float offsetX, offsetY;
+		if (mLayoutDirty)
+		{
+			mLayoutDirty = false;
+			mLayout.setScaleMode(mScaleMode);
 
-			if (cameraAspect > screenAspect)
+			if (mTilesX * mTilesY == 1)
 			{
-				// Camera image is wider (e.g. 480x640 camera image vs. a 480x800 device, example
-				// in portrait mode), so crop the width of the camera image
-				float aspectRatio = screenAspect / cameraAspect;
-				offsetX = 0.5f * (1 - aspectRatio);
-				offsetY = 0;
-
-				mScaleX = cameraAspect / screenAspect;
-				mScaleY = 1;
+				mLayout.update(mCameraImageWidth, mCameraImageHeight, mTextureWidth, mTextureHeight,
+					mViewportWidth, mViewportHeight);
+				mMeshes.update(mQuad, mLayout.getTable());
 			}
 			else
 			{
-				// Screen is wider, so crop the height of the camera image
-				float aspectRatio = cameraAspect / screenAspect;
-				offsetY = 0.5f * (1 - aspectRatio);
-				offsetX = 0;
-
-				mScaleX = 1;
-				mScaleY = screenAspect / cameraAspect;
+				// Tile tables are computed in camera image space
+				mLayout.update(mCameraImageWidth, mCameraImageHeight, mCameraImageWidth, mCameraImageHeight,
+					mViewportWidth, mViewportHeight);
+				updateTileTables();
+				mMeshes.update(mTileMesh, mTileTable);
 			}
+		}
 
-			if (cameraIsRotated)
-			{
-				// Camera image will be rendered with +-90 rotation, so switch UV coordinates
-				float tmp = offsetX;
-				offsetX = offsetY;
-				offsetY = tmp;
-			}
+		final int rotation = getRotationIndex(screenRotation);
+		mScaleX = mLayout.getScaleX(rotation);
+		mScaleY = mLayout.getScaleY(rotation);
 
-			// Calculate texture coordinates. offsetX/offsetY are for cropping if camera and screen
-			// aspect ratios differ. xRatio/yRatio are here because the OpenGL texture has
-			// dimensions of 2^n, but the camera image does not fill it completely (e.g. camera
-			// image 640x480 vs. texture size 1024x512).
-			mTexCoordsBuffer.put(new float[] {
-				offsetX * xRatio,     (1-offsetY) * yRatio,
-				(1-offsetX) * xRatio, (1-offsetY) * yRatio,
-				offsetX * xRatio,     offsetY * yRatio,
-				(1-offsetX) * xRatio, offsetY * yRatio
-			});
-			mTexCoordsBuffer.rewind();
-
-			mMustUpdateTexture = false;
+		gl.glActiveTexture(GL10.GL_TEXTURE0);
+		gl.glEnable(GL10.GL_TEXTURE_2D);
+
+		if (!mTextureInitialized)
+			initTextures(gl);
+
+		final long uploadStartTime = System.nanoTime();
+
+		final FrameRing frames = mFrames;
+		if (frames.consume())
+		{
+			mTextureSlot = (mTextureSlot + 1) % (mTextures.length / (mTilesX * mTilesY));
+			uploadTiles(gl, frames.getFrontBuffer());
+			mFrameSequenceNumber = mSequenceBase + frames.getFrontSequenceNumber();
+			mFrameCaptureTime = frames.getFrontTimestamp();
+			mFrameUploadTime = System.nanoTime();
+		}
+		else if (mReuploadFront)
+		{
+			// Show the last camera frame right away instead of waiting for the camera
+			uploadTiles(gl, frames.getFrontBuffer());
 		}
+		mReuploadFront = false;
 
-		gl.glTexParameterx(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
-		gl.glTexParameterx(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
-		gl.glTexEnvx(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE, GL10.GL_REPLACE);
+		// The textures have no content until the first frame of the current size is uploaded
+		if (mFrameSequenceNumber < mSequenceBase)
+		{
+			gl.glDisable(GL10.GL_TEXTURE_2D);
+			return;
+		}
 
-		gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
-		gl.glVertexPointer(3, GL10.GL_FLOAT, 0, mVertexBuffer);
-		gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
-		gl.glTexCoordPointer(2, GL10.GL_FLOAT, 0, mTexCoordsBuffer);
+		final long drawStartTime = System.nanoTime();
+		final int tileCount = mTilesX * mTilesY;
+		final int firstTexture = mTextureSlot * tileCount;
 
+		gl.glTexEnvx(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE, GL10.GL_REPLACE);
+
+		// Both matrices are left at identity, the overlay code loads its own matrices anyway
 		gl.glMatrixMode(GL10.GL_PROJECTION);
-		gl.glPushMatrix();
 		gl.glLoadIdentity();
 		gl.glMatrixMode(GL10.GL_MODELVIEW);
-		gl.glPushMatrix();
 		gl.glLoadIdentity();
 
+		// Vertices already contain the rotation for the current screen orientation
+		if (tileCount == 1)
+		{
+			gl.glBindTexture(GL10.GL_TEXTURE_2D, mTextures[firstTexture]);
+			mMeshes.bind(gl, mQuad);
+			mMeshes.draw(gl, mQuad, rotation * ViewportLayout.VERTEX_COUNT, ViewportLayout.VERTEX_COUNT);
+			mMeshes.unbind(gl, mQuad);
+		}
+		else
+		{
+			mMeshes.bind(gl, mTileMesh);
+			for (int tile = 0; tile < tileCount; ++tile)
+			{
+				final int index = 4 * tile + rotation;
+				if (!mTileVisible[index])
+					continue;
+
+				gl.glBindTexture(GL10.GL_TEXTURE_2D, mTextures[firstTexture + tile]);
+				mMeshes.draw(gl, mTileMesh, index * ViewportLayout.VERTEX_COUNT, ViewportLayout.VERTEX_COUNT);
+			}
+			mMeshes.unbind(gl, mTileMesh);
+		}
+
+		gl.glTexEnvx(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE, GL10.GL_MODULATE);
+
+		gl.glDisable(GL10.GL_TEXTURE_2D);
+
+		final long endTime = System.nanoTime();
+		mLastUploadTimeNanos = drawStartTime - uploadStartTime;
+		mUploadTimeNanos += mLastUploadTimeNanos;
+		mDrawTimeNanos += endTime - drawStartTime;
+		++mTimedFrames;
+	}
+
+	/**
+	 * Average CPU time per frame spent in draw() after the texture upload, in microseconds
+	 */
+	public float getAverageDrawTimeMicros()
+	{
+		return mTimedFrames > 0 ? mDrawTimeNanos / 1000f / mTimedFrames : 0;
+	}
+
+	/**
+	 * Average CPU time per frame spent uploading the camera image, in microseconds. Drivers block
+	 * here if the uploaded texture is still in use by the GPU.
+	 */
+	public float getAverageUploadTimeMicros()
+	{
+		return mTimedFrames > 0 ? mUploadTimeNanos / 1000f / mTimedFrames : 0;
+	}
+
+	private static int getNextPowerOf2(int value)
+	{
+		for (int i = 0; i < 31; ++i)
+		{
+			if ((1 << i) >= value)
+				return 1 << i;
+		}
+
+		throw new RuntimeException("Value too large");
+	}
+
+	/**
+	 * CPU time the last draw() call spent on the texture upload in nanoseconds
+	 */
+	public long getLastUploadTimeNanos()
+	{
+		return mLastUploadTimeNanos;
+	}
+
+	/**
+	 * Number of camera frames that were dropped because the GL thread did not consume them in
+	 * time, since the camera image size last changed
+	 */
+	public long getDroppedFrames()
+	{
+		final FrameRing frames = mFrames;
+		return frames != null ? frames.getDroppedFrames() : 0;
+	}
+
+	/**
+	 * Capture time of the camera frame that is currently displayed, as passed to updateFrame()
+	 */
+	public long getFrameCaptureTime()
+	{
+		return mFrameCaptureTime;
+	}
+
+	/**
+	 * Sequence number of the camera frame that is currently displayed, or -1 if none
+	 */
+	public long getFrameSequenceNumber()
+	{
+		return mFrameSequenceNumber;
+	}
+
+	/**
+	 * Time at which the camera frame that is currently displayed was uploaded
+	 */
+	public long getFrameUploadTime()
+	{
+		return mFrameUploadTime;
+	}
+
+	/**
+	 * Pack camera image size and upload format into one value, so that both are published
+	 * together
+	 */
+	private static long getSetup(int width, int height, UploadFormat format)
+	{
+		return ((long)width << 32) | ((long)height << 2) | format.ordinal();
+	}
+
+	static int getRotationIndex(ESCREEN_ROTATION screenRotation)
+	{
 		switch (screenRotation)
 		{
 			// Portrait
 			case ESCREEN_ROTATION_270:
-				gl.glRotatef(-90, 0, 0, 1);
-				break;
+				return ViewportLayout.ROTATION_270;
 
 			// Reverse portrait (upside down)
 			case ESCREEN_ROTATION_90:
-				gl.glRotatef(90, 0, 0, 1);
-				break;
+				return ViewportLayout.ROTATION_90;
 
 			// Landscape (right side of tall device facing up)
 			case ESCREEN_ROTATION_0:
-				break;
+				return ViewportLayout.ROTATION_0;
 
 			// Reverse landscape (left side of tall device facing up)
 			case ESCREEN_ROTATION_180:
-				gl.glRotatef(180, 0, 0, 1);
-				break;
+				return ViewportLayout.ROTATION_180;
 
 			default:
 				Log.e(TAG, "Unknown screen rotation");
+				return ViewportLayout.ROTATION_0;
 		}
+	}
 
-		gl.glDrawArrays(GL10.GL_TRIANGLE_STRIP, 0, 4);
+	public float getScaleX()
+	{
+		return mScaleX;
+	}
 
-		gl.glMatrixMode(GL10.GL_PROJECTION);
-		gl.glPopMatrix();
-		gl.glMatrixMode(GL10.GL_MODELVIEW);
-		gl.glPopMatrix();
+	public float getScaleY()
+	{
+		return mScaleY;
+	}
 
-		gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
-		gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
-		gl.glTexEnvx(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE, GL10.GL_MODULATE);
+	/**
+	 * Set up everything that depends on the camera image size and upload format, on the GL thread.
+	 * Existing textures are deleted, so this also works when the size or format changes.
+	 */
+	private void init(GL10 gl, int cameraImageWidth, int cameraImageHeight, UploadFormat format)
+	{
+		if (mTextures != null)
+		{
+			Log.i(TAG, "Camera image changed to " + cameraImageWidth + "x" + cameraImageHeight + " " + format);
+			gl.glDeleteTextures(mTextures.length, mTextures, 0);
+			for (int texture : mTextures)
+				mResources.remove(GpuResourceRegistry.Type.TEXTURE, texture);
+			mTextures = null;
+		}
 
-		gl.glDisable(GL10.GL_TEXTURE_2D);
+		mTextureInitialized = false;
+		mTextureSlot = 0;
+		mSequenceBase = mFrameSequenceNumber + 1;
+		mReuploadFront = false;
+
+		mCameraImageWidth = cameraImageWidth;
+		mCameraImageHeight = cameraImageHeight;
+		mTextureFormat = format;
+
+		// Split the camera image into tiles if it does not fit into one texture
+		mTilesX = (cameraImageWidth + mMaxTextureSize - 1) / mMaxTextureSize;
+		mTilesY = (cameraImageHeight + mMaxTextureSize - 1) / mMaxTextureSize;
+		mTileWidth = (cameraImageWidth + mTilesX - 1) / mTilesX;
+		mTileHeight = (cameraImageHeight + mTilesY - 1) / mTilesY;
+
+		mTextureWidth = mNpotSupported ? mTileWidth : Math.min(getNextPowerOf2(mTileWidth), mMaxTextureSize);
+		mTextureHeight = mNpotSupported ? mTileHeight : Math.min(getNextPowerOf2(mTileHeight), mMaxTextureSize);
+
+		final int tileCount = mTilesX * mTilesY;
+		if (tileCount > 1)
+		{
+			Log.i(TAG, "Camera image " + cameraImageWidth + "x" + cameraImageHeight + " split into " +
+				mTilesX + "x" + mTilesY + " tiles");
+
+			mTileBuffer = ByteBuffer.allocateDirect(mTileWidth * mTileHeight * format.bytesPerPixel);
+			mTileRow = new byte[mTileWidth * format.bytesPerPixel];
+
+			final int floatsPerTable = ViewportLayout.VERTEX_COUNT * ViewportLayout.FLOATS_PER_VERTEX;
+			ByteBuffer buffer = ByteBuffer.allocateDirect(4 * tileCount * floatsPerTable * 4);
+			buffer.order(ByteOrder.nativeOrder());
+			mTileTable = buffer.asFloatBuffer();
+
+			mTileVertices = new FloatBuffer[4 * tileCount];
+			mTileVisible = new boolean[4 * tileCount];
+			for (int i = 0; i < 4 * tileCount; ++i)
+			{
+				mTileTable.position(i * floatsPerTable);
+				mTileVertices[i] = mTileTable.slice();
+			}
+			mTileTable.rewind();
+		}
+		else
+		{
+			mTileBuffer = null;
+			mTileRow = null;
+			mTileTable = null;
+		}
+
+		if (mTileMesh != null)
+		{
+			mMeshes.delete(mTileMesh);
+			mTileMesh = null;
+		}
+		if (tileCount > 1)
+		{
+			mTileMesh = mMeshes.registerDynamic(GL10.GL_TRIANGLE_STRIP, MeshRegistry.TEX_COORDS,
+				4 * tileCount * ViewportLayout.VERTEX_COUNT);
+		}
+
+		mFrames = new FrameRing(cameraImageWidth * cameraImageHeight * format.bytesPerPixel, mDropPolicy);
+		mLayoutDirty = true;
+
+		// Publishes the frame ring to updateFrame()
+		mInitializedSetup = getSetup(cameraImageWidth, cameraImageHeight, format);
 	}
 
-	private static int getNextPowerOf2(int value)
+	/**
+	 * Allocate the camera image texture(s) once with the final size. Only the camera image-sized
+	 * region is overwritten afterwards.
+	 */
+	private void initTextures(GL10 gl)
 	{
-		for (int i = 0; i < 12; ++i)
+		mTextures = new int[mTextureRotationDepth * mTilesX * mTilesY];
+		gl.glGenTextures(mTextures.length, mTextures, 0);
+
+		// Rows of 2 or 1 byte pixels (and of tiles) are not necessarily 4 byte aligned
+		gl.glPixelStorei(GL10.GL_UNPACK_ALIGNMENT, mTextureFormat == UploadFormat.RGBA ? 4 : 1);
+
+		for (int texture : mTextures)
 		{
-			if ((1 << i) >= value)
-				return 1 << i;
+			gl.glBindTexture(GL10.GL_TEXTURE_2D, texture);
+			gl.glTexImage2D(
+				GL10.GL_TEXTURE_2D,
+				0,
+				mTextureFormat.glFormat,
+				mTextureWidth,
+				mTextureHeight,
+				0,
+				mTextureFormat.glFormat,
+				mTextureFormat.glType,
+				null);
+			mResources.add(GpuResourceRegistry.Type.TEXTURE, texture, GpuResourceRegistry.getTextureBytes(mTextureWidth,
+				mTextureHeight, mTextureFormat.glFormat, mTextureFormat.glType), TAG);
+
+			gl.glTexParameterx(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
+			gl.glTexParameterx(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
+			gl.glTexParameterx(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_S, GL10.GL_CLAMP_TO_EDGE);
+			gl.glTexParameterx(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_WRAP_T, GL10.GL_CLAMP_TO_EDGE);
 		}
 
-		throw new RuntimeException("Value too large");
+		mTextureInitialized = true;
 	}
 
-	public float getScaleX()
+	/**
+	 * Recompute the camera image layout on the next draw() call, e.g. after a configuration change
+	 */
+	public void invalidateLayout()
 	{
-		return mScaleX;
+		mLayoutDirty = true;
 	}
 
-	public float getScaleY()
+	/**
+	 * Publish the frame written by the last updateFrame() call while holding frames, on the
+	 * producer thread
+	 *
+	 * @return false if there was no held frame (e.g. it was dropped)
+	 */
+	public boolean publishHeldFrame()
 	{
-		return mScaleY;
+		final FrameRing frames = mHeldFrames;
+		if (frames == null)
+			return false;
+
+		mHeldFrames = null;
+		frames.publish(mHeldCaptureTime);
+		return true;
+	}
+
+	/**
+	 * Re-create the textures in a new GL context after the previous one was lost, on the GL
+	 * thread. The old texture names died with their context and are not deleted. Everything on the
+	 * CPU side (frame ring, converters, layout) is kept, and the last camera frame is uploaded
+	 * again by the next draw(), so that the first frame after a resume does not wait for the camera.
+	 */
+	public void recreateTextures()
+	{
+		mTextures = null;
+		mTextureInitialized = false;
+		mReuploadFront = mFrameSequenceNumber >= mSequenceBase;
+	}
+
+	/**
+	 * Stop the YUV conversion threads (if any). Must be called when the renderer is no longer used.
+	 */
+	public void release()
+	{
+		if (mYuvConverter != null)
+		{
+			mYuvConverter.release();
+			mYuvConverter = null;
+		}
+	}
+
+	/**
+	 * Reset the averages returned by getAverageUploadTimeMicros() and getAverageDrawTimeMicros()
+	 */
+	public void resetTimings()
+	{
+		mDrawTimeNanos = 0;
+		mUploadTimeNanos = 0;
+		mTimedFrames = 0;
+	}
+
+	/**
+	 * Set which frames are dropped if the GL thread does not keep up with the camera. Takes effect
+	 * with the next camera image size change, i.e. should be called before the first frame.
+	 */
+	public void setDropPolicy(FrameRing.DropPolicy dropPolicy)
+	{
+		mDropPolicy = dropPolicy;
 	}
 
-	private void init(int cameraImageWidth, int cameraImageHeight)
+	/**
+	 * Set whether updateFrame() only writes frames and publishHeldFrame() publishes them, e.g. so
+	 * that a frame becomes visible to the GL thread together with its tracking state
+	 */
+	public void setHoldFrames(boolean holdFrames)
 	{
-		mTextureWidth = getNextPowerOf2(cameraImageWidth);
-		mTextureHeight = getNextPowerOf2(cameraImageHeight);
+		mHoldFrames = holdFrames;
+	}
 
-		mTextureBuffer = ByteBuffer.allocateDirect(cameraImageWidth * cameraImageHeight * 4);
+	/**
+	 * Set the number of texture sets the camera image is uploaded to round-robin (1 = always the
+	 * same texture). Each set costs one camera image texture of memory. Takes effect with the next
+	 * camera image size change, i.e. should be called before the first frame is drawn.
+	 */
+	public void setTextureRotationDepth(int depth)
+	{
+		mTextureRotationDepth = Math.max(1, depth);
+	}
 
-		mInitialized = true;
+	/**
+	 * Set how the camera image is fit into the viewport
+	 */
+	public void setScaleMode(ViewportLayout.ScaleMode scaleMode)
+	{
+		mScaleMode = scaleMode;
+		mLayoutDirty = true;
+	}
+
+	/**
+	 * Set the pixel format the camera image is uploaded in. RGB565 and LUMINANCE halve and quarter
+	 * the upload bandwidth of RGBA. Takes effect with the next camera frame, which reinitializes
+	 * the textures.
+	 */
+	public void setUploadFormat(UploadFormat uploadFormat)
+	{
+		mUploadFormat = uploadFormat;
+	}
+
+	/**
+	 * Set the size of the viewport the camera image is drawn into. Must be called from
+	 * onSurfaceChanged().
+	 */
+	public void setViewportSize(int width, int height)
+	{
+		mViewportWidth = width;
+		mViewportHeight = height;
+		mLayoutDirty = true;
 	}
 
 	public void updateFrame(ImageStruct frame)
 	{
-		final int frameWidth = frame.getWidth();
-		final int frameHeight = frame.getHeight();
+		updateFrame(frame, System.nanoTime());
+	}
+
+	/**
+	 * Queue a camera frame for upload
+	 *
+	 * @param captureTime Time the frame was received (System.nanoTime() base), used for latency
+	 *        tracing
+	 */
+	public void updateFrame(ImageStruct frame, long captureTime)
+	{
+		updateFrame(frame, null, frame.getWidth(), frame.getHeight(), frame.getColorFormat(),
+			frame.getOriginIsUpperLeft(), captureTime);
+	}
 
-		mCameraAspect = (float)frameWidth / frameHeight;
+	/**
+	 * Queue a camera frame that is already in memory, e.g. mapped from a recording by
+	 * FrameReplayer. YUV frames are converted straight from data.
+	 *
+	 * @param data Image data in the layout of ImageStruct's buffer
+	 */
+	public void updateFrame(ByteBuffer data, int width, int height, ECOLOR_FORMAT colorFormat,
+		boolean originIsUpperLeft, long captureTime)
+	{
+		updateFrame(null, data, width, height, colorFormat, originIsUpperLeft, captureTime);
+	}
+
+	/**
+	 * Queue a camera frame from either frame or data
+	 */
+	private void updateFrame(ImageStruct frame, ByteBuffer data, int frameWidth, int frameHeight,
+		ECOLOR_FORMAT colorFormat, boolean originIsUpperLeft, long captureTime)
+	{
+		if (colorFormat != ECOLOR_FORMAT.ECF_A8R8G8B8 && colorFormat != ECOLOR_FORMAT.ECF_YUV420SP)
+		{
+			Log.e(TAG, "Unimplemented color format " + colorFormat);
+			return;
+		}
 
-		switch (frame.getColorFormat())
+		final UploadFormat uploadFormat = mUploadFormat;
+		final long setup = getSetup(frameWidth, frameHeight, uploadFormat);
+		if (setup != mRequestedSetup)
+		{
+			// The GL thread reallocates everything that depends on size and format on its next draw()
+			mRequestedSetup = setup;
+			mYuvBuffer = null;
+			mRgbaBuffer = null;
+			mRgbaConverter = null;
+		}
+
+		// Frames are dropped until the GL thread has reinitialized
+		if (mInitializedSetup != setup)
+			return;
+
+		final FrameRing frames = mFrames;
+		ByteBuffer textureBuffer;
+
+		switch (colorFormat)
 		{
 			case ECF_A8R8G8B8:
-				if (!mInitialized)
-					init(frameWidth, frameHeight);
+				if (uploadFormat == UploadFormat.RGBA && originIsUpperLeft)
+				{
+					// Already in the upload format, copied straight into the frame ring
+					textureBuffer = frames.beginWrite();
+					if (textureBuffer == null)
+						return;
+
+					if (frame != null)
+						frame.copyBufferToNioBuffer(textureBuffer);
+					else
+						textureBuffer.put(data.duplicate());
 
-				if (!frame.getOriginIsUpperLeft())
+					break;
+				}
+
+				if (mRgbaConverter == null)
+					mRgbaConverter = new RgbaConverter(frameWidth);
+
+				ByteBuffer rgbaBuffer = data;
+				if (frame != null)
 				{
-					Log.e(TAG, "Unimplemented: ARGB upside-down");
+					if (mRgbaBuffer == null)
+						mRgbaBuffer = ByteBuffer.allocateDirect(frameWidth * frameHeight * 4);
+
+					mRgbaBuffer.rewind();
+					frame.copyBufferToNioBuffer(mRgbaBuffer);
+					mRgbaBuffer.rewind();
+					rgbaBuffer = mRgbaBuffer;
+				}
+
+				textureBuffer = frames.beginWrite();
+				if (textureBuffer == null)
 					return;
+
+				// Converting and flipping rows happen in the same pass
+				mRgbaConverter.convert(rgbaBuffer, textureBuffer, frameHeight, uploadFormat, !originIsUpperLeft);
+
+				break;
+
+			case ECF_YUV420SP:
+				if (mYuvConverter == null)
+					mYuvConverter = new YuvConverter();
+
+				ByteBuffer yuvBuffer = data;
+				if (frame != null)
+				{
+					if (mYuvBuffer == null)
+					{
+						// Y plane with 1 byte per pixel plus the subsampled, interleaved V/U plane
+						mYuvBuffer = ByteBuffer.allocateDirect(frameWidth * frameHeight * 3 / 2);
+					}
+
+					mYuvBuffer.rewind();
+					frame.copyBufferToNioBuffer(mYuvBuffer);
+					mYuvBuffer.rewind();
+					yuvBuffer = mYuvBuffer;
 				}
 
-				mTextureBuffer.rewind();
-				frame.copyBufferToNioBuffer(mTextureBuffer);
-				mTextureBuffer.rewind();
+				textureBuffer = frames.beginWrite();
+				if (textureBuffer == null)
+					return;
+
+				if (uploadFormat == UploadFormat.LUMINANCE)
+				{
+					// The Y plane is the luminance image, a single bulk copy
+					final int limit = yuvBuffer.limit();
+					yuvBuffer.limit(yuvBuffer.position() + frameWidth * frameHeight);
+					textureBuffer.put(yuvBuffer);
+					yuvBuffer.limit(limit);
+					yuvBuffer.rewind();
+				}
+				else
+				{
+					mYuvConverter.convert(yuvBuffer, textureBuffer, frameWidth, frameHeight, uploadFormat);
+				}
 
 				break;
+		}
 
-			default:
-				Log.e(TAG, "Unimplemented color format " + frame.getColorFormat());
-				return;
+		if (mHoldFrames)
+		{
+			mHeldFrames = frames;
+			mHeldCaptureTime = captureTime;
 		}
+		else
+		{
+			frames.publish(captureTime);
+		}
+	}
 
-		mMustUpdateTexture = true;
+	/**
+	 * Compute the per-tile tables from the current layout (tiled mode only)
+	 */
+	private void updateTileTables()
+	{
+		for (int tileY = 0; tileY < mTilesY; ++tileY)
+		{
+			for (int tileX = 0; tileX < mTilesX; ++tileX)
+			{
+				final int tile = tileY * mTilesX + tileX;
+				final int x = tileX * mTileWidth;
+				final int y = tileY * mTileHeight;
+				final int width = Math.min(mTileWidth, mCameraImageWidth - x);
+				final int height = Math.min(mTileHeight, mCameraImageHeight - y);
 
-		mCameraImageWidth = frameWidth;
-		mCameraImageHeight = frameHeight;
+				for (int rotation = 0; rotation < 4; ++rotation)
+				{
+					final int index = 4 * tile + rotation;
+					mTileVertices[index].rewind();
+
+					mTileVisible[index] = mLayout.computeTile(rotation,
+						(float)x / mCameraImageWidth,
+						(float)y / mCameraImageHeight,
+						(float)(x + width) / mCameraImageWidth,
+						(float)(y + height) / mCameraImageHeight,
+						(float)width / mTextureWidth,
+						(float)height / mTextureHeight,
+						mTileVertices[index]);
+
+					mTileVertices[index].rewind();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Upload the camera image to the texture(s)
+	 */
+	private void uploadTiles(GL10 gl, ByteBuffer image)
+	{
+		final int firstTexture = mTextureSlot * mTilesX * mTilesY;
+
+		if (mTilesX * mTilesY == 1)
+		{
+			gl.glBindTexture(GL10.GL_TEXTURE_2D, mTextures[firstTexture]);
+			gl.glTexSubImage2D(
+				GL10.GL_TEXTURE_2D,
+				0,
+				0,
+				0,
+				mCameraImageWidth,
+				mCameraImageHeight,
+				mTextureFormat.glFormat,
+				mTextureFormat.glType,
+				image);
+			return;
+		}
+
+		for (int tileY = 0; tileY < mTilesY; ++tileY)
+		{
+			for (int tileX = 0; tileX < mTilesX; ++tileX)
+			{
+				final int x = tileX * mTileWidth;
+				final int y = tileY * mTileHeight;
+				final int width = Math.min(mTileWidth, mCameraImageWidth - x);
+				final int height = Math.min(mTileHeight, mCameraImageHeight - y);
+
+				copyTile(image, x, y, width, height);
+
+				gl.glBindTexture(GL10.GL_TEXTURE_2D, mTextures[firstTexture + tileY * mTilesX + tileX]);
+				gl.glTexSubImage2D(
+					GL10.GL_TEXTURE_2D,
+					0,
+					0,
+					0,
+					width,
+					height,
+					mTextureFormat.glFormat,
+					mTextureFormat.glType,
+					mTileBuffer);
+			}
+		}
 	}
 }
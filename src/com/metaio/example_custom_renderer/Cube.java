@@ -1,9 +1,5 @@
 package com.metaio.example_custom_renderer;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-
 import javax.microedition.khronos.opengles.GL10;
 
 public final class Cube
@@ -17,10 +13,12 @@ public final class Cube
 		1.0f, 0.0f, 1.0f
 	};
 
-	private FloatBuffer vertexBuffer;
+	private final MeshRegistry.Mesh mesh;
+
+	private final MeshRegistry meshes;
 
 	/**
-	 * Triangle strip vertices for a cube
+	 * Triangle strip vertices for a cube, four per side
 	 */
 	private float[] vertices = {
 		// Top (green)
@@ -60,27 +58,39 @@ public final class Cube
 		1.0f, -1.0f, -1.0f
 	};
 
-	public Cube()
-	{
-		ByteBuffer buffer = ByteBuffer.allocateDirect(vertices.length * 4);
-		buffer.order(ByteOrder.nativeOrder());
-		vertexBuffer = buffer.asFloatBuffer();
-		vertexBuffer.put(vertices);
-		vertexBuffer.rewind();
-	}
+	/**
+	 * Order in which each side's strip vertices form two triangles
+	 */
+	private static final int[] STRIP_TO_TRIANGLES = {0, 1, 2, 2, 1, 3};
 
-	public void render(GL10 gl)
+	public Cube(MeshRegistry meshes)
 	{
-		gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
-		gl.glVertexPointer(3, GL10.GL_FLOAT, 0, vertexBuffer);
-
+		// All sides as one triangle list with per-vertex colors, so the cube is a single draw call
+		float[] triangles = new float[6 * STRIP_TO_TRIANGLES.length * 7];
+		int i = 0;
 		for (int side = 0; side < 6; ++side)
 		{
-			gl.glColor4f(colors[3*side], colors[3*side+1], colors[3*side+2], 1);
-
-			gl.glDrawArrays(GL10.GL_TRIANGLE_STRIP, side*4, 4);
+			for (int corner : STRIP_TO_TRIANGLES)
+			{
+				final int vertex = 3 * (4*side + corner);
+				triangles[i++] = vertices[vertex];
+				triangles[i++] = vertices[vertex+1];
+				triangles[i++] = vertices[vertex+2];
+				triangles[i++] = colors[3*side];
+				triangles[i++] = colors[3*side+1];
+				triangles[i++] = colors[3*side+2];
+				triangles[i++] = 1;
+			}
 		}
 
-		gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+		this.meshes = meshes;
+		mesh = meshes.register(GL10.GL_TRIANGLES, MeshRegistry.COLORS, triangles);
+	}
+
+	public void render(GL10 gl)
+	{
+		meshes.bind(gl, mesh);
+		meshes.draw(gl, mesh);
+		meshes.unbind(gl, mesh);
 	}
 }
\ No newline at end of file
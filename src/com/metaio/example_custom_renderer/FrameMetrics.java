@@ -0,0 +1,306 @@
+package com.metaio.example_custom_renderer;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Per-stage frame time histograms and camera-to-display latencies. The render thread records
+ * durations without locking or allocating; a background thread periodically drains the histograms
+ * and exports count, mean, p50, p90, p99 and max per stage to logcat and appends them as CSV to a
+ * file, so frame cost can be graphed from devices in the field.
+ *
+ * Camera frames are traced by their sequence number: each frame is recorded once with its capture,
+ * upload and draw time. Frames that were never drawn (sequence number gaps) are counted as
+ * dropped, frames drawn again because no newer frame arrived in time are counted as duplicated.
+ */
+public final class FrameMetrics
+{
+	private static final String TAG = "FrameMetrics";
+
+	public enum Stage
+	{
+		/**
+		 * IMetaioSDKAndroid.requestCameraImage()
+		 */
+		REQUEST_CAMERA_IMAGE,
+
+		/**
+		 * IMetaioSDKAndroid.render(), i.e. camera frame delivery and tracking
+		 */
+		TRACKING,
+
+		/**
+		 * Camera texture upload
+		 */
+		CAMERA_UPLOAD,
+
+		/**
+		 * SurfaceTexture.updateTexImage() of all visible videos
+		 */
+		VIDEO_UPDATE,
+
+		/**
+		 * Drawing all overlays, including VIDEO_UPDATE
+		 */
+		OVERLAY_DRAW,
+
+		/**
+		 * Whole onDrawFrame()
+		 */
+		FRAME,
+
+		/**
+		 * Latency from receiving a camera frame until its texture upload
+		 */
+		CAPTURE_TO_UPLOAD,
+
+		/**
+		 * Latency from the texture upload of a camera frame until the end of the frame that first
+		 * draws it
+		 */
+		UPLOAD_TO_DRAW,
+
+		/**
+		 * Latency from receiving a camera frame until the end of the frame that first draws it
+		 */
+		CAPTURE_TO_DRAW,
+
+		/**
+		 * Time per GL frame that the tracking thread spent tracking while the frame was rendered,
+		 * i.e. that ran in parallel instead of adding to the frame (pipelined tracking only)
+		 */
+		PIPELINE_GAIN,
+
+		/**
+		 * Time from onResume() until the first frame is drawn, once per resume
+		 */
+		RESUME_TO_FIRST_FRAME
+	}
+
+	private static final Stage[] STAGES = Stage.values();
+
+	/**
+	 * Scratch counts for exporting, only used by the export thread
+	 */
+	private final int[] mCounts = new int[LatencyHistogram.BUCKET_COUNT];
+
+	/**
+	 * Camera frames that were drawn, since the last export
+	 */
+	private final AtomicLong mDrawnFrames = new AtomicLong(0);
+
+	/**
+	 * Camera frames that were never drawn, since the last export
+	 */
+	private final AtomicLong mDroppedFrames = new AtomicLong(0);
+
+	/**
+	 * Draws that showed the same camera frame as the previous draw, since the last export
+	 */
+	private final AtomicLong mDuplicatedFrames = new AtomicLong(0);
+
+	private Thread mExportThread;
+
+	private final File mFile;
+
+	private final LatencyHistogram[] mHistograms = new LatencyHistogram[STAGES.length];
+
+	private final long mIntervalMillis;
+
+	/**
+	 * Time of the last export or start() (SystemClock.uptimeMillis)
+	 */
+	private long mLastExportTime = 0;
+
+	/**
+	 * Sequence number of the last drawn camera frame, only accessed by the render thread
+	 */
+	private long mLastSequenceNumber = -1;
+
+	/**
+	 * @param file CSV file the metrics are appended to, or null to export to logcat only
+	 * @param intervalMillis Export interval
+	 */
+	public FrameMetrics(File file, long intervalMillis)
+	{
+		mFile = file;
+		mIntervalMillis = intervalMillis;
+
+		for (int i = 0; i < mHistograms.length; ++i)
+			mHistograms[i] = new LatencyHistogram();
+	}
+
+	/**
+	 * Drain all histograms and export them. Called periodically by the export thread.
+	 */
+	public synchronized void export()
+	{
+		final long timestamp = System.currentTimeMillis();
+		StringBuilder csv = new StringBuilder();
+
+		for (Stage stage : STAGES)
+		{
+			final LatencyHistogram histogram = mHistograms[stage.ordinal()];
+			final int count = histogram.drain(mCounts);
+			final long total = histogram.drainTotalMicros();
+			final long max = histogram.drainMaxMicros();
+			if (count == 0)
+				continue;
+
+			final long mean = total / count;
+			final long p50 = LatencyHistogram.getPercentile(mCounts, count, 50);
+			final long p90 = LatencyHistogram.getPercentile(mCounts, count, 90);
+			final long p99 = LatencyHistogram.getPercentile(mCounts, count, 99);
+
+			Log.i(TAG, stage + ": n=" + count + " mean=" + mean + "us p50=" + p50 + "us p90=" + p90 +
+				"us p99=" + p99 + "us max=" + max + "us");
+
+			csv.append(timestamp).append(',').append(stage).append(',').append(count).append(',')
+				.append(mean).append(',').append(p50).append(',').append(p90).append(',')
+				.append(p99).append(',').append(max).append('\n');
+		}
+
+		final long drawnFrames = mDrawnFrames.getAndSet(0);
+		final long droppedFrames = mDroppedFrames.getAndSet(0);
+		final long duplicatedFrames = mDuplicatedFrames.getAndSet(0);
+
+		// Delivered camera frame rate, e.g. to compare rendering on demand with continuous rendering
+		final long now = SystemClock.uptimeMillis();
+		final float drawnFps = mLastExportTime != 0 && now > mLastExportTime ?
+			drawnFrames * 1000f / (now - mLastExportTime) : 0;
+		mLastExportTime = now;
+
+		Log.i(TAG, "Camera frames drawn=" + drawnFrames + " (" + drawnFps + " fps) dropped=" + droppedFrames +
+			" duplicated=" + duplicatedFrames);
+		csv.append(timestamp).append(",DRAWN_FPS,").append(drawnFps).append(",,,,,\n");
+		csv.append(timestamp).append(",DROPPED_FRAMES,").append(droppedFrames).append(",,,,,\n");
+		csv.append(timestamp).append(",DUPLICATED_FRAMES,").append(duplicatedFrames).append(",,,,,\n");
+
+		if (mFile == null)
+			return;
+
+		final boolean writeHeader = !mFile.exists();
+		Writer writer = null;
+		try
+		{
+			writer = new FileWriter(mFile, true);
+			if (writeHeader)
+				writer.write("timestamp,stage,count,mean_us,p50_us,p90_us,p99_us,max_us\n");
+			writer.write(csv.toString());
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Failed to write " + mFile, e);
+		}
+		finally
+		{
+			if (writer != null)
+			{
+				try
+				{
+					writer.close();
+				}
+				catch (IOException e)
+				{
+				}
+			}
+		}
+	}
+
+	public void record(Stage stage, long nanos)
+	{
+		mHistograms[stage.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Record the camera frame drawn in the current frame, must be called once per frame on the
+	 * render thread
+	 *
+	 * @param sequenceNumber Sequence number of the drawn camera frame, -1 if none
+	 * @param captureTime Time the camera frame was received
+	 * @param uploadTime Time the camera frame was uploaded
+	 * @param drawTime Time the frame was finished
+	 */
+	public void recordCameraFrame(long sequenceNumber, long captureTime, long uploadTime, long drawTime)
+	{
+		if (sequenceNumber < 0)
+			return;
+
+		if (sequenceNumber == mLastSequenceNumber)
+		{
+			mDuplicatedFrames.incrementAndGet();
+			return;
+		}
+
+		if (mLastSequenceNumber >= 0 && sequenceNumber > mLastSequenceNumber + 1)
+			mDroppedFrames.addAndGet(sequenceNumber - mLastSequenceNumber - 1);
+		mLastSequenceNumber = sequenceNumber;
+		mDrawnFrames.incrementAndGet();
+
+		record(Stage.CAPTURE_TO_UPLOAD, uploadTime - captureTime);
+		record(Stage.UPLOAD_TO_DRAW, drawTime - uploadTime);
+		record(Stage.CAPTURE_TO_DRAW, drawTime - captureTime);
+	}
+
+	/**
+	 * Forget the last drawn camera frame, e.g. when the camera renderer was recreated and its
+	 * sequence numbers start over
+	 */
+	public void resetCameraFrames()
+	{
+		mLastSequenceNumber = -1;
+	}
+
+	/**
+	 * Start exporting periodically, e.g. in onResume()
+	 */
+	public synchronized void start()
+	{
+		if (mExportThread != null)
+			return;
+
+		// The time paused does not count towards the delivered frame rate
+		mLastExportTime = SystemClock.uptimeMillis();
+
+		mExportThread = new Thread("FrameMetrics")
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while (!isInterrupted())
+					{
+						Thread.sleep(mIntervalMillis);
+						export();
+					}
+				}
+				catch (InterruptedException e)
+				{
+					// Stopped
+				}
+			}
+		};
+		mExportThread.setDaemon(true);
+		mExportThread.setPriority(Thread.MIN_PRIORITY);
+		mExportThread.start();
+	}
+
+	/**
+	 * Stop exporting, e.g. in onPause(). Values recorded until then are exported on the next start.
+	 */
+	public synchronized void stop()
+	{
+		if (mExportThread != null)
+		{
+			mExportThread.interrupt();
+			mExportThread = null;
+		}
+	}
+}
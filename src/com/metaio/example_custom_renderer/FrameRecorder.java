@@ -0,0 +1,233 @@
+package com.metaio.example_custom_renderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import android.util.Log;
+
+import com.metaio.sdk.jni.ImageStruct;
+
+/**
+ * Records the raw camera frames and the per-frame tracking state into an append-only recording,
+ * so that rendering can be benchmarked deterministically with FrameReplayer, without a camera or
+ * marker. Both files are written through memory mappings that grow in chunks, so recording a frame
+ * costs one copy from the metaio SDK into the page cache. See RecordingFormat for the file format.
+ */
+public final class FrameRecorder
+{
+	private static final String TAG = "FrameRecorder";
+
+	/**
+	 * Size by which the mappings grow
+	 */
+	private static final int MAP_CHUNK_SIZE = 32 << 20;
+
+	/**
+	 * Append-only file written through a memory mapping that grows in chunks
+	 */
+	private static final class MappedFile
+	{
+		private final FileChannel mChannel;
+
+		private final RandomAccessFile mFile;
+
+		private MappedByteBuffer mMapping;
+
+		private long mMappingStart;
+
+		private long mSize = 0;
+
+		MappedFile(File file) throws IOException
+		{
+			mFile = new RandomAccessFile(file, "rw");
+			mFile.setLength(0);
+			mChannel = mFile.getChannel();
+		}
+
+		/**
+		 * Append size bytes to the file
+		 *
+		 * @return Mapping positioned at the appended bytes, valid until the next call
+		 */
+		ByteBuffer append(int size) throws IOException
+		{
+			if (mMapping == null || mSize + size > mMappingStart + mMapping.capacity())
+			{
+				mMappingStart = mSize;
+				mMapping = mChannel.map(FileChannel.MapMode.READ_WRITE, mSize, Math.max(MAP_CHUNK_SIZE, size));
+				mMapping.order(ByteOrder.LITTLE_ENDIAN);
+			}
+
+			mMapping.position((int)(mSize - mMappingStart));
+			mSize += size;
+			return mMapping;
+		}
+
+		/**
+		 * Cut off the unused part of the last chunk and close the file
+		 */
+		void close() throws IOException
+		{
+			mMapping = null;
+			mChannel.truncate(mSize);
+			mFile.close();
+		}
+
+		long getSize()
+		{
+			return mSize;
+		}
+	}
+
+	private MappedFile mData;
+
+	private final File mFile;
+
+	private MappedFile mIndex;
+
+	/**
+	 * Offset of the record between beginRecord() and endRecord()
+	 */
+	private long mRecordOffset;
+
+	/**
+	 * Create the recording, overwriting existing files
+	 *
+	 * @param file Data file, the index is written next to it
+	 */
+	public FrameRecorder(File file) throws IOException
+	{
+		mFile = file;
+		mData = new MappedFile(file);
+		mIndex = new MappedFile(new File(file.getPath() + RecordingFormat.INDEX_SUFFIX));
+
+		mData.append(RecordingFormat.FILE_HEADER_SIZE).putInt(RecordingFormat.MAGIC).putInt(RecordingFormat.VERSION);
+		mIndex.append(RecordingFormat.FILE_HEADER_SIZE).putInt(RecordingFormat.INDEX_MAGIC).putInt(RecordingFormat.VERSION);
+	}
+
+	/**
+	 * Begin a record, the caller writes the payload into the returned buffer
+	 */
+	private ByteBuffer beginRecord(int type, int payloadSize, long timestampNanos) throws IOException
+	{
+		mRecordOffset = mData.getSize();
+
+		ByteBuffer buffer = mData.append(RecordingFormat.RECORD_HEADER_SIZE + payloadSize);
+		buffer.putInt(type).putInt(payloadSize).putLong(timestampNanos);
+		return buffer;
+	}
+
+	/**
+	 * Publish the record begun last by adding its index entry
+	 */
+	private void endRecord(int type, int payloadSize) throws IOException
+	{
+		mIndex.append(RecordingFormat.INDEX_ENTRY_SIZE).putLong(mRecordOffset).putInt(type).putInt(payloadSize);
+	}
+
+	/**
+	 * Close the recording, later record calls are ignored
+	 */
+	public synchronized void close()
+	{
+		if (mData == null)
+			return;
+
+		try
+		{
+			mData.close();
+			mIndex.close();
+			Log.i(TAG, "Recorded " + mFile);
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Failed to close " + mFile, e);
+		}
+
+		mData = null;
+		mIndex = null;
+	}
+
+	/**
+	 * Append a camera frame
+	 *
+	 * @param timestampNanos Capture time (System.nanoTime() base)
+	 */
+	public synchronized void recordFrame(ImageStruct frame, long timestampNanos)
+	{
+		if (mData == null)
+			return;
+
+		final int payloadSize = RecordingFormat.FRAME_HEADER_SIZE + frame.getBufferSize();
+
+		try
+		{
+			ByteBuffer buffer = beginRecord(RecordingFormat.TYPE_FRAME, payloadSize, timestampNanos);
+			buffer.putInt(frame.getWidth());
+			buffer.putInt(frame.getHeight());
+			buffer.putInt(frame.getColorFormat().swigValue());
+			buffer.putInt(frame.getOriginIsUpperLeft() ? RecordingFormat.FLAG_ORIGIN_UPPER_LEFT : 0);
+
+			// The metaio SDK copies straight into the mapping
+			ByteBuffer image = buffer.slice();
+			image.limit(frame.getBufferSize());
+			frame.copyBufferToNioBuffer(image);
+
+			endRecord(RecordingFormat.TYPE_FRAME, payloadSize);
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Failed to record frame, recording stopped", e);
+			close();
+		}
+	}
+
+	/**
+	 * Append the tracking state that belongs to the frames recorded since the last call
+	 *
+	 * @param timestampNanos Frame time
+	 * @param tracked Raw tracking state per target, at most 32 targets
+	 * @param modelMatrices Model matrix per target, 16 floats each, only read if tracked
+	 * @param projectionMatrix Right-handed projection matrix of the metaio SDK
+	 */
+	public synchronized void recordTracking(long timestampNanos, boolean[] tracked, float[] modelMatrices,
+		float[] projectionMatrix)
+	{
+		if (mData == null)
+			return;
+
+		final int targetCount = tracked.length;
+		final int payloadSize = 8 + 16 * 4 * (1 + targetCount);
+
+		try
+		{
+			ByteBuffer buffer = beginRecord(RecordingFormat.TYPE_TRACKING, payloadSize, timestampNanos);
+
+			int trackedMask = 0;
+			for (int i = 0; i < targetCount; ++i)
+			{
+				if (tracked[i])
+					trackedMask |= 1 << i;
+			}
+
+			buffer.putInt(targetCount);
+			buffer.putInt(trackedMask);
+			for (int i = 0; i < 16; ++i)
+				buffer.putFloat(projectionMatrix[i]);
+			for (int i = 0; i < 16 * targetCount; ++i)
+				buffer.putFloat(modelMatrices[i]);
+
+			endRecord(RecordingFormat.TYPE_TRACKING, payloadSize);
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Failed to record tracking state, recording stopped", e);
+			close();
+		}
+	}
+}
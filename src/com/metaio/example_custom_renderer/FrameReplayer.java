@@ -0,0 +1,248 @@
+package com.metaio.example_custom_renderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Plays back a recording written by FrameRecorder, record by record. Nothing is read into the
+ * heap: camera frames are returned as views of the memory-mapped data file and can be uploaded
+ * straight from there. Only uses java.io and java.nio, so the same recording can be replayed at
+ * full speed on a desktop JVM against a fake GL implementation.
+ */
+public final class FrameReplayer
+{
+	/**
+	 * Largest part of the data file mapped at once, recordings can be larger than what a single
+	 * mapping can address
+	 */
+	private static final long MAX_WINDOW_SIZE = 1L << 30;
+
+	private final FileChannel mDataChannel;
+
+	private final RandomAccessFile mDataFile;
+
+	private final long mDataSize;
+
+	/**
+	 * Mapped index file
+	 */
+	private final MappedByteBuffer mIndex;
+
+	/**
+	 * Mapped payload of the current record
+	 */
+	private ByteBuffer mRecord;
+
+	private final int mRecordCount;
+
+	/**
+	 * Index of the current record, -1 before the first next() call
+	 */
+	private int mRecordIndex = -1;
+
+	private long mTimestamp;
+
+	private int mType;
+
+	/**
+	 * Currently mapped part of the data file
+	 */
+	private MappedByteBuffer mWindow;
+
+	private long mWindowStart;
+
+	/**
+	 * @param file Data file of the recording, the index is expected next to it
+	 */
+	public FrameReplayer(File file) throws IOException
+	{
+		RandomAccessFile indexFile = new RandomAccessFile(new File(file.getPath() + RecordingFormat.INDEX_SUFFIX), "r");
+		try
+		{
+			FileChannel indexChannel = indexFile.getChannel();
+			mIndex = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+			mIndex.order(ByteOrder.LITTLE_ENDIAN);
+		}
+		finally
+		{
+			// The mapping stays valid after closing
+			indexFile.close();
+		}
+
+		mDataFile = new RandomAccessFile(file, "r");
+		mDataChannel = mDataFile.getChannel();
+		mDataSize = mDataChannel.size();
+
+		if (mIndex.capacity() < RecordingFormat.FILE_HEADER_SIZE || mIndex.getInt(0) != RecordingFormat.INDEX_MAGIC ||
+			mIndex.getInt(4) != RecordingFormat.VERSION)
+		{
+			close();
+			throw new IOException("Not a recording index: " + file);
+		}
+
+		// A recording that was not closed properly ends with zeroed entries
+		int recordCount = 0;
+		final int maxRecordCount = (mIndex.capacity() - RecordingFormat.FILE_HEADER_SIZE) / RecordingFormat.INDEX_ENTRY_SIZE;
+		while (recordCount < maxRecordCount)
+		{
+			final int entry = RecordingFormat.FILE_HEADER_SIZE + recordCount * RecordingFormat.INDEX_ENTRY_SIZE;
+			final long offset = mIndex.getLong(entry);
+			final int payloadSize = mIndex.getInt(entry + 12);
+			if (offset < RecordingFormat.FILE_HEADER_SIZE ||
+				offset + RecordingFormat.RECORD_HEADER_SIZE + payloadSize > mDataSize)
+			{
+				break;
+			}
+
+			++recordCount;
+		}
+		mRecordCount = recordCount;
+	}
+
+	public void close() throws IOException
+	{
+		mWindow = null;
+		mRecord = null;
+		mDataFile.close();
+	}
+
+	/**
+	 * Color format of the current TYPE_FRAME record (ECOLOR_FORMAT.swigValue())
+	 */
+	public int getFrameColorFormat()
+	{
+		return mRecord.getInt(8);
+	}
+
+	/**
+	 * Image data of the current TYPE_FRAME record, a view of the mapped file that is valid until
+	 * the next call to next()
+	 */
+	public ByteBuffer getFrameData()
+	{
+		mRecord.position(RecordingFormat.FRAME_HEADER_SIZE);
+		ByteBuffer data = mRecord.slice();
+		mRecord.rewind();
+		return data;
+	}
+
+	public int getFrameHeight()
+	{
+		return mRecord.getInt(4);
+	}
+
+	public int getFrameWidth()
+	{
+		return mRecord.getInt(0);
+	}
+
+	/**
+	 * Model matrix of a target in the current TYPE_TRACKING record
+	 */
+	public void getModelMatrix(int target, float[] matrix, int offset)
+	{
+		final int position = 8 + 16 * 4 * (1 + target);
+		for (int i = 0; i < 16; ++i)
+			matrix[offset + i] = mRecord.getFloat(position + 4 * i);
+	}
+
+	/**
+	 * Projection matrix of the current TYPE_TRACKING record
+	 */
+	public void getProjectionMatrix(float[] matrix)
+	{
+		for (int i = 0; i < 16; ++i)
+			matrix[i] = mRecord.getFloat(8 + 4 * i);
+	}
+
+	public int getRecordCount()
+	{
+		return mRecordCount;
+	}
+
+	/**
+	 * Number of targets in the current TYPE_TRACKING record
+	 */
+	public int getTargetCount()
+	{
+		return mRecord.getInt(0);
+	}
+
+	/**
+	 * Timestamp of the current record as passed to the recorder
+	 */
+	public long getTimestamp()
+	{
+		return mTimestamp;
+	}
+
+	/**
+	 * Type of the current record, RecordingFormat.TYPE_FRAME or RecordingFormat.TYPE_TRACKING
+	 */
+	public int getType()
+	{
+		return mType;
+	}
+
+	public boolean isFrameOriginUpperLeft()
+	{
+		return (mRecord.getInt(12) & RecordingFormat.FLAG_ORIGIN_UPPER_LEFT) != 0;
+	}
+
+	/**
+	 * Whether a target is tracked in the current TYPE_TRACKING record
+	 */
+	public boolean isTracked(int target)
+	{
+		return target < getTargetCount() && (mRecord.getInt(4) & (1 << target)) != 0;
+	}
+
+	/**
+	 * Advance to the next record
+	 *
+	 * @return false at the end of the recording
+	 */
+	public boolean next() throws IOException
+	{
+		if (mRecordIndex + 1 >= mRecordCount)
+			return false;
+
+		++mRecordIndex;
+
+		final int entry = RecordingFormat.FILE_HEADER_SIZE + mRecordIndex * RecordingFormat.INDEX_ENTRY_SIZE;
+		final long offset = mIndex.getLong(entry);
+		mType = mIndex.getInt(entry + 8);
+		final int recordSize = RecordingFormat.RECORD_HEADER_SIZE + mIndex.getInt(entry + 12);
+
+		if (mWindow == null || offset < mWindowStart || offset + recordSize > mWindowStart + mWindow.capacity())
+		{
+			mWindowStart = offset;
+			mWindow = mDataChannel.map(FileChannel.MapMode.READ_ONLY, offset,
+				Math.min(mDataSize - offset, Math.max(MAX_WINDOW_SIZE, recordSize)));
+			mWindow.order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		final int position = (int)(offset - mWindowStart);
+		mTimestamp = mWindow.getLong(position + 8);
+
+		mWindow.limit(position + recordSize);
+		mWindow.position(position + RecordingFormat.RECORD_HEADER_SIZE);
+		mRecord = mWindow.slice().order(ByteOrder.LITTLE_ENDIAN);
+		mWindow.clear();
+
+		return true;
+	}
+
+	/**
+	 * Start over at the first record
+	 */
+	public void rewind()
+	{
+		mRecordIndex = -1;
+	}
+}
@@ -0,0 +1,191 @@
+package com.metaio.example_custom_renderer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free triple buffer for handing camera frames from the camera callback (producer) to the
+ * GL thread (consumer). The producer always owns one buffer, the consumer owns another one and the
+ * third buffer holds the latest published frame. Neither side ever waits for the other.
+ */
+public final class FrameRing
+{
+	public enum DropPolicy
+	{
+		/**
+		 * A new frame replaces a published frame that has not been consumed yet
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * A new frame is discarded while the published frame has not been consumed yet
+		 */
+		DROP_NEWEST
+	}
+
+	private static final int INDEX_MASK = 0x3;
+
+	private static final int READY_SHIFT = 2;
+
+	private static final int FRONT_SHIFT = 4;
+
+	/**
+	 * Set if the ready buffer contains a frame that the consumer has not seen yet
+	 */
+	private static final int FRESH_BIT = 1 << 6;
+
+	private final ByteBuffer[] mBuffers;
+
+	private final long[] mSequenceNumbers = new long[3];
+
+	/**
+	 * Capture timestamp per buffer as passed to publish()
+	 */
+	private final long[] mTimestamps = new long[3];
+
+	private final DropPolicy mDropPolicy;
+
+	/**
+	 * Packed buffer indices: bits 0-1 producer (back) buffer, bits 2-3 ready buffer, bits 4-5
+	 * consumer (front) buffer, plus FRESH_BIT
+	 */
+	private final AtomicInteger mState = new AtomicInteger(0 | (1 << READY_SHIFT) | (2 << FRONT_SHIFT));
+
+	/**
+	 * Sequence number of the next published or dropped frame, only accessed by the producer
+	 */
+	private long mNextSequenceNumber = 0;
+
+	private volatile long mDroppedFrames = 0;
+
+	public FrameRing(int bufferSize, DropPolicy dropPolicy)
+	{
+		mDropPolicy = dropPolicy;
+		mBuffers = new ByteBuffer[3];
+		for (int i = 0; i < mBuffers.length; ++i)
+			mBuffers[i] = ByteBuffer.allocateDirect(bufferSize);
+	}
+
+	/**
+	 * Get the buffer the producer may write the next frame into.
+	 *
+	 * @return Rewound buffer, or null if the frame should be dropped (DROP_NEWEST policy and the
+	 *         last published frame was not consumed yet)
+	 */
+	public ByteBuffer beginWrite()
+	{
+		final int state = mState.get();
+
+		if (mDropPolicy == DropPolicy.DROP_NEWEST && (state & FRESH_BIT) != 0)
+		{
+			// The dropped frame uses up its sequence number like with DROP_OLDEST, so that consumers
+			// see the gap
+			mNextSequenceNumber++;
+			mDroppedFrames++;
+			return null;
+		}
+
+		ByteBuffer buffer = mBuffers[state & INDEX_MASK];
+		buffer.rewind();
+		return buffer;
+	}
+
+	/**
+	 * Publish the frame written into the buffer returned by beginWrite() and swap in a free buffer
+	 * for the producer.
+	 *
+	 * @return Sequence number assigned to the published frame
+	 */
+	public long publish()
+	{
+		return publish(0);
+	}
+
+	/**
+	 * Same as publish(), additionally stores the frame's capture timestamp
+	 *
+	 * @param timestampNanos Capture time (System.nanoTime() base), see getFrontTimestamp()
+	 */
+	public long publish(long timestampNanos)
+	{
+		final long sequenceNumber = mNextSequenceNumber++;
+
+		int state, newState;
+		do
+		{
+			state = mState.get();
+			final int back = state & INDEX_MASK;
+			final int ready = (state >> READY_SHIFT) & INDEX_MASK;
+
+			// The producer owns the back buffer, so the sequence number can be set before publishing
+			mSequenceNumbers[back] = sequenceNumber;
+			mTimestamps[back] = timestampNanos;
+
+			newState = ready | (back << READY_SHIFT) | (state & (INDEX_MASK << FRONT_SHIFT)) | FRESH_BIT;
+		}
+		while (!mState.compareAndSet(state, newState));
+
+		if ((state & FRESH_BIT) != 0)
+			mDroppedFrames++;
+
+		return sequenceNumber;
+	}
+
+	/**
+	 * Take the latest published frame as the consumer's front buffer if there is a new one.
+	 *
+	 * @return true if a new frame is available through getFrontBuffer()
+	 */
+	public boolean consume()
+	{
+		int state, newState;
+		do
+		{
+			state = mState.get();
+			if ((state & FRESH_BIT) == 0)
+				return false;
+
+			final int ready = (state >> READY_SHIFT) & INDEX_MASK;
+			final int front = (state >> FRONT_SHIFT) & INDEX_MASK;
+
+			newState = (state & INDEX_MASK) | (front << READY_SHIFT) | (ready << FRONT_SHIFT);
+		}
+		while (!mState.compareAndSet(state, newState));
+
+		return true;
+	}
+
+	/**
+	 * Buffer owned by the consumer, valid until the next successful consume()
+	 */
+	public ByteBuffer getFrontBuffer()
+	{
+		ByteBuffer buffer = mBuffers[(mState.get() >> FRONT_SHIFT) & INDEX_MASK];
+		buffer.rewind();
+		return buffer;
+	}
+
+	/**
+	 * Sequence number of the frame in the consumer's front buffer
+	 */
+	public long getFrontSequenceNumber()
+	{
+		return mSequenceNumbers[(mState.get() >> FRONT_SHIFT) & INDEX_MASK];
+	}
+
+	/**
+	 * Capture timestamp of the frame in the consumer's front buffer
+	 */
+	public long getFrontTimestamp()
+	{
+		return mTimestamps[(mState.get() >> FRONT_SHIFT) & INDEX_MASK];
+	}
+
+	/**
+	 * Number of frames dropped so far according to the drop policy
+	 */
+	public long getDroppedFrames()
+	{
+		return mDroppedFrames;
+	}
+}
@@ -0,0 +1,634 @@
+package com.metaio.example_custom_renderer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+import android.util.Log;
+
+import com.metaio.sdk.jni.ECOLOR_FORMAT;
+import com.metaio.sdk.jni.ESCREEN_ROTATION;
+import com.metaio.sdk.jni.ImageStruct;
+
+/**
+ * GLES 2.0 rendering backend for the camera image and the video overlays. Camera frames are
+ * uploaded as YUV420SP (NV21) planes and converted to RGB in the fragment shader, so no color
+ * conversion runs on the CPU. Videos are sampled from their external (OES) textures by a second
+ * program that shares the vertex shader, so a frame needs exactly two program switches: camera
+ * image, then all overlays.
+ *
+ * Must be created and drawn on the GL thread of a GLES 2.0 context. updateFrame() may be called
+ * from any thread.
+ */
+public final class GLES20Compositor
+{
+	private static final String TAG = "GLES20Compositor";
+
+	private static final int ATTRIBUTE_POSITION = 0;
+
+	private static final int ATTRIBUTE_TEXCOORD = 1;
+
+	private static final String VERTEX_SHADER =
+		"uniform mat4 uMvpMatrix;\n" +
+		"attribute vec4 aPosition;\n" +
+		"attribute vec2 aTexCoord;\n" +
+		"varying vec2 vTexCoord;\n" +
+		"void main()\n" +
+		"{\n" +
+		"	gl_Position = uMvpMatrix * aPosition;\n" +
+		"	vTexCoord = aTexCoord;\n" +
+		"}\n";
+
+	/**
+	 * BT.601 video range YUV to RGB, same coefficients as YuvConverter. The V/U plane is uploaded
+	 * as luminance/alpha, so V ends up in the color channels and U in alpha.
+	 */
+	private static final String YUV_FRAGMENT_SHADER =
+		"precision mediump float;\n" +
+		"uniform sampler2D uTextureY;\n" +
+		"uniform sampler2D uTextureVU;\n" +
+		"varying vec2 vTexCoord;\n" +
+		"void main()\n" +
+		"{\n" +
+		"	float y = 1.164 * (texture2D(uTextureY, vTexCoord).r - 0.0625);\n" +
+		"	vec4 vu = texture2D(uTextureVU, vTexCoord);\n" +
+		"	float v = vu.r - 0.5;\n" +
+		"	float u = vu.a - 0.5;\n" +
+		"	gl_FragColor = vec4(y + 1.596 * v, y - 0.813 * v - 0.391 * u, y + 2.018 * u, 1.0);\n" +
+		"}\n";
+
+	private static final String EXTERNAL_FRAGMENT_SHADER =
+		"#extension GL_OES_EGL_image_external : require\n" +
+		"precision mediump float;\n" +
+		"uniform samplerExternalOES uTexture;\n" +
+		"varying vec2 vTexCoord;\n" +
+		"void main()\n" +
+		"{\n" +
+		"	gl_FragColor = texture2D(uTexture, vTexCoord);\n" +
+		"}\n";
+
+	private int mCameraImageHeight;
+
+	private int mCameraImageWidth;
+
+	private final int mExternalMvpLocation;
+
+	private final int mExternalProgram;
+
+	/**
+	 * Capture and upload time (System.nanoTime() base) of the camera frame in the texture
+	 */
+	private long mFrameCaptureTime;
+
+	private long mFrameUploadTime;
+
+	/**
+	 * Sequence number of the camera frame currently in the textures
+	 */
+	private long mFrameSequenceNumber = -1;
+
+	/**
+	 * NV21 camera frames handed from updateFrame() to drawCameraImage(), created by the GL thread
+	 * for each camera image size
+	 */
+	private volatile FrameRing mFrames;
+
+	private final float[] mIdentityMatrix = new float[16];
+
+	/**
+	 * Frame ring and capture time of the frame written by the last updateFrame() call while
+	 * holding frames, null if none. Only accessed by the producer.
+	 */
+	private FrameRing mHeldFrames;
+
+	private long mHeldCaptureTime;
+
+	/**
+	 * Whether updateFrame() leaves publishing frames to publishHeldFrame()
+	 */
+	private volatile boolean mHoldFrames = false;
+
+	/**
+	 * Camera image size (width << 32 | height) the frame ring and textures are set up for, see
+	 * CameraImageRenderer
+	 */
+	private volatile long mInitializedSize = 0;
+
+	/**
+	 * Upload time of the last drawCameraImage() call, 0 if no new frame was uploaded
+	 */
+	private long mLastUploadTimeNanos = 0;
+
+	private final ViewportLayout mLayout = new ViewportLayout();
+
+	private volatile boolean mLayoutDirty = true;
+
+	private final int mMaxTextureSize;
+
+	/**
+	 * Scratch matrix for projection * model-view
+	 */
+	private final float[] mMvpMatrix = new float[16];
+
+	/**
+	 * Projection matrix of the overlays drawn between beginOverlays() and endOverlays()
+	 */
+	private final float[] mProjectionMatrix = new float[16];
+
+	/**
+	 * Camera image size (width << 32 | height) of the latest frame passed to updateFrame()
+	 */
+	private volatile long mRequestedSize = 0;
+
+	/**
+	 * Interleaved x, y, z, u, v of the overlay quad, same layout as ViewportLayout tables
+	 */
+	private final FloatBuffer mQuad;
+
+	private final FloatBuffer mQuadTexCoords;
+
+	/**
+	 * Registry the camera textures are accounted in
+	 */
+	private final GpuResourceRegistry mResources;
+
+	private float mScaleX = 1;
+
+	private float mScaleY = 1;
+
+	private volatile ViewportLayout.ScaleMode mScaleMode = ViewportLayout.ScaleMode.FILL;
+
+	/**
+	 * Added to the frame ring's sequence numbers, so that they keep increasing across
+	 * reinitializations
+	 */
+	private long mSequenceBase = 0;
+
+	/**
+	 * Y and V/U texture pair that holds the latest uploaded camera image
+	 */
+	private int mTextureSlot = 0;
+
+	/**
+	 * Y and V/U texture per slot (Y at even, V/U at odd indices), used round-robin, created on the
+	 * first draw with a frame
+	 */
+	private int[] mTextures;
+
+	private final int mTextureRotationDepth;
+
+	private int mViewportHeight;
+
+	private int mViewportWidth;
+
+	private final int mYuvMvpLocation;
+
+	private final int mYuvProgram;
+
+	/**
+	 * @param textureRotationDepth Number of camera texture pairs uploaded to round-robin
+	 * @param resources Registry the camera textures are accounted in
+	 */
+	public GLES20Compositor(int textureRotationDepth, GpuResourceRegistry resources)
+	{
+		mTextureRotationDepth = Math.max(1, textureRotationDepth);
+		mResources = resources;
+
+		int[] tmp = new int[1];
+		GLES20.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, tmp, 0);
+		mMaxTextureSize = tmp[0] > 0 ? tmp[0] : 2048;
+
+		final int vertexShader = compileShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+
+		mYuvProgram = linkProgram(vertexShader, compileShader(GLES20.GL_FRAGMENT_SHADER, YUV_FRAGMENT_SHADER));
+		mYuvMvpLocation = GLES20.glGetUniformLocation(mYuvProgram, "uMvpMatrix");
+		GLES20.glUseProgram(mYuvProgram);
+		GLES20.glUniform1i(GLES20.glGetUniformLocation(mYuvProgram, "uTextureY"), 0);
+		GLES20.glUniform1i(GLES20.glGetUniformLocation(mYuvProgram, "uTextureVU"), 1);
+
+		mExternalProgram = linkProgram(vertexShader, compileShader(GLES20.GL_FRAGMENT_SHADER, EXTERNAL_FRAGMENT_SHADER));
+		mExternalMvpLocation = GLES20.glGetUniformLocation(mExternalProgram, "uMvpMatrix");
+		GLES20.glUseProgram(mExternalProgram);
+		GLES20.glUniform1i(GLES20.glGetUniformLocation(mExternalProgram, "uTexture"), 0);
+
+		// Programs keep the shaders alive as long as they need them
+		GLES20.glDeleteShader(vertexShader);
+		GLES20.glUseProgram(0);
+
+		Matrix.setIdentityM(mIdentityMatrix, 0);
+
+		final float[] quad = {
+			-1,  1, 0, 0, 0,
+			-1, -1, 0, 0, 1,
+			 1,  1, 0, 1, 0,
+			 1, -1, 0, 1, 1
+		};
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(quad.length * 4);
+		buffer.order(ByteOrder.nativeOrder());
+		mQuad = buffer.asFloatBuffer();
+		mQuad.put(quad);
+		mQuad.position(3);
+		mQuadTexCoords = mQuad.slice();
+		mQuad.rewind();
+	}
+
+	/**
+	 * Switch to the overlay program. Overlays are drawn with drawOverlay() until endOverlays().
+	 *
+	 * @param projectionMatrix Column-major projection matrix for all overlays
+	 */
+	public void beginOverlays(float[] projectionMatrix)
+	{
+		System.arraycopy(projectionMatrix, 0, mProjectionMatrix, 0, 16);
+
+		GLES20.glUseProgram(mExternalProgram);
+		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+		setVertexArrays(mQuad, mQuadTexCoords);
+	}
+
+	public void drawCameraImage(ESCREEN_ROTATION screenRotation)
+	{
+		final long requestedSize = mRequestedSize;
+		if (requestedSize == 0)
+			return;
+
+		// First frame or the camera image size changed
+		if (requestedSize != mInitializedSize)
+			init((int)(requestedSize >>> 32), (int)requestedSize);
+
+		if (mLayoutDirty)
+		{
+			mLayoutDirty = false;
+			mLayout.setScaleMode(mScaleMode);
+
+			// NPOT textures are core in GLES 2.0, so the textures have the camera image size
+			mLayout.update(mCameraImageWidth, mCameraImageHeight, mCameraImageWidth, mCameraImageHeight,
+				mViewportWidth, mViewportHeight);
+		}
+
+		final int rotation = CameraImageRenderer.getRotationIndex(screenRotation);
+		mScaleX = mLayout.getScaleX(rotation);
+		mScaleY = mLayout.getScaleY(rotation);
+
+		if (mTextures == null)
+			initTextures();
+
+		mLastUploadTimeNanos = 0;
+		final FrameRing frames = mFrames;
+		if (frames.consume())
+		{
+			final long uploadStartTime = System.nanoTime();
+			mTextureSlot = (mTextureSlot + 1) % mTextureRotationDepth;
+			uploadFrame(frames.getFrontBuffer());
+			mFrameSequenceNumber = mSequenceBase + frames.getFrontSequenceNumber();
+			mFrameCaptureTime = frames.getFrontTimestamp();
+			mFrameUploadTime = System.nanoTime();
+			mLastUploadTimeNanos = System.nanoTime() - uploadStartTime;
+		}
+
+		// The textures have no content until the first frame of the current size is uploaded
+		if (mFrameSequenceNumber < mSequenceBase)
+			return;
+
+		GLES20.glUseProgram(mYuvProgram);
+		GLES20.glUniformMatrix4fv(mYuvMvpLocation, 1, false, mIdentityMatrix, 0);
+
+		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[2 * mTextureSlot]);
+		GLES20.glActiveTexture(GLES20.GL_TEXTURE1);
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[2 * mTextureSlot + 1]);
+
+		// Vertices already contain the rotation for the current screen orientation
+		setVertexArrays(mLayout.getVertices(rotation), mLayout.getTexCoords(rotation));
+		GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+		GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+	}
+
+	/**
+	 * Draw a video quad (-1..1 in x and y) with the given model-view matrix
+	 */
+	public void drawOverlay(VideoRenderer video, float[] modelViewMatrix, int offset)
+	{
+		if (!video.updateTexture(null))
+			return;
+
+		Matrix.multiplyMM(mMvpMatrix, 0, mProjectionMatrix, 0, modelViewMatrix, offset);
+		GLES20.glUniformMatrix4fv(mExternalMvpLocation, 1, false, mMvpMatrix, 0);
+
+		GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, video.getTextureId());
+		GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+	}
+
+	public void endOverlays()
+	{
+		GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 0);
+		GLES20.glUseProgram(0);
+	}
+
+	/**
+	 * Number of camera frames dropped since the camera image size last changed
+	 */
+	public long getDroppedFrames()
+	{
+		final FrameRing frames = mFrames;
+		return frames != null ? frames.getDroppedFrames() : 0;
+	}
+
+	/**
+	 * Capture time of the camera frame that is currently displayed, as passed to updateFrame()
+	 */
+	public long getFrameCaptureTime()
+	{
+		return mFrameCaptureTime;
+	}
+
+	/**
+	 * Sequence number of the camera frame that is currently displayed, or -1 if none
+	 */
+	public long getFrameSequenceNumber()
+	{
+		return mFrameSequenceNumber;
+	}
+
+	/**
+	 * Time at which the camera frame that is currently displayed was uploaded
+	 */
+	public long getFrameUploadTime()
+	{
+		return mFrameUploadTime;
+	}
+
+	/**
+	 * CPU time the last drawCameraImage() call spent on the texture upload in nanoseconds
+	 */
+	public long getLastUploadTimeNanos()
+	{
+		return mLastUploadTimeNanos;
+	}
+
+	/**
+	 * See CameraImageRenderer.getScaleX()
+	 */
+	public float getScaleX()
+	{
+		return mScaleX;
+	}
+
+	public float getScaleY()
+	{
+		return mScaleY;
+	}
+
+	/**
+	 * Publish the frame written by the last updateFrame() call while holding frames, on the
+	 * producer thread
+	 *
+	 * @return false if there was no held frame (e.g. it was dropped)
+	 */
+	public boolean publishHeldFrame()
+	{
+		final FrameRing frames = mHeldFrames;
+		if (frames == null)
+			return false;
+
+		mHeldFrames = null;
+		frames.publish(mHeldCaptureTime);
+		return true;
+	}
+
+	/**
+	 * Recompute the camera image layout on the next draw, e.g. after a configuration change
+	 */
+	public void invalidateLayout()
+	{
+		mLayoutDirty = true;
+	}
+
+	/**
+	 * Set whether updateFrame() only writes frames and publishHeldFrame() publishes them, e.g. so
+	 * that a frame becomes visible to the GL thread together with its tracking state
+	 */
+	public void setHoldFrames(boolean holdFrames)
+	{
+		mHoldFrames = holdFrames;
+	}
+
+	public void setScaleMode(ViewportLayout.ScaleMode scaleMode)
+	{
+		mScaleMode = scaleMode;
+		mLayoutDirty = true;
+	}
+
+	/**
+	 * Set the size of the viewport the camera image is drawn into. Must be called from
+	 * onSurfaceChanged().
+	 */
+	public void setViewportSize(int width, int height)
+	{
+		mViewportWidth = width;
+		mViewportHeight = height;
+		mLayoutDirty = true;
+	}
+
+	/**
+	 * Queue a camera frame for upload. Only YUV420SP frames are supported, they are passed on
+	 * without conversion.
+	 *
+	 * @param captureTime Time the frame was received (System.nanoTime() base), used for latency
+	 *        tracing
+	 */
+	public void updateFrame(ImageStruct frame, long captureTime)
+	{
+		updateFrame(frame, null, frame.getWidth(), frame.getHeight(), frame.getColorFormat(), captureTime);
+	}
+
+	/**
+	 * Queue a camera frame that is already in memory, e.g. mapped from a recording by
+	 * FrameReplayer
+	 *
+	 * @param data Image data in the layout of ImageStruct's buffer
+	 */
+	public void updateFrame(ByteBuffer data, int width, int height, ECOLOR_FORMAT colorFormat, long captureTime)
+	{
+		updateFrame(null, data, width, height, colorFormat, captureTime);
+	}
+
+	/**
+	 * Queue a camera frame from either frame or data
+	 */
+	private void updateFrame(ImageStruct frame, ByteBuffer data, int width, int height,
+		ECOLOR_FORMAT colorFormat, long captureTime)
+	{
+		switch (colorFormat)
+		{
+			case ECF_YUV420SP:
+				if (width > mMaxTextureSize || height > mMaxTextureSize)
+				{
+					Log.e(TAG, "Camera image " + width + "x" + height + " exceeds the texture size limit");
+					return;
+				}
+
+				// The GL thread reallocates everything that depends on the size on its next draw,
+				// frames are dropped until then
+				final long size = ((long)width << 32) | height;
+				mRequestedSize = size;
+				if (mInitializedSize != size)
+					return;
+
+				final FrameRing frames = mFrames;
+				final ByteBuffer buffer = frames.beginWrite();
+				if (buffer == null)
+					return;
+
+				if (frame != null)
+					frame.copyBufferToNioBuffer(buffer);
+				else
+					buffer.put(data.duplicate());
+
+				if (mHoldFrames)
+				{
+					mHeldFrames = frames;
+					mHeldCaptureTime = captureTime;
+				}
+				else
+				{
+					frames.publish(captureTime);
+				}
+				break;
+
+			default:
+				Log.e(TAG, "Unsupported color format " + colorFormat + ", start the camera in YUV mode");
+				break;
+		}
+	}
+
+	private static int compileShader(int type, String source)
+	{
+		final int shader = GLES20.glCreateShader(type);
+		GLES20.glShaderSource(shader, source);
+		GLES20.glCompileShader(shader);
+
+		int[] status = new int[1];
+		GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+		if (status[0] == 0)
+			Log.e(TAG, "Shader compilation failed: " + GLES20.glGetShaderInfoLog(shader));
+
+		return shader;
+	}
+
+	/**
+	 * Set up everything that depends on the camera image size, on the GL thread. Existing textures
+	 * are deleted, so this also works when the size changes.
+	 */
+	private void init(int cameraImageWidth, int cameraImageHeight)
+	{
+		if (mTextures != null)
+		{
+			Log.i(TAG, "Camera image size changed to " + cameraImageWidth + "x" + cameraImageHeight);
+			GLES20.glDeleteTextures(mTextures.length, mTextures, 0);
+			for (int texture : mTextures)
+				mResources.remove(GpuResourceRegistry.Type.TEXTURE, texture);
+			mTextures = null;
+		}
+
+		mTextureSlot = 0;
+		mSequenceBase = mFrameSequenceNumber + 1;
+
+		mCameraImageWidth = cameraImageWidth;
+		mCameraImageHeight = cameraImageHeight;
+
+		// Y plane with 1 byte per pixel plus the subsampled, interleaved V/U plane
+		mFrames = new FrameRing(cameraImageWidth * cameraImageHeight * 3 / 2, FrameRing.DropPolicy.DROP_OLDEST);
+		mLayoutDirty = true;
+
+		// Publishes the frame ring to updateFrame()
+		mInitializedSize = ((long)cameraImageWidth << 32) | cameraImageHeight;
+	}
+
+	private void initTextures()
+	{
+		mTextures = new int[2 * mTextureRotationDepth];
+		GLES20.glGenTextures(mTextures.length, mTextures, 0);
+
+		for (int i = 0; i < mTextures.length; ++i)
+		{
+			final boolean vu = (i & 1) != 0;
+			final int format = vu ? GLES20.GL_LUMINANCE_ALPHA : GLES20.GL_LUMINANCE;
+			final int width = vu ? mCameraImageWidth / 2 : mCameraImageWidth;
+			final int height = vu ? mCameraImageHeight / 2 : mCameraImageHeight;
+
+			GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[i]);
+			GLES20.glTexImage2D(
+				GLES20.GL_TEXTURE_2D,
+				0,
+				format,
+				width,
+				height,
+				0,
+				format,
+				GLES20.GL_UNSIGNED_BYTE,
+				null);
+			mResources.add(GpuResourceRegistry.Type.TEXTURE, mTextures[i],
+				GpuResourceRegistry.getTextureBytes(width, height, format, GLES20.GL_UNSIGNED_BYTE), TAG);
+
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+			GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+		}
+
+		// Rows of odd-width planes are not 4-byte aligned
+		GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+	}
+
+	private static int linkProgram(int vertexShader, int fragmentShader)
+	{
+		final int program = GLES20.glCreateProgram();
+		GLES20.glAttachShader(program, vertexShader);
+		GLES20.glAttachShader(program, fragmentShader);
+
+		// Same attribute locations in all programs, so vertex arrays do not depend on the program
+		GLES20.glBindAttribLocation(program, ATTRIBUTE_POSITION, "aPosition");
+		GLES20.glBindAttribLocation(program, ATTRIBUTE_TEXCOORD, "aTexCoord");
+		GLES20.glLinkProgram(program);
+		GLES20.glDeleteShader(fragmentShader);
+
+		int[] status = new int[1];
+		GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+		if (status[0] == 0)
+			Log.e(TAG, "Program linking failed: " + GLES20.glGetProgramInfoLog(program));
+
+		return program;
+	}
+
+	private static void setVertexArrays(FloatBuffer vertices, FloatBuffer texCoords)
+	{
+		GLES20.glEnableVertexAttribArray(ATTRIBUTE_POSITION);
+		GLES20.glVertexAttribPointer(ATTRIBUTE_POSITION, 3, GLES20.GL_FLOAT, false, ViewportLayout.STRIDE, vertices);
+		GLES20.glEnableVertexAttribArray(ATTRIBUTE_TEXCOORD);
+		GLES20.glVertexAttribPointer(ATTRIBUTE_TEXCOORD, 2, GLES20.GL_FLOAT, false, ViewportLayout.STRIDE, texCoords);
+	}
+
+	private void uploadFrame(ByteBuffer image)
+	{
+		final int width = mCameraImageWidth;
+		final int height = mCameraImageHeight;
+
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[2 * mTextureSlot]);
+		image.position(0);
+		GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width, height,
+			GLES20.GL_LUMINANCE, GLES20.GL_UNSIGNED_BYTE, image);
+
+		GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextures[2 * mTextureSlot + 1]);
+		image.position(width * height);
+		GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, 0, width / 2, height / 2,
+			GLES20.GL_LUMINANCE_ALPHA, GLES20.GL_UNSIGNED_BYTE, image);
+
+		image.rewind();
+	}
+}
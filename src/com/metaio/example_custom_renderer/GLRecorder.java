@@ -0,0 +1,272 @@
+package com.metaio.example_custom_renderer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.microedition.khronos.opengles.GL;
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL10Ext;
+import javax.microedition.khronos.opengles.GL11;
+import javax.microedition.khronos.opengles.GL11Ext;
+import javax.microedition.khronos.opengles.GL11ExtensionPack;
+
+/**
+ * Records the GL command stream issued by the renderers: number of calls per GL function, draw
+ * calls, state changes and bytes uploaded to textures and buffer objects.
+ *
+ * Calls are forwarded to a real GL implementation, e.g. through GLSurfaceView.setGLWrapper(), or
+ * with a null delegate the recorder acts as a headless GL that only counts: it hands out texture
+ * and buffer names and returns defaults, without needing a GL context. The host tests and the
+ * benchmarks in benchmarks/ run the renderers on a headless recorder. Recording goes through a
+ * dynamic proxy and allocates per call, so it should not be enabled while measuring frame times
+ * on the device.
+ */
+public final class GLRecorder implements InvocationHandler
+{
+	private static final HashSet<String> STATE_CHANGE_FUNCTIONS = new HashSet<String>(Arrays.asList(
+		"glActiveTexture",
+		"glBindBuffer",
+		"glBindTexture",
+		"glBlendFunc",
+		"glClientActiveTexture",
+		"glDepthFunc",
+		"glDepthMask",
+		"glDisable",
+		"glDisableClientState",
+		"glEnable",
+		"glEnableClientState",
+		"glMatrixMode",
+		"glShadeModel",
+		"glTexEnvf",
+		"glTexEnvx",
+		"glTexParameterf",
+		"glTexParameteri",
+		"glTexParameterx"));
+
+	private final HashMap<String, int[]> mCallCounts = new HashMap<String, int[]>();
+
+	private long mCalls;
+
+	private final GL10 mDelegate;
+
+	private long mDrawCalls;
+
+	private final GL mGL;
+
+	/**
+	 * Next texture/buffer name handed out in headless mode
+	 */
+	private int mNextName = 1;
+
+	private long mStateChanges;
+
+	private long mUploadedBytes;
+
+	private long mUploads;
+
+	/**
+	 * @param delegate GL implementation to forward calls to, or null for a headless GL
+	 */
+	public GLRecorder(GL10 delegate)
+	{
+		mDelegate = delegate;
+
+		List<Class<?>> interfaces = new ArrayList<Class<?>>();
+		for (Class<?> glInterface : new Class<?>[] {GL10.class, GL10Ext.class, GL11.class, GL11Ext.class, GL11ExtensionPack.class})
+		{
+			// Headless mode offers GL10 and GL11 so that both fixed-function paths can be recorded
+			if (delegate == null ? (glInterface == GL10.class || glInterface == GL11.class) : glInterface.isInstance(delegate))
+				interfaces.add(glInterface);
+		}
+
+		mGL = (GL)Proxy.newProxyInstance(GL10.class.getClassLoader(),
+			interfaces.toArray(new Class<?>[interfaces.size()]), this);
+	}
+
+	/**
+	 * Recording GL instance, implements the same GL interfaces as the delegate
+	 */
+	public GL10 getGL()
+	{
+		return (GL10)mGL;
+	}
+
+	public long getCalls()
+	{
+		return mCalls;
+	}
+
+	public int getCallCount(String function)
+	{
+		int[] count = mCallCounts.get(function);
+		return count != null ? count[0] : 0;
+	}
+
+	/**
+	 * Sorted per-function call counts, e.g. for comparing two recordings
+	 */
+	public Map<String, Integer> getCallCounts()
+	{
+		Map<String, Integer> counts = new TreeMap<String, Integer>();
+		for (Map.Entry<String, int[]> entry : mCallCounts.entrySet())
+			counts.put(entry.getKey(), entry.getValue()[0]);
+		return counts;
+	}
+
+	public long getDrawCalls()
+	{
+		return mDrawCalls;
+	}
+
+	public long getStateChanges()
+	{
+		return mStateChanges;
+	}
+
+	/**
+	 * Bytes passed to glTexImage2D, glTexSubImage2D, glBufferData and glBufferSubData
+	 */
+	public long getUploadedBytes()
+	{
+		return mUploadedBytes;
+	}
+
+	public long getUploads()
+	{
+		return mUploads;
+	}
+
+	public void reset()
+	{
+		mCallCounts.clear();
+		mCalls = 0;
+		mDrawCalls = 0;
+		mStateChanges = 0;
+		mUploadedBytes = 0;
+		mUploads = 0;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append("calls=").append(mCalls)
+			.append(" draws=").append(mDrawCalls)
+			.append(" stateChanges=").append(mStateChanges)
+			.append(" uploads=").append(mUploads)
+			.append(" uploadedBytes=").append(mUploadedBytes);
+
+		String[] functions = mCallCounts.keySet().toArray(new String[mCallCounts.size()]);
+		Arrays.sort(functions);
+		for (String function : functions)
+			sb.append(' ').append(function).append('=').append(mCallCounts.get(function)[0]);
+
+		return sb.toString();
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+	{
+		final String name = method.getName();
+
+		if (method.getDeclaringClass() == Object.class)
+			return method.invoke(this, args);
+
+		record(name, args);
+
+		if (mDelegate == null)
+			return invokeHeadless(name, method.getReturnType(), args);
+
+		try
+		{
+			return method.invoke(mDelegate, args);
+		}
+		catch (InvocationTargetException e)
+		{
+			throw e.getCause();
+		}
+	}
+
+	private Object invokeHeadless(String name, Class<?> returnType, Object[] args)
+	{
+		if ((name.equals("glGenTextures") || name.equals("glGenBuffers")) && args[1] instanceof int[])
+		{
+			final int n = (Integer)args[0];
+			final int[] names = (int[])args[1];
+			final int offset = (Integer)args[2];
+			for (int i = 0; i < n; ++i)
+				names[offset + i] = mNextName++;
+		}
+
+		if (returnType == int.class)
+			return 0;
+		if (returnType == boolean.class)
+			return false;
+		return null;
+	}
+
+	private void record(String name, Object[] args)
+	{
+		++mCalls;
+
+		int[] count = mCallCounts.get(name);
+		if (count == null)
+		{
+			count = new int[1];
+			mCallCounts.put(name, count);
+		}
+		++count[0];
+
+		if (STATE_CHANGE_FUNCTIONS.contains(name))
+			++mStateChanges;
+		else if (name.equals("glDrawArrays") || name.equals("glDrawElements"))
+			++mDrawCalls;
+		else if (name.equals("glTexImage2D") && args[8] != null)
+			recordUpload((long)(Integer)args[3] * (Integer)args[4] * getBytesPerPixel((Integer)args[6], (Integer)args[7]));
+		else if (name.equals("glTexSubImage2D") && args[8] != null)
+			recordUpload((long)(Integer)args[4] * (Integer)args[5] * getBytesPerPixel((Integer)args[6], (Integer)args[7]));
+		else if (name.equals("glBufferData") && args[2] != null)
+			recordUpload((Integer)args[1]);
+		else if (name.equals("glBufferSubData"))
+			recordUpload((Integer)args[2]);
+	}
+
+	private void recordUpload(long bytes)
+	{
+		++mUploads;
+		mUploadedBytes += bytes;
+	}
+
+	static int getBytesPerPixel(int format, int type)
+	{
+		if (type != GL10.GL_UNSIGNED_BYTE)
+		{
+			// GL_UNSIGNED_SHORT_5_6_5, GL_UNSIGNED_SHORT_4_4_4_4, GL_UNSIGNED_SHORT_5_5_5_1
+			return 2;
+		}
+
+		switch (format)
+		{
+			case GL10.GL_RGBA:
+				return 4;
+
+			case GL10.GL_RGB:
+				return 3;
+
+			case GL10.GL_LUMINANCE_ALPHA:
+				return 2;
+
+			default:
+				return 1;
+		}
+	}
+}
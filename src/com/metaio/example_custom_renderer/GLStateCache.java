@@ -0,0 +1,425 @@
+package com.metaio.example_custom_renderer;
+
+import java.nio.IntBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+/**
+ * GL10 wrapper that shadows GL state and drops calls which would not change it: enable bits,
+ * client states, active texture unit, texture bindings, texture parameters, texture environment
+ * mode and matrix mode. All renderers should draw through the same instance so that state set by
+ * one renderer is known to the next.
+ *
+ * State is unknown until it is set through the wrapper for the first time. If GL state is
+ * changed behind the wrapper's back, call invalidate(). The GL11 integer variants of the shadowed
+ * calls are shadowed as well; array variants and buffer object calls are passed through. A new
+ * instance must be created for every GL context.
+ */
+public final class GLStateCache extends ForwardingGL10
+{
+	private static final int UNKNOWN = -1;
+
+	private static final int DISABLED = 0;
+
+	private static final int ENABLED = 1;
+
+	private int mActiveTexture = UNKNOWN;
+
+	/**
+	 * Bound texture per (texture unit, target)
+	 */
+	private final StateTable mBindings = new StateTable();
+
+	/**
+	 * Enable bits of glEnable/glDisable capabilities
+	 */
+	private final StateTable mCapabilities = new StateTable();
+
+	/**
+	 * Enable bits of client-side arrays
+	 */
+	private final StateTable mClientStates = new StateTable();
+
+	/**
+	 * Number of calls dropped because they would not have changed GL state
+	 */
+	private long mEliminatedCalls = 0;
+
+	private int mMatrixMode = UNKNOWN;
+
+	/**
+	 * GL_TEXTURE_ENV_MODE per texture unit
+	 */
+	private final StateTable mTexEnvModes = new StateTable();
+
+	/**
+	 * Filter and wrap parameters per (texture name, parameter)
+	 */
+	private final StateTable mTexParameters = new StateTable();
+
+	public GLStateCache(GL10 gl)
+	{
+		super(gl);
+	}
+
+	public long getEliminatedCalls()
+	{
+		return mEliminatedCalls;
+	}
+
+	/**
+	 * Forget all shadowed state, e.g. after GL calls that did not go through this wrapper
+	 */
+	public void invalidate()
+	{
+		mActiveTexture = UNKNOWN;
+		mMatrixMode = UNKNOWN;
+		mBindings.clear();
+		mCapabilities.clear();
+		mClientStates.clear();
+		mTexEnvModes.clear();
+		mTexParameters.clear();
+	}
+
+	/**
+	 * Forget the texture bindings only, e.g. after SurfaceTexture.updateTexImage() which binds
+	 * its texture itself
+	 */
+	public void invalidateBindings()
+	{
+		mBindings.clear();
+	}
+
+	public void resetEliminatedCalls()
+	{
+		mEliminatedCalls = 0;
+	}
+
+	@Override
+	public void glActiveTexture(int texture)
+	{
+		if (mActiveTexture == texture)
+		{
+			++mEliminatedCalls;
+			return;
+		}
+
+		mActiveTexture = texture;
+		mGL.glActiveTexture(texture);
+	}
+
+	@Override
+	public void glBindTexture(int target, int texture)
+	{
+		final int key = getBindingKey(target);
+		if (key != UNKNOWN && mBindings.get(key) == texture)
+		{
+			++mEliminatedCalls;
+			return;
+		}
+
+		mBindings.put(key, texture);
+		mGL.glBindTexture(target, texture);
+	}
+
+	@Override
+	public void glDeleteTextures(int n, int[] textures, int offset)
+	{
+		for (int i = 0; i < n; ++i)
+			forgetTexture(textures[offset + i]);
+
+		mGL.glDeleteTextures(n, textures, offset);
+	}
+
+	@Override
+	public void glDeleteTextures(int n, IntBuffer textures)
+	{
+		final int position = textures.position();
+		for (int i = 0; i < n; ++i)
+			forgetTexture(textures.get(position + i));
+
+		mGL.glDeleteTextures(n, textures);
+	}
+
+	@Override
+	public void glDisable(int cap)
+	{
+		if (mCapabilities.get(cap) == DISABLED)
+		{
+			++mEliminatedCalls;
+			return;
+		}
+
+		mCapabilities.put(cap, DISABLED);
+		mGL.glDisable(cap);
+	}
+
+	@Override
+	public void glDisableClientState(int array)
+	{
+		if (mClientStates.get(array) == DISABLED)
+		{
+			++mEliminatedCalls;
+			return;
+		}
+
+		mClientStates.put(array, DISABLED);
+		mGL.glDisableClientState(array);
+	}
+
+	@Override
+	public void glEnable(int cap)
+	{
+		if (mCapabilities.get(cap) == ENABLED)
+		{
+			++mEliminatedCalls;
+			return;
+		}
+
+		mCapabilities.put(cap, ENABLED);
+		mGL.glEnable(cap);
+	}
+
+	@Override
+	public void glEnableClientState(int array)
+	{
+		if (mClientStates.get(array) == ENABLED)
+		{
+			++mEliminatedCalls;
+			return;
+		}
+
+		mClientStates.put(array, ENABLED);
+		mGL.glEnableClientState(array);
+	}
+
+	@Override
+	public void glMatrixMode(int mode)
+	{
+		if (mMatrixMode == mode)
+		{
+			++mEliminatedCalls;
+			return;
+		}
+
+		mMatrixMode = mode;
+		mGL.glMatrixMode(mode);
+	}
+
+	@Override
+	public void glTexEnvx(int target, int pname, int param)
+	{
+		if (target == GL10.GL_TEXTURE_ENV && pname == GL10.GL_TEXTURE_ENV_MODE && mActiveTexture != UNKNOWN)
+		{
+			if (mTexEnvModes.get(mActiveTexture) == param)
+			{
+				++mEliminatedCalls;
+				return;
+			}
+
+			mTexEnvModes.put(mActiveTexture, param);
+		}
+
+		mGL.glTexEnvx(target, pname, param);
+	}
+
+	@Override
+	public void glTexEnvi(int target, int pname, int param)
+	{
+		glTexEnvx(target, pname, param);
+	}
+
+	@Override
+	public void glTexEnvf(int target, int pname, float param)
+	{
+		// Only integral values (enums) are shadowed
+		if (param == (int)param)
+			glTexEnvx(target, pname, (int)param);
+		else
+			mGL.glTexEnvf(target, pname, param);
+	}
+
+	@Override
+	public void glTexParameterx(int target, int pname, int param)
+	{
+		final int key = getTexParameterKey(target, pname);
+		if (key != UNKNOWN)
+		{
+			if (mTexParameters.get(key) == param)
+			{
+				++mEliminatedCalls;
+				return;
+			}
+
+			mTexParameters.put(key, param);
+		}
+
+		mGL.glTexParameterx(target, pname, param);
+	}
+
+	@Override
+	public void glTexParameteri(int target, int pname, int param)
+	{
+		glTexParameterx(target, pname, param);
+	}
+
+	@Override
+	public void glTexParameterf(int target, int pname, float param)
+	{
+		if (param == (int)param)
+			glTexParameterx(target, pname, (int)param);
+		else
+			mGL.glTexParameterf(target, pname, param);
+	}
+
+	private void forgetTexture(int texture)
+	{
+		// Deleting a bound texture reverts the binding to texture 0
+		for (int i = 0; i < mBindings.size(); ++i)
+		{
+			if (mBindings.valueAt(i) == texture)
+				mBindings.setValueAt(i, 0);
+		}
+
+		for (int parameter = 0; parameter < 4; ++parameter)
+			mTexParameters.remove((texture << 2) | parameter);
+	}
+
+	/**
+	 * Key for mBindings, or UNKNOWN if the active texture unit is not known
+	 */
+	private int getBindingKey(int target)
+	{
+		if (mActiveTexture == UNKNOWN)
+			return UNKNOWN;
+
+		return ((mActiveTexture - GL10.GL_TEXTURE0) << 16) | (target & 0xffff);
+	}
+
+	/**
+	 * Key for mTexParameters, or UNKNOWN if the parameter is not shadowed or the bound texture is
+	 * not known
+	 */
+	private int getTexParameterKey(int target, int pname)
+	{
+		final int parameter;
+		switch (pname)
+		{
+			case GL10.GL_TEXTURE_MIN_FILTER:
+				parameter = 0;
+				break;
+
+			case GL10.GL_TEXTURE_MAG_FILTER:
+				parameter = 1;
+				break;
+
+			case GL10.GL_TEXTURE_WRAP_S:
+				parameter = 2;
+				break;
+
+			case GL10.GL_TEXTURE_WRAP_T:
+				parameter = 3;
+				break;
+
+			default:
+				return UNKNOWN;
+		}
+
+		final int bindingKey = getBindingKey(target);
+		if (bindingKey == UNKNOWN)
+			return UNKNOWN;
+
+		final int texture = mBindings.get(bindingKey);
+		if (texture == UNKNOWN || texture == 0)
+			return UNKNOWN;
+
+		return (texture << 2) | parameter;
+	}
+
+	/**
+	 * Small int to int map for shadowed state. There are only a few entries, so a linear search
+	 * is fast enough, and no objects are allocated once all keys have been seen.
+	 */
+	private static final class StateTable
+	{
+		private int[] mKeys = new int[8];
+
+		private int mSize = 0;
+
+		private int[] mValues = new int[8];
+
+		void clear()
+		{
+			mSize = 0;
+		}
+
+		int get(int key)
+		{
+			for (int i = 0; i < mSize; ++i)
+			{
+				if (mKeys[i] == key)
+					return mValues[i];
+			}
+
+			return UNKNOWN;
+		}
+
+		void put(int key, int value)
+		{
+			if (key == UNKNOWN)
+				return;
+
+			for (int i = 0; i < mSize; ++i)
+			{
+				if (mKeys[i] == key)
+				{
+					mValues[i] = value;
+					return;
+				}
+			}
+
+			if (mSize == mKeys.length)
+			{
+				int[] keys = new int[mSize * 2];
+				int[] values = new int[mSize * 2];
+				System.arraycopy(mKeys, 0, keys, 0, mSize);
+				System.arraycopy(mValues, 0, values, 0, mSize);
+				mKeys = keys;
+				mValues = values;
+			}
+
+			mKeys[mSize] = key;
+			mValues[mSize] = value;
+			++mSize;
+		}
+
+		void remove(int key)
+		{
+			for (int i = 0; i < mSize; ++i)
+			{
+				if (mKeys[i] == key)
+				{
+					--mSize;
+					mKeys[i] = mKeys[mSize];
+					mValues[i] = mValues[mSize];
+					return;
+				}
+			}
+		}
+
+		void setValueAt(int index, int value)
+		{
+			mValues[index] = value;
+		}
+
+		int size()
+		{
+			return mSize;
+		}
+
+		int valueAt(int index)
+		{
+			return mValues[index];
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package com.metaio.example_custom_renderer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+/**
+ * Accounts all textures, buffer objects and SurfaceTextures with an estimate of the memory behind
+ * them, so that current and peak GPU memory usage can be reported and leaks can be found. Owners
+ * add() a resource when they create it and remove() it when they delete or release it.
+ *
+ * GL objects cannot be deleted any more once their context is lost, they are freed together with
+ * it: onContextLost() drops them from the accounting. SurfaceTextures outlive the context and must
+ * be released explicitly; one that is still registered from a previous context when checkLeaks() is
+ * called is a leak, as is anything still registered after the owners were released in onDestroy().
+ * Leaks and mismatched add()/remove() calls are logged in debug builds.
+ *
+ * Thread-safe, resources are usually added on the GL thread and released on the UI thread.
+ */
+public final class GpuResourceRegistry
+{
+	private static final String TAG = "GpuResourceRegistry";
+
+	public enum Type
+	{
+		/**
+		 * GL texture, freed with its context
+		 */
+		TEXTURE(true),
+
+		/**
+		 * GL buffer object, freed with its context
+		 */
+		BUFFER(true),
+
+		/**
+		 * SurfaceTexture, keyed by newSurfaceTextureKey(). Must be released explicitly.
+		 */
+		SURFACE_TEXTURE(false);
+
+		final boolean contextBound;
+
+		private Type(boolean contextBound)
+		{
+			this.contextBound = contextBound;
+		}
+	}
+
+	private static final Type[] TYPES = Type.values();
+
+	private static final class Entry
+	{
+		long bytes;
+
+		/**
+		 * Context generation the resource was created in
+		 */
+		final int generation;
+
+		final String owner;
+
+		Entry(long bytes, int generation, String owner)
+		{
+			this.bytes = bytes;
+			this.generation = generation;
+			this.owner = owner;
+		}
+	}
+
+	/**
+	 * Estimated bytes of all registered resources
+	 */
+	private long mCurrentBytes = 0;
+
+	/**
+	 * Registered resources per type, by name
+	 */
+	private final SparseArray<?>[] mEntries = new SparseArray<?>[TYPES.length];
+
+	/**
+	 * Incremented by onContextLost()
+	 */
+	private int mGeneration = 1;
+
+	private long mPeakBytes = 0;
+
+	/**
+	 * Last key returned by newSurfaceTextureKey()
+	 */
+	private int mSurfaceTextureKey = 0;
+
+	public GpuResourceRegistry()
+	{
+		for (int i = 0; i < mEntries.length; ++i)
+			mEntries[i] = new SparseArray<Entry>();
+	}
+
+	/**
+	 * Register a resource that was just created
+	 *
+	 * @param name GL name, for SURFACE_TEXTURE a key from newSurfaceTextureKey()
+	 * @param bytes Estimated memory size, see getTextureBytes()
+	 * @param owner Class or object that has to remove the resource again, for leak reports
+	 */
+	public synchronized void add(Type type, int name, long bytes, String owner)
+	{
+		final SparseArray<Entry> entries = getEntries(type);
+		final Entry previous = entries.get(name);
+		if (previous != null)
+		{
+			// GL only hands out a name again after it was deleted
+			if (BuildConfig.DEBUG)
+				Log.e(TAG, type + " " + name + " of " + previous.owner + " registered again, its removal was missed");
+			mCurrentBytes -= previous.bytes;
+		}
+
+		entries.put(name, new Entry(bytes, mGeneration, owner));
+		mCurrentBytes += bytes;
+		mPeakBytes = Math.max(mPeakBytes, mCurrentBytes);
+	}
+
+	/**
+	 * Log resources that should have been released by now, i.e. everything that is still
+	 * registered from a previous context. Call after the owners re-created their resources in a new
+	 * context, and after onContextLost() in onDestroy().
+	 *
+	 * @return Number of leaked resources
+	 */
+	public synchronized int checkLeaks()
+	{
+		int leaks = 0;
+		for (Type type : TYPES)
+		{
+			final SparseArray<Entry> entries = getEntries(type);
+			for (int i = 0; i < entries.size(); ++i)
+			{
+				final Entry entry = entries.valueAt(i);
+				if (entry.generation == mGeneration)
+					continue;
+
+				++leaks;
+				if (BuildConfig.DEBUG)
+				{
+					Log.e(TAG, "Leaked " + type + " " + entries.keyAt(i) + " of " + entry.owner + ", " +
+						entry.bytes / 1024 + " KiB");
+				}
+			}
+		}
+
+		return leaks;
+	}
+
+	public synchronized int getCount()
+	{
+		int count = 0;
+		for (SparseArray<?> entries : mEntries)
+			count += entries.size();
+
+		return count;
+	}
+
+	/**
+	 * Estimated bytes of all registered resources
+	 */
+	public synchronized long getCurrentBytes()
+	{
+		return mCurrentBytes;
+	}
+
+	@SuppressWarnings("unchecked")
+	private SparseArray<Entry> getEntries(Type type)
+	{
+		return (SparseArray<Entry>)mEntries[type.ordinal()];
+	}
+
+	/**
+	 * Highest getCurrentBytes() so far
+	 */
+	public synchronized long getPeakBytes()
+	{
+		return mPeakBytes;
+	}
+
+	/**
+	 * Estimate the size of a texture without mipmaps
+	 *
+	 * @param glFormat GL_RGBA, GL_RGB, GL_LUMINANCE_ALPHA, GL_LUMINANCE or GL_ALPHA
+	 * @param glType GL_UNSIGNED_BYTE or one of the packed 16 bit types
+	 */
+	public static long getTextureBytes(int width, int height, int glFormat, int glType)
+	{
+		int bytesPerPixel;
+		if (glType != GL10.GL_UNSIGNED_BYTE)
+			bytesPerPixel = 2;
+		else if (glFormat == GL10.GL_RGBA)
+			bytesPerPixel = 4;
+		else if (glFormat == GL10.GL_RGB)
+			bytesPerPixel = 3;
+		else if (glFormat == GL10.GL_LUMINANCE_ALPHA)
+			bytesPerPixel = 2;
+		else
+			bytesPerPixel = 1;
+
+		return (long)width * height * bytesPerPixel;
+	}
+
+	/**
+	 * Key to register a new SurfaceTexture with. Texture names are reused by the next context,
+	 * while a SurfaceTexture of the lost context may still be registered until its owner gets to
+	 * re-create it; keys are never reused, so the two cannot clash.
+	 */
+	public synchronized int newSurfaceTextureKey()
+	{
+		return ++mSurfaceTextureKey;
+	}
+
+	/**
+	 * The GL context was lost, drop all textures and buffer objects, which were freed with it.
+	 * Must be called before resources of the next context are added, and in onDestroy().
+	 */
+	public synchronized void onContextLost()
+	{
+		int dropped = 0;
+		long droppedBytes = 0;
+
+		for (Type type : TYPES)
+		{
+			if (!type.contextBound)
+				continue;
+
+			final SparseArray<Entry> entries = getEntries(type);
+			for (int i = 0; i < entries.size(); ++i)
+				droppedBytes += entries.valueAt(i).bytes;
+			dropped += entries.size();
+			entries.clear();
+		}
+
+		mCurrentBytes -= droppedBytes;
+		++mGeneration;
+
+		if (dropped > 0)
+			Log.i(TAG, dropped + " GL objects (" + droppedBytes / 1024 + " KiB) freed with their context");
+	}
+
+	/**
+	 * Unregister a resource that was deleted or released
+	 */
+	public synchronized void remove(Type type, int name)
+	{
+		final SparseArray<Entry> entries = getEntries(type);
+		final Entry entry = entries.get(name);
+		if (entry == null)
+		{
+			// Deleting a name of a lost context may delete an unrelated object of the current one
+			if (BuildConfig.DEBUG)
+				Log.e(TAG, type + " " + name + " removed but not registered, deleted twice or from a lost context?");
+			return;
+		}
+
+		entries.remove(name);
+		mCurrentBytes -= entry.bytes;
+	}
+
+	/**
+	 * Update the size estimate of a registered resource, e.g. once the size of a video is known.
+	 * Ignored if the resource is not registered (any more).
+	 */
+	public synchronized void resize(Type type, int name, long bytes)
+	{
+		final Entry entry = getEntries(type).get(name);
+		if (entry == null)
+			return;
+
+		mCurrentBytes += bytes - entry.bytes;
+		mPeakBytes = Math.max(mPeakBytes, mCurrentBytes);
+		entry.bytes = bytes;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return getCount() + " resources, " + mCurrentBytes / 1024 + " KiB (peak " + mPeakBytes / 1024 + " KiB)";
+	}
+}
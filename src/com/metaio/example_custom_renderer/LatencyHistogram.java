@@ -0,0 +1,139 @@
+package com.metaio.example_custom_renderer;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Histogram of durations with fixed memory and lock-free recording. Buckets are logarithmic with
+ * 8 sub-buckets per power of two, so percentiles are accurate to about 12% from 1 microsecond up
+ * to over an hour. Any thread can record while another one drains the counts.
+ */
+public final class LatencyHistogram
+{
+	private static final int SUB_BUCKET_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * Highest power of two that is split into sub-buckets
+	 */
+	private static final int MAX_OCTAVE = 31;
+
+	/**
+	 * Last bucket, counts all durations of 2^(MAX_OCTAVE + 1) microseconds and more
+	 */
+	static final int OVERFLOW_BUCKET = (MAX_OCTAVE - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	/**
+	 * Covers durations up to 2^32 microseconds with sub-buckets, plus the overflow bucket
+	 */
+	public static final int BUCKET_COUNT = OVERFLOW_BUCKET + 1;
+
+	private final AtomicIntegerArray mCounts = new AtomicIntegerArray(BUCKET_COUNT);
+
+	private final AtomicLong mMaxMicros = new AtomicLong(0);
+
+	private final AtomicLong mTotalMicros = new AtomicLong(0);
+
+	/**
+	 * Move the counts recorded since the last call into the given array and reset them
+	 *
+	 * @param counts Array of at least BUCKET_COUNT entries
+	 * @return Number of recorded values
+	 */
+	public int drain(int[] counts)
+	{
+		int total = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i)
+		{
+			counts[i] = mCounts.getAndSet(i, 0);
+			total += counts[i];
+		}
+
+		return total;
+	}
+
+	/**
+	 * Largest value since the last call in microseconds, resets it
+	 */
+	public long drainMaxMicros()
+	{
+		return mMaxMicros.getAndSet(0);
+	}
+
+	/**
+	 * Sum of all values since the last call in microseconds, resets it
+	 */
+	public long drainTotalMicros()
+	{
+		return mTotalMicros.getAndSet(0);
+	}
+
+	public void record(long nanos)
+	{
+		final long micros = Math.max(0, nanos / 1000);
+
+		mCounts.incrementAndGet(getBucket(micros));
+		mTotalMicros.addAndGet(micros);
+
+		long max = mMaxMicros.get();
+		while (micros > max && !mMaxMicros.compareAndSet(max, micros))
+			max = mMaxMicros.get();
+	}
+
+	static int getBucket(long micros)
+	{
+		if (micros < SUB_BUCKETS)
+			return (int)micros;
+
+		final int octave = 63 - Long.numberOfLeadingZeros(micros);
+		if (octave > MAX_OCTAVE)
+			return OVERFLOW_BUCKET;
+
+		final int subBucket = (int)(micros >> (octave - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (octave - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Smallest value in microseconds that falls into the given bucket
+	 */
+	static long getBucketLowerBound(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+
+		if (bucket == OVERFLOW_BUCKET)
+			return 1L << (MAX_OCTAVE + 1);
+
+		final int octave = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		return (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << (octave - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * Value at the given percentile of drained counts, in microseconds (middle of the bucket)
+	 *
+	 * @param counts Counts from drain()
+	 * @param total Return value of drain()
+	 * @param percentile 0..100
+	 */
+	public static long getPercentile(int[] counts, int total, double percentile)
+	{
+		if (total == 0)
+			return 0;
+
+		final long rank = Math.max(1, (long)Math.ceil(total * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i)
+		{
+			seen += counts[i];
+			if (seen >= rank)
+			{
+				final long lower = getBucketLowerBound(i);
+				final long upper = i + 1 < BUCKET_COUNT ? getBucketLowerBound(i + 1) : lower;
+				return (lower + upper) / 2;
+			}
+		}
+
+		return getBucketLowerBound(BUCKET_COUNT - 1);
+	}
+}
@@ -1,17 +1,29 @@
 package com.metaio.example_custom_renderer;
 
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL;
 import javax.microedition.khronos.opengles.GL10;
 
 import android.app.Activity;
-import android.content.res.AssetFileDescriptor;
 import android.content.res.Configuration;
+import android.hardware.Camera;
 import android.hardware.Camera.CameraInfo;
-import android.media.MediaPlayer;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
 import android.opengl.GLSurfaceView;
 import android.opengl.GLSurfaceView.Renderer;
+import android.opengl.Matrix;
 import android.os.Bundle;
 import android.os.StrictMode.VmPolicy;
 import android.util.Log;
@@ -22,6 +34,7 @@ import android.widget.FrameLayout;
 
 import com.metaio.sdk.MetaioDebug;
 import com.metaio.sdk.SensorsComponentAndroid;
+import com.metaio.sdk.jni.ECOLOR_FORMAT;
 import com.metaio.sdk.jni.ERENDER_SYSTEM;
 import com.metaio.sdk.jni.ESCREEN_ROTATION;
 import com.metaio.sdk.jni.IMetaioSDKAndroid;
@@ -31,12 +44,150 @@ import com.metaio.sdk.jni.MetaioSDK;
 import com.metaio.sdk.jni.TrackingValues;
 import com.metaio.tools.Screen;
 import com.metaio.tools.SystemInfo;
-import com.metaio.tools.io.AssetsManager;
 
 public final class MainActivity extends Activity implements Renderer
 {
 	private static final String TAG = "MainActivity";
 
+	/**
+	 * Log frames whose rendering code allocates memory once warmed up (debug builds only, slows
+	 * down the VM). The host test FrameAllocationTest covers the pure Java parts of the frame. Meant for steady-state runs: loading another video or switching the
+	 * camera resolution allocates legitimately.
+	 */
+	private static final boolean CHECK_FRAME_ALLOCATIONS = false;
+
+	/**
+	 * Record the GL command stream that reaches the driver and log a summary every
+	 * GL_STATS_LOG_INTERVAL frames (debug builds only, slows down rendering)
+	 */
+	private static final boolean RECORD_GL_COMMANDS = false;
+
+	/**
+	 * Number of frames after which GL statistics are logged in debug builds
+	 */
+	private static final int GL_STATS_LOG_INTERVAL = 300;
+
+	/**
+	 * Number of camera textures uploaded to round-robin, so that uploads never wait for the GPU
+	 * to finish sampling the previous frame
+	 */
+	private static final int CAMERA_TEXTURE_ROTATION_DEPTH = 3;
+
+	/**
+	 * Video asset shown on each target, indexed by coordinate system ID - 1. More targets can be
+	 * added to TrackingData_MarkerlessFast.xml, which tracks several planar objects at once.
+	 */
+	private static final String[] TARGET_VIDEOS = {"h264.mp4"};
+
+	/**
+	 * Maximum number of video decoders. Targets beyond this number share decoders, the least
+	 * recently shown video is replaced.
+	 */
+	private static final int VIDEO_PLAYER_POOL_SIZE = 2;
+
+	/**
+	 * Corners of the video quad in target coordinates (x, y, z each), i.e. including the
+	 * translation and scaling applied in drawOverlays()
+	 */
+	private static final float[] OVERLAY_CORNERS = {
+		-40, -40, 40,
+		 40, -40, 40,
+		-40,  40, 40,
+		 40,  40, 40
+	};
+
+	/**
+	 * Number of frames the video of a culled (off-screen or sub-pixel) overlay keeps decoding
+	 * without being drawn before it is paused, so that short excursions do not stall playback
+	 */
+	private static final int CULLED_VIDEO_PAUSE_FRAMES = 30;
+
+	/**
+	 * Render only when a new camera or video frame arrives instead of continuously at display
+	 * rate, with pipelined tracking only (see onStart()). Set to false to fall back to continuous
+	 * rendering.
+	 */
+	private static final boolean RENDER_ON_DEMAND = true;
+
+	/**
+	 * Upper limit of the frame rate when rendering on demand, the camera delivers at most 30
+	 */
+	private static final float MAX_FRAME_RATE = 30;
+
+	/**
+	 * Frame rate at which rendering is requested without new frames when rendering on demand, i.e.
+	 * when the tracking thread delivers the camera frames
+	 */
+	private static final float MIN_FRAME_RATE = 10;
+
+	/**
+	 * Boolean intent extra that selects the GLES 2.0 backend (GLES20Compositor) instead of the
+	 * GL10 renderers, e.g. "adb shell am start --ez gles20 true ...", for comparing both paths
+	 */
+	public static final String EXTRA_GLES20 = "gles20";
+
+	/**
+	 * Interval at which per-stage frame time percentiles are logged and appended to
+	 * frame_metrics.csv in the app's external files directory
+	 */
+	private static final long FRAME_METRICS_EXPORT_INTERVAL_MS = 10000;
+
+	/**
+	 * String intent extra with a file name in the app's external files directory. Camera frames
+	 * and tracking state are recorded into that file (see FrameRecorder).
+	 */
+	public static final String EXTRA_RECORD = "record";
+
+	/**
+	 * String intent extra with the file name of a recording in the app's external files directory.
+	 * The recording is replayed in a loop instead of using the camera and tracking, for
+	 * deterministic benchmarks.
+	 */
+	public static final String EXTRA_REPLAY = "replay";
+
+	/**
+	 * String intent extra with the camera image upload format of the GL10 backend, one of
+	 * CameraImageRenderer.UploadFormat (default RGBA), e.g. "--es upload_format LUMINANCE" for a
+	 * grayscale tracking debug display
+	 */
+	public static final String EXTRA_UPLOAD_FORMAT = "upload_format";
+
+	/**
+	 * Boolean intent extra that runs camera acquisition and tracking on a separate thread,
+	 * pipelined against rendering (see TrackingPipeline), e.g. "--ez pipelined_tracking true"
+	 */
+	public static final String EXTRA_PIPELINED_TRACKING = "pipelined_tracking";
+
+	/**
+	 * Tracking configuration and the assets it references, extracted before all other assets
+	 */
+	private static final String TRACKING_CONFIGURATION = "TrackingData_MarkerlessFast.xml";
+
+	private static final String[] TRACKING_ASSETS = {TRACKING_CONFIGURATION, "metaioman_target.png"};
+
+	/**
+	 * Value of MaxObjectsToDetectPerFrame in TRACKING_CONFIGURATION as shipped
+	 */
+	private static final int TRACKING_CONFIGURATION_MAX_OBJECTS = 5;
+
+	/**
+	 * Adapt camera resolution and tracker load to the measured frame time (see QualityGovernor)
+	 */
+	private static final boolean ADAPTIVE_QUALITY = true;
+
+	/**
+	 * Quality profiles from lowest to highest, the default one is the fixed configuration used
+	 * before adaptive quality
+	 */
+	private static final QualityGovernor.Profile[] QUALITY_PROFILES = {
+		new QualityGovernor.Profile(320, 240, 1),
+		new QualityGovernor.Profile(640, 480, 2),
+		new QualityGovernor.Profile(640, 480, TRACKING_CONFIGURATION_MAX_OBJECTS),
+		new QualityGovernor.Profile(1280, 720, TRACKING_CONFIGURATION_MAX_OBJECTS)
+	};
+
+	private static final int DEFAULT_QUALITY_PROFILE = 2;
+
 	static
 	{
 		IMetaioSDKAndroid.loadNativeLibs();
@@ -46,46 +197,327 @@ public final class MainActivity extends Activity implements Renderer
 	 * Defines whether the activity is currently paused
 	 */
 	private boolean mActivityIsPaused;
+
+	/**
+	 * Checks that onDrawFrame does not allocate once warmed up, only used if
+	 * CHECK_FRAME_ALLOCATIONS is set
+	 */
+	private AllocationMonitor mAllocationMonitor;
 	
+	/**
+	 * Extracts the assets the metaio SDK needs as files in the background
+	 */
+	private AssetExtractor mAssetExtractor;
+
+	/**
+	 * Smoothed duration of onDrawFrame(), used to estimate when the current frame is displayed
+	 */
+	private long mAverageFrameNanos = 0;
+
+	/**
+	 * Quality profile the camera and tracking currently run with, only accessed on the main thread
+	 */
+	private QualityGovernor.Profile mAppliedQualityProfile;
+
+	/**
+	 * Switches camera and tracking to mQualityProfile on the main thread
+	 */
+	private final Runnable mApplyQualityProfile = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			final QualityGovernor.Profile profile = mQualityProfile;
+			if (profile == mAppliedQualityProfile || mActivityIsPaused || mMetaioSDK == null)
+				return;
+
+			Log.i(TAG, "Switching to quality profile " + profile);
+			mAppliedQualityProfile = profile;
+
+			final boolean pipelineRunning = stopTrackingPipeline();
+
+			// The camera renderer reinitializes itself when frames of the new size arrive
+			mMetaioSDK.stopCamera();
+			mMetaioSDK.startCamera(mCameraIndex, profile.cameraWidth, profile.cameraHeight, 1, true);
+
+			// Otherwise set once extracted, see onSDKReady()
+			if (mAssetExtractor.isExtracted(TRACKING_CONFIGURATION))
+				setTrackingConfiguration(profile);
+
+			if (pipelineRunning)
+				mTrackingPipeline.start();
+		}
+	};
+
 	/**
 	 * Camera image renderer which takes care of differences in camera image and viewport
-	 * aspect ratios
+	 * aspect ratios. Set on the GL thread, read by the metaio SDK callbacks.
+	 */
+	private volatile CameraImageRenderer mCameraImageRenderer;
+
+	/**
+	 * GLES 2.0 backend, replaces mCameraImageRenderer and the GL10 video drawing if mUseGLES20.
+	 * Set on the GL thread, read by the metaio SDK callbacks.
+	 */
+	private volatile GLES20Compositor mCompositor;
+
+	/**
+	 * Index of the camera that is used
 	 */
-	private CameraImageRenderer mCameraImageRenderer;
+	private int mCameraIndex;
 
-	private VideoRenderer mVideoRenderer;
+	/**
+	 * Orientation of the camera sensor in degrees, see CameraInfo.orientation
+	 */
+	private int mCameraOrientation = 90;
+
+	/**
+	 * Frame time histograms per rendering stage
+	 */
+	private FrameMetrics mFrameMetrics;
+
+	/**
+	 * Records camera frames and tracking state if EXTRA_RECORD is given, otherwise null
+	 */
+	private FrameRecorder mFrameRecorder;
+
+	/**
+	 * Replays a recording instead of the camera and tracking if EXTRA_REPLAY is given, otherwise
+	 * null
+	 */
+	private FrameReplayer mFrameReplayer;
+
+	/**
+	 * Tracking state of the drawn camera frame as published by mTrackingPipeline, only used by the
+	 * render thread with pipelined tracking
+	 */
+	private final float[] mPipelineModelMatrices = new float[TARGET_VIDEOS.length * 16];
+
+	private final float[] mPipelineProjectionMatrix = new float[16];
+
+	/**
+	 * Sequence number of the camera frame that mPipelineTracked belongs to
+	 */
+	private long mPipelineSequenceNumber = -1;
+
+	private final boolean[] mPipelineTracked = new boolean[TARGET_VIDEOS.length];
+
+	/**
+	 * Renderer that holds the last camera frame until its tracking state is published, only used
+	 * by the tracking thread with pipelined tracking. Either one is set.
+	 */
+	private CameraImageRenderer mPipelineHeldRenderer;
+
+	private GLES20Compositor mPipelineHeldCompositor;
+
+	/**
+	 * Runs camera acquisition and tracking on its own thread if EXTRA_PIPELINED_TRACKING is given,
+	 * otherwise null and both run at the start of onDrawFrame()
+	 */
+	private TrackingPipeline mTrackingPipeline;
+
+	/**
+	 * Counts frames for periodic statistics output
+	 */
+	private int mFrameCounter;
+
+	/**
+	 * Feeds gyroscope angular velocity, transformed to camera coordinates, to mPosePredictors
+	 */
+	private final SensorEventListener mGyroscopeListener = new SensorEventListener()
+	{
+		@Override
+		public void onAccuracyChanged(Sensor sensor, int accuracy)
+		{
+		}
+
+		@Override
+		public void onSensorChanged(SensorEvent event)
+		{
+			// Device axes to camera image axes: the image is rotated by the sensor orientation
+			// relative to the device's natural orientation
+			final double angle = Math.toRadians(mCameraOrientation);
+			final float cos = (float)Math.cos(angle);
+			final float sin = (float)Math.sin(angle);
+			final float x = event.values[0];
+			final float y = event.values[1];
+
+			final long now = System.nanoTime();
+			for (PosePredictor posePredictor : mPosePredictors)
+			{
+				synchronized (posePredictor)
+				{
+					posePredictor.addAngularVelocity(now, x*cos + y*sin, -x*sin + y*cos, event.values[2]);
+				}
+			}
+		}
+	};
+
+	/**
+	 * Records all GL calls of the current GL context, only used if RECORD_GL_COMMANDS is set
+	 */
+	private GLRecorder mGLRecorder;
+
+	/**
+	 * Drops redundant GL state changes of the current GL context. All rendering goes through
+	 * this wrapper because it is installed as GLSurfaceView's GL wrapper.
+	 */
+	private GLStateCache mGLStateCache;
+
+	/**
+	 * Memory accounting and leak detection of all textures, buffer objects and SurfaceTextures
+	 */
+	private final GpuResourceRegistry mGpuResources = new GpuResourceRegistry();
 
 	/**
 	 * Simple cube that is rendered on top of the target pattern
 	 */
 	private Cube mCube;
 
+	/**
+	 * Static geometry in GL buffer objects, reuploaded for every GL context
+	 */
+	private final MeshRegistry mMeshRegistry = new MeshRegistry(mGpuResources);
+
 	/**
 	 * metaio SDK instance
 	 */
 	private IMetaioSDKAndroid mMetaioSDK;
 
+	/**
+	 * Tracking pose of the target, reused every frame
+	 */
+	private final float[] mModelMatrix = new float[16];
+
+	/**
+	 * Decides per target whether its video is shown, with hysteresis against tracking flicker
+	 */
+	private final PlaybackController[] mPlaybackControllers = new PlaybackController[TARGET_VIDEOS.length];
+
+	/**
+	 * Consecutive frames in which each target's overlay was culled
+	 */
+	private final int[] mCulledFrames = new int[TARGET_VIDEOS.length];
+
+	/**
+	 * Refresh period of the display, a frame is shown at the first vsync after its buffer swap
+	 */
+	private long mDisplayPeriodNanos = 16666667L;
+
+	/**
+	 * Skips overlays that are off-screen or smaller than a pixel
+	 */
+	private final OverlayCuller mOverlayCuller = new OverlayCuller(OVERLAY_CORNERS);
+
+	/**
+	 * Extrapolates the tracking pose of each target to the time the frame is displayed
+	 */
+	private final PosePredictor[] mPosePredictors = new PosePredictor[TARGET_VIDEOS.length];
+
+	/**
+	 * Projection matrix adjusted to the displayed camera image, reused every frame
+	 */
+	private final float[] mProjectionMatrix = new float[16];
+
+	/**
+	 * Raw model matrices and tracking state of all targets in the current frame, only used while
+	 * recording
+	 */
+	private final float[] mRecordedModelMatrices = new float[TARGET_VIDEOS.length * 16];
+
+	private final boolean[] mRecordedTracked = new boolean[TARGET_VIDEOS.length];
+
+	/**
+	 * Projection matrix of the last replayed tracking record, kept for frames the replayer could
+	 * not be positioned at a tracking record
+	 */
+	private final float[] mReplayedProjectionMatrix = new float[16];
+
+	/**
+	 * Chooses the quality profile from the measured frame time, only used on the render thread
+	 */
+	private QualityGovernor mQualityGovernor;
+
+	/**
+	 * Quality profile chosen by mQualityGovernor
+	 */
+	private volatile QualityGovernor.Profile mQualityProfile;
+
+	/**
+	 * Camera image renderer and video players kept across pause/resume and stop/start
+	 */
+	private RenderResources mRenderResources;
+
+	/**
+	 * Requests frames when rendering on demand, null while there is no GLSurfaceView
+	 */
+	private RenderScheduler mRenderScheduler;
+
 	/** 
 	 * Whether the metaio SDK null renderer is initialized
 	 */
 	private boolean mRendererInitialized;
 	
+	/**
+	 * How the GL context came back after the last onResume()
+	 */
+	private RenderResources.ContextState mResumeContext;
+
+	/**
+	 * Time of the last onResume(), 0 once the first frame after it has been drawn
+	 */
+	private long mResumeTime;
+
 	/**
 	 * Current screen rotation
 	 */
 	private ESCREEN_ROTATION mScreenRotation;
 
+	/**
+	 * Gyroscope for pose prediction, null if the device has none
+	 */
+	private Sensor mGyroscope;
+
 	/**
 	 * Sensors component
 	 */
 	private SensorsComponentAndroid mSensors;
 
+	/**
+	 * Time at which the current GL surface was created, 0 once its first frame has been drawn
+	 */
+	private long mSurfaceCreatedTime;
+
 	/**
 	 * Main GLSufaceView in which everything is rendered
 	 */
 	private GLSurfaceView mSurfaceView;
-	
-	private MediaPlayer mMediaPlayer;
+
+	/**
+	 * Camera image upload format of the GL10 backend, chosen at startup through
+	 * EXTRA_UPLOAD_FORMAT
+	 */
+	private CameraImageRenderer.UploadFormat mUploadFormat = CameraImageRenderer.UploadFormat.RGBA;
+
+	/**
+	 * Whether the GLES 2.0 backend is used, chosen at startup through EXTRA_GLES20
+	 */
+	private boolean mUseGLES20;
+
+	/**
+	 * Predicted model matrices of the targets drawn in the current frame, reused every frame
+	 */
+	private final float[] mTargetModelMatrices = new float[TARGET_VIDEOS.length * 16];
+
+	/**
+	 * Video players, kept by mRenderResources across GL contexts
+	 */
+	private VideoPlayerPool mVideoPlayerPool;
+
+	/**
+	 * Videos drawn in the current frame, in the order of mTargetModelMatrices
+	 */
+	private final VideoRenderer[] mVisibleVideos = new VideoRenderer[TARGET_VIDEOS.length];
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState)
@@ -96,8 +528,77 @@ public final class MainActivity extends Activity implements Renderer
 		
 		// Enable metaio SDK log messages based on build configuration
 		MetaioDebug.enableLogging(BuildConfig.DEBUG);
+
+		// Extract assets in the background right away, only those that changed since the last
+		// start are written again
+		mAssetExtractor = new AssetExtractor(this, getFilesDir());
+		mAssetExtractor.start(TRACKING_ASSETS);
+
+		mQualityGovernor = new QualityGovernor(QUALITY_PROFILES, DEFAULT_QUALITY_PROFILE, (long)(1e9 / MAX_FRAME_RATE));
+		mQualityProfile = mQualityGovernor.getProfile();
+
+		mUseGLES20 = getIntent().getBooleanExtra(EXTRA_GLES20, false);
+		Log.i(TAG, "Rendering backend: " + (mUseGLES20 ? "GLES 2.0" : "GL10"));
+
+		final String uploadFormat = getIntent().getStringExtra(EXTRA_UPLOAD_FORMAT);
+		if (uploadFormat != null)
+		{
+			try
+			{
+				mUploadFormat = CameraImageRenderer.UploadFormat.valueOf(uploadFormat);
+			}
+			catch (IllegalArgumentException e)
+			{
+				Log.e(TAG, "Unknown upload format " + uploadFormat + ", using " + mUploadFormat);
+			}
+		}
+
+		File filesDirectory = getExternalFilesDir(null);
+		if (filesDirectory == null)
+			filesDirectory = getFilesDir();
+
+		mFrameMetrics = new FrameMetrics(new File(filesDirectory, "frame_metrics.csv"), FRAME_METRICS_EXPORT_INTERVAL_MS);
+
+		final String replayFile = getIntent().getStringExtra(EXTRA_REPLAY);
+		final String recordFile = getIntent().getStringExtra(EXTRA_RECORD);
+		if (replayFile != null)
+		{
+			try
+			{
+				mFrameReplayer = new FrameReplayer(new File(filesDirectory, replayFile));
+				Log.i(TAG, "Replaying " + mFrameReplayer.getRecordCount() + " records from " + replayFile);
+			}
+			catch (IOException e)
+			{
+				Log.e(TAG, "Failed to open recording " + replayFile, e);
+			}
+		}
+		else if (recordFile != null)
+		{
+			try
+			{
+				mFrameRecorder = new FrameRecorder(new File(filesDirectory, recordFile));
+			}
+			catch (IOException e)
+			{
+				Log.e(TAG, "Failed to create recording " + recordFile, e);
+			}
+		}
+
+		if (BuildConfig.DEBUG && CHECK_FRAME_ALLOCATIONS)
+		{
+			mAllocationMonitor = new AllocationMonitor(100, 0);
+			mAllocationMonitor.start();
+		}
 		
-		mCube = new Cube();
+		mCube = new Cube(mMeshRegistry);
+		mRenderResources = new RenderResources(this, mGpuResources, mMeshRegistry, mUseGLES20, VIDEO_PLAYER_POOL_SIZE);
+
+		for (int i = 0; i < TARGET_VIDEOS.length; ++i)
+		{
+			mPlaybackControllers[i] = new PlaybackController();
+			mPosePredictors[i] = new PosePredictor();
+		}
 		mSurfaceView = null;
 		mRendererInitialized = false;
 		
@@ -107,35 +608,112 @@ public final class MainActivity extends Activity implements Renderer
 		
 		mSensors = new SensorsComponentAndroid(getApplicationContext());
 		mMetaioSDK.registerSensorsComponent(mSensors);
+
+		// Angular velocity for pose prediction is read directly from the gyroscope, at the rate
+		// the renderer needs it
+		mGyroscope = ((SensorManager)getSystemService(SENSOR_SERVICE)).getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+
+		final float refreshRate = getWindowManager().getDefaultDisplay().getRefreshRate();
+		if (refreshRate > 0)
+			mDisplayPeriodNanos = (long)(1e9 / refreshRate);
 		
+		if (getIntent().getBooleanExtra(EXTRA_PIPELINED_TRACKING, false) && mFrameReplayer == null)
+		{
+			Log.i(TAG, "Pipelined tracking");
+			mTrackingPipeline = new TrackingPipeline(mMetaioSDK, TARGET_VIDEOS.length, mFrameMetrics,
+				new TrackingPipeline.Listener()
+				{
+					@Override
+					public void onFrameTracked(long captureTime)
+					{
+						// The held camera frame becomes visible together with its tracking state
+						final GLES20Compositor compositor = mPipelineHeldCompositor;
+						final CameraImageRenderer cameraImageRenderer = mPipelineHeldRenderer;
+						mPipelineHeldCompositor = null;
+						mPipelineHeldRenderer = null;
+
+						// A frame held by a renderer that was replaced in the meantime (new GL
+						// context) is dropped instead of being published into the discarded one
+						boolean published = false;
+						if (compositor != null && compositor == mCompositor)
+							published = compositor.publishHeldFrame();
+						else if (cameraImageRenderer != null && cameraImageRenderer == mCameraImageRenderer)
+							published = cameraImageRenderer.publishHeldFrame();
+
+						final RenderScheduler renderScheduler = mRenderScheduler;
+						if (published && renderScheduler != null)
+							renderScheduler.requestRender();
+					}
+				});
+		}
+
 		mMetaioSDK.registerCallback(new IMetaioSDKCallback()
 		{
 			@Override
 			public void onNewCameraFrame(ImageStruct cameraFrame)
 			{
-				if (mCameraImageRenderer != null)
-					mCameraImageRenderer.updateFrame(cameraFrame);
+				// Live frames are ignored while a recording is replayed
+				if (mFrameReplayer != null)
+					return;
+
+				// Stamp the frame on arrival, the renderers carry the time along to the draw
+				final long captureTime = System.nanoTime();
+
+				final FrameRecorder frameRecorder = mFrameRecorder;
+				if (frameRecorder != null)
+					frameRecorder.recordFrame(cameraFrame, captureTime);
+
+				final GLES20Compositor compositor = mCompositor;
+				final CameraImageRenderer cameraImageRenderer = compositor == null ? mCameraImageRenderer : null;
+				if (compositor != null)
+					compositor.updateFrame(cameraFrame, captureTime);
+				else if (cameraImageRenderer != null)
+					cameraImageRenderer.updateFrame(cameraFrame, captureTime);
+
+				// With pipelined tracking, rendering is requested once the frame's tracking state is
+				// published
+				final TrackingPipeline trackingPipeline = mTrackingPipeline;
+				if (trackingPipeline != null)
+				{
+					// onNewCameraFrame() runs inside render() on the tracking thread, which calls
+					// onFrameTracked() right after it
+					mPipelineHeldCompositor = compositor;
+					mPipelineHeldRenderer = cameraImageRenderer;
+					trackingPipeline.onNewCameraFrame(captureTime);
+					return;
+				}
+
+				final RenderScheduler renderScheduler = mRenderScheduler;
+				if (renderScheduler != null)
+					renderScheduler.requestRender();
 			}
 
 			@Override
 			public void onSDKReady()
 			{
-				// Load desired tracking configuration when the SDK is ready
-				final String trackingConfigFile = AssetsManager.getAssetPath("TrackingData_MarkerlessFast.xml");
-				if (trackingConfigFile == null || !mMetaioSDK.setTrackingConfiguration(trackingConfigFile))
-					Log.e(TAG, "Failed to set tracking configuration");
+				// Load desired tracking configuration when the SDK is ready and the files it needs
+				// are extracted, the remaining assets may still be in progress
+				mAssetExtractor.runWhenExtracted(TRACKING_ASSETS, new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						if (mMetaioSDK == null)
+							return;
+
+						if (mAssetExtractor.isExtracted(TRACKING_CONFIGURATION))
+						{
+							final boolean pipelineRunning = stopTrackingPipeline();
+							setTrackingConfiguration(mQualityProfile);
+							if (pipelineRunning)
+								mTrackingPipeline.start();
+						}
+						else
+							Log.e(TAG, "Failed to set tracking configuration");
+					}
+				});
 			}
 		});
-
-		try
-		{
-			// Extract all assets and overwrite existing files if debug build
-			AssetsManager.extractAllAssets(getApplicationContext(), BuildConfig.DEBUG);
-		}
-		catch (IOException e)
-		{
-			e.printStackTrace();
-		}
 	}
 	
 	@Override
@@ -143,9 +721,21 @@ public final class MainActivity extends Activity implements Renderer
 	{
 		super.onPause();
 
+		if (mRenderScheduler != null)
+			mRenderScheduler.stop();
+
 		if (mSurfaceView != null)
 			mSurfaceView.onPause();
+
+		mFrameMetrics.stop();
 		
+		if (mGyroscope != null)
+			((SensorManager)getSystemService(SENSOR_SERVICE)).unregisterListener(mGyroscopeListener);
+
+		// The tracking thread must not call into the metaio SDK while it is paused
+		if (mTrackingPipeline != null)
+			mTrackingPipeline.stop();
+
 		mActivityIsPaused = true;
 		mMetaioSDK.pause();
 	}
@@ -155,8 +745,20 @@ public final class MainActivity extends Activity implements Renderer
 	{
 		super.onResume();
 
+		mResumeTime = System.nanoTime();
+		mResumeContext = RenderResources.ContextState.PRESERVED;
+
 		mMetaioSDK.resume();
 		mActivityIsPaused = false;
+
+		if (mTrackingPipeline != null)
+			mTrackingPipeline.start();
+
+		if (mGyroscope != null)
+		{
+			((SensorManager)getSystemService(SENSOR_SERVICE)).registerListener(mGyroscopeListener, mGyroscope,
+				SensorManager.SENSOR_DELAY_GAME);
+		}
 		
 		if (mSurfaceView != null)
 		{
@@ -169,6 +771,15 @@ public final class MainActivity extends Activity implements Renderer
 
 			mSurfaceView.onResume();
 		}
+
+		if (mRenderScheduler != null)
+			mRenderScheduler.start();
+
+		mFrameMetrics.start();
+
+		// Catch up with a profile switch that happened while pausing
+		if (mAppliedQualityProfile != null)
+			mApplyQualityProfile.run();
 	}
 
 	@Override
@@ -181,41 +792,76 @@ public final class MainActivity extends Activity implements Renderer
 			// Set empty content view
 			setContentView(new FrameLayout(this));
 			
-			final int cameraIndex = SystemInfo.getCameraIndex(CameraInfo.CAMERA_FACING_BACK);
+			mCameraIndex = SystemInfo.getCameraIndex(CameraInfo.CAMERA_FACING_BACK);
+
+			CameraInfo cameraInfo = new CameraInfo();
+			Camera.getCameraInfo(mCameraIndex, cameraInfo);
+			mCameraOrientation = cameraInfo.orientation;
 
-			// Since the metaio SDK normally captures in YUV for performance reasons, we
-			// enforce RGB capturing here to make it easier for us to handle the camera image.
+			// Capture in YUV (the metaio SDK's native format) to avoid the cost of RGB capturing.
+			// CameraImageRenderer converts the YUV420SP frames to RGBA itself.
 			// Start camera only when the activity starts the first time
 			// (see lifecycle: http://developer.android.com/training/basics/activity-lifecycle/pausing.html)
-			if (!mActivityIsPaused)
-				mMetaioSDK.startCamera(cameraIndex, 640, 480, 1, false); 
+			if (!mActivityIsPaused && mFrameReplayer == null)
+			{
+				mAppliedQualityProfile = mQualityProfile;
+				mMetaioSDK.startCamera(mCameraIndex, mAppliedQualityProfile.cameraWidth,
+					mAppliedQualityProfile.cameraHeight, 1, true);
+			}
 
 			// Create a new GLSurfaceView
 			mSurfaceView = new GLSurfaceView(this);
-			mSurfaceView.setEGLContextClientVersion(1);
+			mSurfaceView.setEGLContextClientVersion(mUseGLES20 ? 2 : 1);
+
+			// Keep the context while paused, so that resuming does not even re-create GL objects
+			mSurfaceView.setPreserveEGLContextOnPause(true);
+
+			mSurfaceView.setGLWrapper(new GLSurfaceView.GLWrapper()
+			{
+				@Override
+				public GL wrap(GL gl)
+				{
+					// Called for every new EGL surface, so the state cache never sees stale state
+					GL10 gl10 = (GL10)gl;
+
+					if (BuildConfig.DEBUG && RECORD_GL_COMMANDS)
+					{
+						mGLRecorder = new GLRecorder(gl10);
+						gl10 = mGLRecorder.getGL();
+					}
+
+					mGLStateCache = new GLStateCache(gl10);
+					return mGLStateCache;
+				}
+			});
+
 			mSurfaceView.setRenderer(this);
 			mSurfaceView.setKeepScreenOn(true);
+
+			// New camera and video frames trigger rendering, see onNewCameraFrame and
+			// onSurfaceCreated
+			mRenderScheduler = new RenderScheduler(mSurfaceView);
+			mRenderScheduler.setMaxFrameRate(MAX_FRAME_RATE);
+			mRenderScheduler.setMinFrameRate(MIN_FRAME_RATE);
+			// Without the tracking thread, onNewCameraFrame is only called inside render(): a frame
+			// that finds no new camera frame cannot be followed by a request from the camera, and
+			// on demand rendering would just poll at the camera rate without saving anything. A
+			// replay has no camera to wait for and runs as fast as possible.
+			mRenderScheduler.setContinuous(!RENDER_ON_DEMAND || mFrameReplayer != null || mTrackingPipeline == null);
 		}
-		
-		mMediaPlayer = new MediaPlayer();
-		try {
-			AssetFileDescriptor afd = getAssets().openFd("h264.mp4");
-			mMediaPlayer.setDataSource(afd.getFileDescriptor(),
-					afd.getStartOffset(), afd.getLength());
-			afd.close();
-		} catch (IllegalArgumentException e) {
-			e.printStackTrace();
-		} catch (IllegalStateException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}	
 	}
 
 	@Override
 	public void onConfigurationChanged(Configuration newConfig) 
 	{
 		updateScreenRotation();
+
+		if (mCameraImageRenderer != null)
+			mCameraImageRenderer.invalidateLayout();
+
+		if (mCompositor != null)
+			mCompositor.invalidateLayout();
+
 		super.onConfigurationChanged(newConfig);
 	}
 	
@@ -225,7 +871,21 @@ public final class MainActivity extends Activity implements Renderer
 	private void updateScreenRotation()
 	{
 		mScreenRotation = Screen.getRotation(this);
+
+		final boolean pipelineRunning = stopTrackingPipeline();
 		mMetaioSDK.setScreenRotation(mScreenRotation);
+		if (pipelineRunning)
+			mTrackingPipeline.start();
+	}
+
+	/**
+	 * Stop the tracking thread, if any, before calling into the metaio SDK on the main thread
+	 *
+	 * @return Whether it was running and has to be started again afterwards
+	 */
+	private boolean stopTrackingPipeline()
+	{
+		return mTrackingPipeline != null && mTrackingPipeline.stop();
 	}
 	
 	@Override
@@ -240,13 +900,15 @@ public final class MainActivity extends Activity implements Renderer
 			v.removeAllViews();
 			mSurfaceView = null;
 		}
-		
-		if (mMediaPlayer != null) {
-			if (mMediaPlayer.isPlaying()) {
-				mMediaPlayer.stop();
-			}
-			mMediaPlayer.release();
+
+		if (mRenderScheduler != null)
+		{
+			mRenderScheduler.stop();
+			mRenderScheduler = null;
 		}
+		
+		// Decoders stay prepared for onStart(), only the GL objects are re-created
+		mRenderResources.onStop();
 	}
 
 	@Override
@@ -254,6 +916,44 @@ public final class MainActivity extends Activity implements Renderer
 	{
 		super.onDestroy();
 
+		if (mAllocationMonitor != null)
+		{
+			mAllocationMonitor.stop();
+			mAllocationMonitor = null;
+		}
+
+		if (mRenderResources != null)
+		{
+			mRenderResources.release();
+			mRenderResources = null;
+			mCameraImageRenderer = null;
+			mVideoPlayerPool = null;
+		}
+
+		if (mFrameRecorder != null)
+		{
+			mFrameRecorder.close();
+			mFrameRecorder = null;
+		}
+
+		if (mFrameReplayer != null)
+		{
+			try
+			{
+				mFrameReplayer.close();
+			}
+			catch (IOException e)
+			{
+			}
+			mFrameReplayer = null;
+		}
+
+		if (mTrackingPipeline != null)
+		{
+			mTrackingPipeline.stop();
+			mTrackingPipeline = null;
+		}
+
 		if (mMetaioSDK != null)
 		{
 			mMetaioSDK.delete();
@@ -272,42 +972,335 @@ public final class MainActivity extends Activity implements Renderer
 	@Override
 	public void onDrawFrame(GL10 gl)
 	{
-		mMetaioSDK.requestCameraImage();
+		final RenderScheduler renderScheduler = mRenderScheduler;
+		if (renderScheduler != null)
+			renderScheduler.onFrameStarted();
+
+		final FrameMetrics frameMetrics = mFrameMetrics;
+		final FrameRecorder frameRecorder = mFrameRecorder;
+		final FrameReplayer frameReplayer = mFrameReplayer;
+		final TrackingPipeline trackingPipeline = mTrackingPipeline;
+		final long frameStartTime = System.nanoTime();
+		final long pipelineTrackingNanos = trackingPipeline != null ? trackingPipeline.getTrackingNanos() : 0;
+		final long trackingStartTime;
 
-		// Note: The metaio SDK itself does not render anything here because we initialized it with
-		// the NULL renderer. This call is necessary to get the camera image and update tracking.
-		mMetaioSDK.render();
+		// Whether the replayer is positioned at the tracking state of the replayed frame
+		boolean replayed = false;
+
+		if (frameReplayer != null)
+		{
+			// Camera frames and tracking state come from the recording, the metaio SDK is not used
+			replayed = replayNextFrame(frameReplayer);
+			trackingStartTime = System.nanoTime();
+		}
+		else if (trackingPipeline != null)
+		{
+			// Camera frames and tracking state come from the tracking thread, which records
+			// REQUEST_CAMERA_IMAGE and TRACKING itself
+			trackingStartTime = frameStartTime;
+		}
+		else
+		{
+			mMetaioSDK.requestCameraImage();
+			trackingStartTime = System.nanoTime();
+
+			// Note: The metaio SDK itself does not render anything here because we initialized it
+			// with the NULL renderer. This call is necessary to get the camera image and update
+			// tracking.
+			mMetaioSDK.render();
+		}
+
+		if (trackingPipeline == null)
+		{
+			frameMetrics.record(FrameMetrics.Stage.REQUEST_CAMERA_IMAGE, trackingStartTime - frameStartTime);
+			frameMetrics.record(FrameMetrics.Stage.TRACKING, System.nanoTime() - trackingStartTime);
+		}
+
+		// Allocations inside metaio SDK calls (e.g. JNI wrapper objects) are not counted
+		final AllocationMonitor allocationMonitor = mAllocationMonitor;
+		if (allocationMonitor != null)
+			allocationMonitor.beginSection();
 
 		gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
 
 		gl.glDisable(GL10.GL_DEPTH_TEST);
 
-		mCameraImageRenderer.draw(gl, mScreenRotation);
+		if (mCompositor != null)
+		{
+			mCompositor.drawCameraImage(mScreenRotation);
+			frameMetrics.record(FrameMetrics.Stage.CAMERA_UPLOAD, mCompositor.getLastUploadTimeNanos());
+		}
+		else
+		{
+			mCameraImageRenderer.draw(gl, mScreenRotation);
+			frameMetrics.record(FrameMetrics.Stage.CAMERA_UPLOAD, mCameraImageRenderer.getLastUploadTimeNanos());
+		}
 
 		gl.glEnable(GL10.GL_DEPTH_TEST);
 
+		if (allocationMonitor != null)
+			allocationMonitor.endSection();
+
+		// Pick up the tracking state of exactly the camera frame that was just drawn
+		if (trackingPipeline != null)
+		{
+			final long sequenceNumber = mCompositor != null ? mCompositor.getFrameSequenceNumber() :
+				mCameraImageRenderer.getFrameSequenceNumber();
+			if (sequenceNumber != mPipelineSequenceNumber)
+			{
+				mPipelineSequenceNumber = sequenceNumber;
+				final long captureTime = mCompositor != null ? mCompositor.getFrameCaptureTime() :
+					mCameraImageRenderer.getFrameCaptureTime();
+				// The previous state belongs to another camera frame, draw no overlays on this one
+				if (!trackingPipeline.getTrackingState(captureTime, mPipelineTracked, mPipelineModelMatrices,
+					mPipelineProjectionMatrix))
+				{
+					Arrays.fill(mPipelineTracked, false);
+				}
+			}
+		}
+
 		//
-		// Render cube in front of camera image (if we're currently tracking)
+		// Render a video in front of the camera image on every target we're currently tracking.
+		// Poses are collected first so that all videos are drawn in one batch.
 		//
 
-		final TrackingValues trackingValues = mMetaioSDK.getTrackingValues(1);
+		// Use right-handed projection matrix, scaled to the displayed camera image below
+		if (frameReplayer != null)
+		{
+			// Without a tracking record the replayer is positioned at nothing or at image data
+			if (replayed)
+				frameReplayer.getProjectionMatrix(mReplayedProjectionMatrix);
+			System.arraycopy(mReplayedProjectionMatrix, 0, mProjectionMatrix, 0, 16);
+		}
+		else if (trackingPipeline != null)
+			System.arraycopy(mPipelineProjectionMatrix, 0, mProjectionMatrix, 0, 16);
+		else
+			mMetaioSDK.getProjectionMatrix(mProjectionMatrix, true);
+
+		if (mCompositor != null)
+			mOverlayCuller.setProjection(mProjectionMatrix, mCompositor.getScaleX(), mCompositor.getScaleY());
+		else
+			mOverlayCuller.setProjection(mProjectionMatrix, mCameraImageRenderer.getScaleX(), mCameraImageRenderer.getScaleY());
+
+		final long now = System.nanoTime();
+		int visibleTargets = 0;
 
-		if (trackingValues.isTrackingState())
+		// Poses are stamped with the capture time of the camera frame they were tracked in, and
+		// predicted to the time this frame reaches the display: after the rest of the frame and the
+		// following vsync. The prediction thus spans the actual camera-to-display latency.
+		final long frameCaptureTime = mCompositor != null ? mCompositor.getFrameCaptureTime() :
+			mCameraImageRenderer.getFrameCaptureTime();
+		final long poseTime = frameCaptureTime != 0 ? frameCaptureTime : now;
+		final long displayTime = frameStartTime + mAverageFrameNanos + mDisplayPeriodNanos;
+
+		for (int i = 0; i < TARGET_VIDEOS.length; ++i)
 		{
-			float[] modelMatrix = new float[16];
-			// preMultiplyWithStandardViewMatrix=false parameter explained below
-			mMetaioSDK.getTrackingValues(1, modelMatrix, false, true);
+			// Coordinate system IDs start at 1
+			final int coordinateSystemID = i + 1;
+			final PlaybackController playbackController = mPlaybackControllers[i];
+			final PosePredictor posePredictor = mPosePredictors[i];
+			final boolean tracked;
 
-			// With getTrackingValues(..., preMultiplyWithStandardViewMatrix=true), the metaio SDK
-			// would calculate a model-view matrix, i.e. a standard look-at matrix (looking from the
-			// origin along the negative Z axis) multiplied by the model matrix (tracking pose).
-			// Here we use our own view matrix for demonstration purposes (parameter set to false),
-			// for instance if you have your own camera implementation. Additionally, the cube is
-			// scaled up by factor 40 and translated by 40 units in order to have its back face lie
-			// on the tracked image.
-			gl.glMatrixMode(GL10.GL_MODELVIEW);
-			gl.glLoadIdentity();
+			if (frameReplayer != null)
+			{
+				tracked = replayed && frameReplayer.isTracked(i);
+				if (tracked)
+					frameReplayer.getModelMatrix(i, mModelMatrix, 0);
+			}
+			else if (trackingPipeline != null)
+			{
+				tracked = mPipelineTracked[i];
+				if (tracked)
+					System.arraycopy(mPipelineModelMatrices, i * 16, mModelMatrix, 0, 16);
+			}
+			else
+			{
+				final TrackingValues trackingValues = mMetaioSDK.getTrackingValues(coordinateSystemID);
+				tracked = trackingValues.isTrackingState();
+
+				// preMultiplyWithStandardViewMatrix=false parameter explained below
+				if (tracked)
+					mMetaioSDK.getTrackingValues(coordinateSystemID, mModelMatrix, false, true);
+			}
+
+			if (frameRecorder != null)
+			{
+				mRecordedTracked[i] = tracked;
+				if (tracked)
+					System.arraycopy(mModelMatrix, 0, mRecordedModelMatrices, i * 16, 16);
+			}
+
+			if (allocationMonitor != null)
+				allocationMonitor.beginSection();
+
+			if (tracked)
+			{
+				// Render the pose predicted for display time instead of the one of the camera frame
+				synchronized (posePredictor)
+				{
+					posePredictor.addPose(poseTime, mModelMatrix);
+					posePredictor.predict(displayTime, mModelMatrix);
+				}
+			}
+
+			// Short tracking losses keep the video playing with the last good pose
+			playbackController.update(tracked, mModelMatrix, frameCaptureTime, now);
+
+			if (playbackController.isVisible())
+			{
+				if (mOverlayCuller.isVisible(playbackController.getPose(), 0))
+					mCulledFrames[i] = 0;
+				else
+					++mCulledFrames[i];
+
+				// Culled overlays are neither drawn nor is their video texture updated. Their video
+				// keeps playing for a while, then it is paused by not acquiring its player.
+				if (mCulledFrames[i] <= CULLED_VIDEO_PAUSE_FRAMES)
+				{
+					final VideoRenderer videoRenderer = mVideoPlayerPool.acquire(TARGET_VIDEOS[i]);
+					if (videoRenderer != null && mCulledFrames[i] == 0)
+					{
+						System.arraycopy(playbackController.getPose(), 0, mTargetModelMatrices, visibleTargets * 16, 16);
+						mVisibleVideos[visibleTargets++] = videoRenderer;
+					}
+				}
+			}
+			else if (!tracked)
+			{
+				synchronized (posePredictor)
+				{
+					posePredictor.clear();
+				}
+			}
+
+			if (allocationMonitor != null)
+				allocationMonitor.endSection();
+		}
+
+		if (frameRecorder != null)
+			frameRecorder.recordTracking(now, mRecordedTracked, mRecordedModelMatrices, mProjectionMatrix);
+
+		if (allocationMonitor != null)
+			allocationMonitor.beginSection();
+
+		if (visibleTargets > 0)
+		{
+			final long overlayStartTime = System.nanoTime();
+
+			// Since we render the camera image ourselves, and there are devices whose screen aspect
+			// ratio does not match the camera aspect ratio, we have to make up for the stretched
+			// and cropped camera image. The CameraImageRenderer class gives us values by which
+			// pixels should be scaled from the middle of the screen (e.g. getScaleX() > 1 if the
+			// camera image is wider than the screen and thus its width is displayed cropped).
+			if (mCompositor != null)
+			{
+				mProjectionMatrix[0] *= mCompositor.getScaleX();
+				mProjectionMatrix[5] *= mCompositor.getScaleY();
+				drawOverlaysGLES20(visibleTargets);
+			}
+			else
+			{
+				mProjectionMatrix[0] *= mCameraImageRenderer.getScaleX();
+				mProjectionMatrix[5] *= mCameraImageRenderer.getScaleY();
+				drawOverlays(gl, visibleTargets);
+			}
+
+			long videoUpdateTime = 0;
+			for (int i = 0; i < visibleTargets; ++i)
+				videoUpdateTime += mVisibleVideos[i].getLastUpdateTime();
+
+			frameMetrics.record(FrameMetrics.Stage.VIDEO_UPDATE, videoUpdateTime);
+			frameMetrics.record(FrameMetrics.Stage.OVERLAY_DRAW, System.nanoTime() - overlayStartTime);
+		}
+
+		// Videos of hidden targets are paused but stay prepared, and resume where they stopped
+		mVideoPlayerPool.endFrame();
+
+		final long frameEndTime = System.nanoTime();
+		frameMetrics.record(FrameMetrics.Stage.FRAME, frameEndTime - frameStartTime);
+		mAverageFrameNanos += (frameEndTime - frameStartTime - mAverageFrameNanos) / 8;
+
+		// Without the pipeline, tracking that ran during the frame would have added to it
+		if (trackingPipeline != null)
+		{
+			frameMetrics.record(FrameMetrics.Stage.PIPELINE_GAIN,
+				trackingPipeline.getTrackingNanos() - pipelineTrackingNanos);
+		}
+
+		// The frame is displayed with the next buffer swap, right after this method returns
+		if (mCompositor != null)
+		{
+			frameMetrics.recordCameraFrame(mCompositor.getFrameSequenceNumber(), mCompositor.getFrameCaptureTime(),
+				mCompositor.getFrameUploadTime(), frameEndTime);
+		}
+		else
+		{
+			frameMetrics.recordCameraFrame(mCameraImageRenderer.getFrameSequenceNumber(),
+				mCameraImageRenderer.getFrameCaptureTime(), mCameraImageRenderer.getFrameUploadTime(), frameEndTime);
+		}
+
+		if (allocationMonitor != null)
+		{
+			allocationMonitor.endSection();
+			allocationMonitor.endFrame();
+		}
+
+		// With the pipeline, tracking is not part of the frame time but limits the camera frame rate
+		// just the same
+		long frameNanos = frameEndTime - frameStartTime;
+		if (trackingPipeline != null)
+			frameNanos = Math.max(frameNanos, trackingPipeline.getReadTrackingNanos());
+
+		// Switching restarts the camera, which is done on the main thread. Replays have a fixed
+		// resolution.
+		if (ADAPTIVE_QUALITY && frameReplayer == null && mQualityGovernor.update(frameNanos, frameEndTime))
+		{
+			mQualityProfile = mQualityGovernor.getProfile();
+			runOnUiThread(mApplyQualityProfile);
+		}
+
+		if (mResumeTime != 0)
+		{
+			final long resumeNanos = System.nanoTime() - mResumeTime;
+			frameMetrics.record(FrameMetrics.Stage.RESUME_TO_FIRST_FRAME, resumeNanos);
+			Log.i(TAG, "First frame drawn " + resumeNanos / 1000000 + " ms after resume, GL context " + mResumeContext);
+			mResumeTime = 0;
+		}
+
+		if (BuildConfig.DEBUG && mSurfaceCreatedTime != 0)
+		{
+			Log.i(TAG, "First frame drawn " + (System.nanoTime() - mSurfaceCreatedTime) / 1000000 +
+				" ms after surface creation");
+			mSurfaceCreatedTime = 0;
+		}
+
+		if (BuildConfig.DEBUG && ++mFrameCounter % GL_STATS_LOG_INTERVAL == 0)
+			logGLStatistics();
+	}
+
+	/**
+	 * Draw the videos of the visible targets with GL10, projection matrix is in mProjectionMatrix
+	 */
+	private void drawOverlays(GL10 gl, int visibleTargets)
+	{
+		gl.glMatrixMode(GL10.GL_PROJECTION);
+		gl.glLoadMatrixf(mProjectionMatrix, 0);
+
+		// With getTrackingValues(..., preMultiplyWithStandardViewMatrix=true), the metaio SDK
+		// would calculate a model-view matrix, i.e. a standard look-at matrix (looking from the
+		// origin along the negative Z axis) multiplied by the model matrix (tracking pose).
+		// Here we use our own view matrix for demonstration purposes (parameter set to false),
+		// for instance if you have your own camera implementation. Additionally, the cube is
+		// scaled up by factor 40 and translated by 40 units in order to have its back face lie
+		// on the tracked image.
+		gl.glMatrixMode(GL10.GL_MODELVIEW);
 
+		// All videos share the same vertex arrays and texture state
+		mVisibleVideos[0].beginDraw(gl);
+
+		for (int i = 0; i < visibleTargets; ++i)
+		{
 			// Use typical view matrix (camera looking along negative Z axis, see previous hint)
 			gl.glLoadIdentity();
 
@@ -315,33 +1308,173 @@ public final class MainActivity extends Activity implements Renderer
 			// higher (because it's rendered from -1 to +1 on all axes, after scaling that's +-40)
 			// so that its back face lies on the tracked image and move it into place
 			// (transformation to the coordinate system of the tracked image).
-			gl.glMultMatrixf(modelMatrix, 0); // MODEL_VIEW = LOOK_AT * MODEL
+			gl.glMultMatrixf(mTargetModelMatrices, i * 16); // MODEL_VIEW = LOOK_AT * MODEL
 			gl.glTranslatef(0, 0, 40);
 			gl.glScalef(40, 40, 40); // all sides of the cube then have dimension 80
 
-			gl.glMatrixMode(GL10.GL_PROJECTION);
-			float[] projMatrix = new float[16];
+//			mCube.render(gl);
 
-			// Use right-handed projection matrix
-			mMetaioSDK.getProjectionMatrix(projMatrix, true);
+			mVisibleVideos[i].drawFrame(gl);
+		}
 
-			// Since we render the camera image ourselves, and there are devices whose screen aspect
-			// ratio does not match the camera aspect ratio, we have to make up for the stretched
-			// and cropped camera image. The CameraImageRenderer class gives us values by which
-			// pixels should be scaled from the middle of the screen (e.g. getScaleX() > 1 if the
-			// camera image is wider than the screen and thus its width is displayed cropped).
-			projMatrix[0] *= mCameraImageRenderer.getScaleX();
-			projMatrix[5] *= mCameraImageRenderer.getScaleY();
-			gl.glLoadMatrixf(projMatrix, 0);
+		mVisibleVideos[0].endDraw(gl);
+	}
 
-//			mCube.render(gl);
-			
-			mVideoRenderer.draw(gl, mScreenRotation);
-		} else {
-			if (mMediaPlayer.isPlaying()) {
-				mMediaPlayer.pause();
+	/**
+	 * Draw the videos of the visible targets with the GLES 2.0 compositor, projection matrix is in
+	 * mProjectionMatrix
+	 */
+	private void drawOverlaysGLES20(int visibleTargets)
+	{
+		// Same transformation as in drawOverlays(), applied to the model matrices in place
+		mCompositor.beginOverlays(mProjectionMatrix);
+
+		for (int i = 0; i < visibleTargets; ++i)
+		{
+			Matrix.translateM(mTargetModelMatrices, i * 16, 0, 0, 40);
+			Matrix.scaleM(mTargetModelMatrices, i * 16, 40, 40, 40);
+			mCompositor.drawOverlay(mVisibleVideos[i], mTargetModelMatrices, i * 16);
+		}
+
+		mCompositor.endOverlays();
+	}
+
+	/**
+	 * Load the tracking configuration with the tracker load of a quality profile. Variants of the
+	 * shipped configuration are written next to it, so that they find the same reference images.
+	 */
+	private void setTrackingConfiguration(QualityGovernor.Profile profile)
+	{
+		File file = mAssetExtractor.getAssetFile(TRACKING_CONFIGURATION);
+
+		if (profile.maxObjectsToDetectPerFrame != TRACKING_CONFIGURATION_MAX_OBJECTS)
+		{
+			final File variant = new File(file.getParentFile(), TRACKING_CONFIGURATION.replace(".xml",
+				"_" + profile.maxObjectsToDetectPerFrame + ".xml"));
+
+			try
+			{
+				writeTrackingConfigurationVariant(file, variant, profile.maxObjectsToDetectPerFrame);
+				file = variant;
+			}
+			catch (IOException e)
+			{
+				Log.e(TAG, "Failed to write " + variant + ", using " + file, e);
 			}
 		}
+
+		if (!mMetaioSDK.setTrackingConfiguration(file.getPath()))
+			Log.e(TAG, "Failed to set tracking configuration " + file);
+	}
+
+	private static void writeTrackingConfigurationVariant(File source, File destination, int maxObjectsToDetectPerFrame)
+		throws IOException
+	{
+		final StringBuilder xml = new StringBuilder((int)source.length());
+		final char[] buffer = new char[4096];
+		Reader reader = new FileReader(source);
+		try
+		{
+			int count;
+			while ((count = reader.read(buffer)) > 0)
+				xml.append(buffer, 0, count);
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		Writer writer = new FileWriter(destination);
+		try
+		{
+			writer.write(xml.toString().replaceAll("<MaxObjectsToDetectPerFrame>\\s*\\d+\\s*</MaxObjectsToDetectPerFrame>",
+				"<MaxObjectsToDetectPerFrame>" + maxObjectsToDetectPerFrame + "</MaxObjectsToDetectPerFrame>"));
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	/**
+	 * Feed the recorded camera frames up to the next recorded tracking state to the camera
+	 * renderer, starting over at the end of the recording
+	 *
+	 * @return Whether the replayer is positioned at a tracking state
+	 */
+	private boolean replayNextFrame(FrameReplayer frameReplayer)
+	{
+		try
+		{
+			for (int i = 0; i <= frameReplayer.getRecordCount(); ++i)
+			{
+				if (!frameReplayer.next())
+				{
+					frameReplayer.rewind();
+					continue;
+				}
+
+				if (frameReplayer.getType() == RecordingFormat.TYPE_TRACKING)
+					return true;
+
+				// Stamped like live frames, so latency tracing covers the replay as well
+				final long captureTime = System.nanoTime();
+				final ByteBuffer data = frameReplayer.getFrameData();
+				final ECOLOR_FORMAT colorFormat = ECOLOR_FORMAT.swigToEnum(frameReplayer.getFrameColorFormat());
+
+				if (mCompositor != null)
+				{
+					mCompositor.updateFrame(data, frameReplayer.getFrameWidth(), frameReplayer.getFrameHeight(),
+						colorFormat, captureTime);
+				}
+				else
+				{
+					mCameraImageRenderer.updateFrame(data, frameReplayer.getFrameWidth(),
+						frameReplayer.getFrameHeight(), colorFormat, frameReplayer.isFrameOriginUpperLeft(), captureTime);
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			Log.e(TAG, "Failed to replay recording", e);
+		}
+		catch (IllegalArgumentException e)
+		{
+			// Thrown by swigToEnum()
+			Log.e(TAG, "Unknown color format in recording", e);
+		}
+
+		return false;
+	}
+
+	private void logGLStatistics()
+	{
+		if (mGLStateCache != null)
+		{
+			Log.i(TAG, "Redundant GL calls eliminated in last " + GL_STATS_LOG_INTERVAL + " frames: " +
+				mGLStateCache.getEliminatedCalls());
+			mGLStateCache.resetEliminatedCalls();
+		}
+
+		if (mCameraImageRenderer != null)
+		{
+			Log.i(TAG, "Camera image upload " + mCameraImageRenderer.getAverageUploadTimeMicros() +
+				" us, draw " + mCameraImageRenderer.getAverageDrawTimeMicros() + " us per frame");
+			mCameraImageRenderer.resetTimings();
+		}
+
+		long avoidedTransitions = 0;
+		for (PlaybackController playbackController : mPlaybackControllers)
+			avoidedTransitions += playbackController.getAvoidedTransitions();
+		Log.i(TAG, "Video start/pause transitions avoided so far: " + avoidedTransitions);
+
+		Log.i(TAG, "GPU memory: " + mGpuResources);
+
+		if (mGLRecorder != null)
+		{
+			Log.i(TAG, "GL commands in last " + GL_STATS_LOG_INTERVAL + " frames: " + mGLRecorder);
+			mGLRecorder.reset();
+		}
 	}
 
 	@Override
@@ -352,6 +1485,14 @@ public final class MainActivity extends Activity implements Renderer
 
 		gl.glViewport(0, 0, width, height);
 
+		if (mCameraImageRenderer != null)
+			mCameraImageRenderer.setViewportSize(width, height);
+
+		if (mCompositor != null)
+			mCompositor.setViewportSize(width, height);
+
+		mOverlayCuller.setViewportSize(width, height);
+
 		if (mMetaioSDK != null)
 			mMetaioSDK.resizeRenderer(width, height);
 	}
@@ -359,6 +1500,12 @@ public final class MainActivity extends Activity implements Renderer
 	@Override
 	public void onSurfaceCreated(GL10 gl, EGLConfig config)
 	{
+		mSurfaceCreatedTime = System.nanoTime();
+
+		// Re-creates GL objects of the previous context before anything else may draw or delete
+		final RenderResources.ContextState contextState = mRenderResources.onSurfaceCreated(gl);
+		mResumeContext = contextState;
+
 		if (!mRendererInitialized)
 		{
 			mScreenRotation = Screen.getRotation(this);
@@ -368,20 +1515,54 @@ public final class MainActivity extends Activity implements Renderer
 			mRendererInitialized = true;
 		}
 		
-		// Create camera image renderer
-		mCameraImageRenderer = new CameraImageRenderer(this, gl);
+		// The GLES 2.0 compositor is created for every context, the GL10 camera renderer and the
+		// video players are kept with their CPU-side buffers and decoders
+		mCameraImageRenderer = mRenderResources.getCameraImageRenderer();
+		mVideoPlayerPool = mRenderResources.getVideoPlayerPool();
+
+		if (mUseGLES20)
+		{
+			// Sequence numbers of the new compositor start over. Nothing of the previous compositor
+			// is deleted: its programs and textures died with the previous context (and were removed
+			// from mGpuResources above). A camera frame it still held is lost, the camera delivers
+			// the next one.
+			mFrameMetrics.resetCameraFrames();
+
+			mCompositor = new GLES20Compositor(CAMERA_TEXTURE_ROTATION_DEPTH, mGpuResources);
+			mCompositor.setHoldFrames(mTrackingPipeline != null);
+		}
 
-		// Create video renderer
-		mVideoRenderer = new VideoRenderer(this, gl, mMediaPlayer);
+		if (contextState == RenderResources.ContextState.NEW)
+		{
+			if (mCameraImageRenderer != null)
+			{
+				mCameraImageRenderer.setTextureRotationDepth(CAMERA_TEXTURE_ROTATION_DEPTH);
+				mCameraImageRenderer.setUploadFormat(mUploadFormat);
+				mCameraImageRenderer.setHoldFrames(mTrackingPipeline != null);
+			}
+
+			// Start preparing as many target videos as fit into the pool, so that they can start
+			// as soon as their target is found. Preparation runs in the background and does not
+			// delay the first frame.
+			for (int i = 0; i < TARGET_VIDEOS.length && i < VIDEO_PLAYER_POOL_SIZE; ++i)
+				mVideoPlayerPool.prewarm(TARGET_VIDEOS[i]);
+		}
+
+		// The render scheduler is created with each GLSurfaceView
+		mVideoPlayerPool.setFrameListener(mRenderScheduler);
 
-		gl.glShadeModel(GL10.GL_SMOOTH);
 		gl.glClearColor(0, 0, 0, 0);
 
 		gl.glClearDepthf(1.0f);
 		gl.glDepthFunc(GL10.GL_LEQUAL);
-		gl.glDisable(GL10.GL_LIGHTING);
 
-		gl.glHint(GL10.GL_PERSPECTIVE_CORRECTION_HINT, GL10.GL_NICEST);
+		// Fixed-function state does not exist in GLES 2.0
+		if (!mUseGLES20)
+		{
+			gl.glShadeModel(GL10.GL_SMOOTH);
+			gl.glDisable(GL10.GL_LIGHTING);
+			gl.glHint(GL10.GL_PERSPECTIVE_CORRECTION_HINT, GL10.GL_NICEST);
+		}
 	}
 	
 }
@@ -0,0 +1,331 @@
+package com.metaio.example_custom_renderer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+import android.util.Log;
+
+/**
+ * Geometry uploaded once into GL11 vertex buffer objects, so that drawing does not re-submit
+ * client-side arrays every frame. Meshes are interleaved: position (x, y, z), optionally color
+ * (r, g, b, a), optionally texture coordinates (u, v).
+ *
+ * Meshes can be registered on any thread and outlive GL contexts: each mesh keeps its data and is
+ * uploaded lazily when it is first bound in the current context. onSurfaceCreated() starts a new
+ * context, after which all meshes are uploaded again. Without GL11 (or if the GL wrapper chain does
+ * not lead to one), meshes are drawn from their client-side data as before. Buffer object calls go
+ * through the whole wrapper chain, so that GLRecorder sees them like any other call.
+ *
+ * Apart from register(), must only be used on the GL thread.
+ */
+public final class MeshRegistry
+{
+	private static final String TAG = "MeshRegistry";
+
+	/**
+	 * Vertices have a color
+	 */
+	public static final int COLORS = 1;
+
+	/**
+	 * Vertices have texture coordinates
+	 */
+	public static final int TEX_COORDS = 2;
+
+	/**
+	 * Draw handle of a registered mesh
+	 */
+	public static final class Mesh
+	{
+		/**
+		 * Buffer object in the context of mGeneration, 0 if not uploaded
+		 */
+		private int mBuffer = 0;
+
+		/**
+		 * Byte offset of the color within a vertex, -1 if none
+		 */
+		private final int mColorOffset;
+
+		/**
+		 * Client-side copy, uploaded into the buffer object and used if there is none
+		 */
+		private final FloatBuffer mData;
+
+		/**
+		 * Whether mData changed since the last upload
+		 */
+		private boolean mDirty = false;
+
+		/**
+		 * Context generation the buffer object belongs to
+		 */
+		private int mGeneration = 0;
+
+		private final int mMode;
+
+		/**
+		 * Whether the data never changes after registration
+		 */
+		private final boolean mStatic;
+
+		/**
+		 * Distance between vertices in bytes
+		 */
+		private final int mStride;
+
+		/**
+		 * Byte offset of the texture coordinates within a vertex, -1 if none
+		 */
+		private final int mTexCoordOffset;
+
+		private final int mVertexCount;
+
+		/**
+		 * Views of mData at each attribute for client-side arrays
+		 */
+		private final FloatBuffer mColors;
+
+		private final FloatBuffer mPositions;
+
+		private final FloatBuffer mTexCoords;
+
+		private Mesh(int mode, int format, int vertexCount, boolean isStatic)
+		{
+			int floatsPerVertex = 3;
+			mColorOffset = (format & COLORS) != 0 ? floatsPerVertex * 4 : -1;
+			if (mColorOffset >= 0)
+				floatsPerVertex += 4;
+			mTexCoordOffset = (format & TEX_COORDS) != 0 ? floatsPerVertex * 4 : -1;
+			if (mTexCoordOffset >= 0)
+				floatsPerVertex += 2;
+
+			mMode = mode;
+			mVertexCount = vertexCount;
+			mStatic = isStatic;
+			mStride = floatsPerVertex * 4;
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(vertexCount * mStride);
+			buffer.order(ByteOrder.nativeOrder());
+			mData = buffer.asFloatBuffer();
+
+			mPositions = mData.duplicate();
+			mColors = getAttribute(mColorOffset);
+			mTexCoords = getAttribute(mTexCoordOffset);
+		}
+
+		private FloatBuffer getAttribute(int offset)
+		{
+			if (offset < 0)
+				return null;
+
+			mData.position(offset / 4);
+			FloatBuffer attribute = mData.slice();
+			mData.rewind();
+			return attribute;
+		}
+
+		public int getVertexCount()
+		{
+			return mVertexCount;
+		}
+	}
+
+	/**
+	 * Incremented for every new GL context, invalidates all buffer objects
+	 */
+	private int mGeneration = 1;
+
+	/**
+	 * GL11 of the current context, null if buffer objects are not available
+	 */
+	private GL11 mGL11;
+
+	/**
+	 * Scratch array for buffer names
+	 */
+	private final int[] mNames = new int[1];
+
+	private final GpuResourceRegistry mResources;
+
+	public MeshRegistry(GpuResourceRegistry resources)
+	{
+		mResources = resources;
+	}
+
+	/**
+	 * Enable the mesh's arrays. Draw with draw() and finish with unbind(), several draw() calls
+	 * can share one bind().
+	 */
+	public void bind(GL10 gl, Mesh mesh)
+	{
+		gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+		if (mesh.mColorOffset >= 0)
+			gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
+		if (mesh.mTexCoordOffset >= 0)
+			gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+
+		final GL11 gl11 = mGL11;
+		if (gl11 == null)
+		{
+			gl.glVertexPointer(3, GL10.GL_FLOAT, mesh.mStride, mesh.mPositions);
+			if (mesh.mColorOffset >= 0)
+				gl.glColorPointer(4, GL10.GL_FLOAT, mesh.mStride, mesh.mColors);
+			if (mesh.mTexCoordOffset >= 0)
+				gl.glTexCoordPointer(2, GL10.GL_FLOAT, mesh.mStride, mesh.mTexCoords);
+			return;
+		}
+
+		if (mesh.mGeneration != mGeneration || mesh.mBuffer == 0)
+		{
+			// First use in this context
+			gl11.glGenBuffers(1, mNames, 0);
+			mesh.mBuffer = mNames[0];
+			mesh.mGeneration = mGeneration;
+			gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, mesh.mBuffer);
+			gl11.glBufferData(GL11.GL_ARRAY_BUFFER, mesh.mVertexCount * mesh.mStride, mesh.mData,
+				mesh.mStatic ? GL11.GL_STATIC_DRAW : GL11.GL_DYNAMIC_DRAW);
+			mesh.mDirty = false;
+			mResources.add(GpuResourceRegistry.Type.BUFFER, mesh.mBuffer, mesh.mVertexCount * mesh.mStride, TAG);
+		}
+		else
+		{
+			gl11.glBindBuffer(GL11.GL_ARRAY_BUFFER, mesh.mBuffer);
+			if (mesh.mDirty)
+			{
+				gl11.glBufferSubData(GL11.GL_ARRAY_BUFFER, 0, mesh.mVertexCount * mesh.mStride, mesh.mData);
+				mesh.mDirty = false;
+			}
+		}
+
+		gl11.glVertexPointer(3, GL10.GL_FLOAT, mesh.mStride, 0);
+		if (mesh.mColorOffset >= 0)
+			gl11.glColorPointer(4, GL10.GL_FLOAT, mesh.mStride, mesh.mColorOffset);
+		if (mesh.mTexCoordOffset >= 0)
+			gl11.glTexCoordPointer(2, GL10.GL_FLOAT, mesh.mStride, mesh.mTexCoordOffset);
+	}
+
+	/**
+	 * Delete the mesh's buffer object if it belongs to the current context. Meshes that are just
+	 * dropped are deleted together with their context.
+	 */
+	public void delete(Mesh mesh)
+	{
+		if (mGL11 != null && mesh.mGeneration == mGeneration && mesh.mBuffer != 0)
+		{
+			mNames[0] = mesh.mBuffer;
+			mGL11.glDeleteBuffers(1, mNames, 0);
+			mResources.remove(GpuResourceRegistry.Type.BUFFER, mesh.mBuffer);
+		}
+
+		mesh.mBuffer = 0;
+	}
+
+	/**
+	 * Draw the whole mesh bound with bind()
+	 */
+	public void draw(GL10 gl, Mesh mesh)
+	{
+		gl.glDrawArrays(mesh.mMode, 0, mesh.mVertexCount);
+	}
+
+	/**
+	 * Draw a range of vertices of the mesh bound with bind(), e.g. one of several quads
+	 */
+	public void draw(GL10 gl, Mesh mesh, int first, int count)
+	{
+		gl.glDrawArrays(mesh.mMode, first, count);
+	}
+
+	private static int getFloatsPerVertex(int format)
+	{
+		return 3 + ((format & COLORS) != 0 ? 4 : 0) + ((format & TEX_COORDS) != 0 ? 2 : 0);
+	}
+
+	/**
+	 * The given GL as GL11, if the GL at the end of its wrapper chain supports GL11. Every
+	 * ForwardingGL10 implements GL11, but can only forward the calls to a GL11.
+	 */
+	private static GL11 getGL11(GL10 gl)
+	{
+		GL10 target = gl;
+		while (target instanceof ForwardingGL10)
+			target = ((ForwardingGL10)target).getDelegate();
+
+		return target instanceof GL11 && gl instanceof GL11 ? (GL11)gl : null;
+	}
+
+	/**
+	 * Start a new GL context, all meshes are uploaded again when they are bound next. Must be
+	 * called from onSurfaceCreated().
+	 */
+	public void onSurfaceCreated(GL10 gl)
+	{
+		++mGeneration;
+		mGL11 = getGL11(gl);
+
+		if (mGL11 == null)
+			Log.w(TAG, "GL11 not available, drawing from client-side arrays");
+	}
+
+	/**
+	 * Register static geometry
+	 *
+	 * @param mode Primitive type, e.g. GL10.GL_TRIANGLES
+	 * @param format Combination of COLORS and TEX_COORDS
+	 * @param vertices Interleaved vertex data in the given format
+	 */
+	public Mesh register(int mode, int format, float[] vertices)
+	{
+		final Mesh mesh = new Mesh(mode, format, vertices.length / getFloatsPerVertex(format), true);
+		mesh.mData.put(vertices);
+		mesh.mData.rewind();
+		return mesh;
+	}
+
+	/**
+	 * Register geometry that is changed with update(), e.g. when the viewport layout changes
+	 *
+	 * @param vertexCount Number of vertices, the data is zero until the first update()
+	 */
+	public Mesh registerDynamic(int mode, int format, int vertexCount)
+	{
+		return new Mesh(mode, format, vertexCount, false);
+	}
+
+	/**
+	 * Disable the arrays enabled by bind() and unbind the buffer object, so that client-side
+	 * arrays can be used again
+	 */
+	public void unbind(GL10 gl, Mesh mesh)
+	{
+		if (mGL11 != null)
+			mGL11.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+
+		if (mesh.mTexCoordOffset >= 0)
+			gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+		if (mesh.mColorOffset >= 0)
+			gl.glDisableClientState(GL10.GL_COLOR_ARRAY);
+		gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+	}
+
+	/**
+	 * Replace the data of a mesh, uploaded when it is bound next
+	 *
+	 * @param vertices Interleaved vertex data in the mesh's format, from its position to its limit,
+	 *        which must be all vertices. The position is left unchanged.
+	 */
+	public void update(Mesh mesh, FloatBuffer vertices)
+	{
+		final int position = vertices.position();
+		mesh.mData.rewind();
+		mesh.mData.put(vertices);
+		mesh.mData.rewind();
+		vertices.position(position);
+		mesh.mDirty = true;
+	}
+}
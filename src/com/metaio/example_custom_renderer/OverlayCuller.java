@@ -0,0 +1,140 @@
+package com.metaio.example_custom_renderer;
+
+/**
+ * Decides whether an overlay is worth drawing by projecting its bounds into clip space: overlays
+ * entirely outside the viewport (or behind the camera) and overlays smaller than a pixel on screen
+ * are culled, so that neither their draw call nor their video texture update has to happen.
+ *
+ * Uses the same matrices as the overlay drawing, i.e. the projection matrix scaled by the camera
+ * renderer's getScaleX()/getScaleY() and the model(-view) matrix of the target. Pure Java and
+ * allocation-free, only called from the render thread.
+ */
+public final class OverlayCuller
+{
+	/**
+	 * Bounds of the overlay in model space, x, y, z per corner
+	 */
+	private final float[] mCorners;
+
+	/**
+	 * Overlays whose screen bounding box is smaller than this in both directions are culled
+	 */
+	private float mMinPixels = 1;
+
+	/**
+	 * Scaled projection matrix set with setProjection()
+	 */
+	private final float[] mProjection = new float[16];
+
+	private int mViewportHeight = 1;
+
+	private int mViewportWidth = 1;
+
+	/**
+	 * @param corners Corners of the overlay in model space (x, y, z each), e.g. the four corners
+	 *        of a quad
+	 */
+	public OverlayCuller(float[] corners)
+	{
+		mCorners = corners.clone();
+	}
+
+	/**
+	 * Whether an overlay drawn with the given model(-view) matrix is visible with the projection
+	 * of the current frame
+	 *
+	 * @param modelMatrix Column-major matrices as used by GL
+	 * @param offset Offset of the matrix in modelMatrix
+	 */
+	public boolean isVisible(float[] modelMatrix, int offset)
+	{
+		final float[] p = mProjection;
+		final float[] m = modelMatrix;
+
+		// Corners outside of each clip plane, all corners outside the same plane means invisible
+		int outsideLeft = 0, outsideRight = 0, outsideBottom = 0, outsideTop = 0, outsideNear = 0, outsideFar = 0;
+		float minX = Float.MAX_VALUE, maxX = -Float.MAX_VALUE, minY = Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		final int cornerCount = mCorners.length / 3;
+
+		for (int i = 0; i < mCorners.length; i += 3)
+		{
+			final float x = mCorners[i], y = mCorners[i + 1], z = mCorners[i + 2];
+
+			// Model to eye space
+			final float ex = m[offset] * x + m[offset + 4] * y + m[offset + 8] * z + m[offset + 12];
+			final float ey = m[offset + 1] * x + m[offset + 5] * y + m[offset + 9] * z + m[offset + 13];
+			final float ez = m[offset + 2] * x + m[offset + 6] * y + m[offset + 10] * z + m[offset + 14];
+			final float ew = m[offset + 3] * x + m[offset + 7] * y + m[offset + 11] * z + m[offset + 15];
+
+			// Eye to clip space
+			final float cx = p[0] * ex + p[4] * ey + p[8] * ez + p[12] * ew;
+			final float cy = p[1] * ex + p[5] * ey + p[9] * ez + p[13] * ew;
+			final float cz = p[2] * ex + p[6] * ey + p[10] * ez + p[14] * ew;
+			final float cw = p[3] * ex + p[7] * ey + p[11] * ez + p[15] * ew;
+
+			if (cx < -cw) ++outsideLeft;
+			if (cx > cw) ++outsideRight;
+			if (cy < -cw) ++outsideBottom;
+			if (cy > cw) ++outsideTop;
+			if (cz < -cw) ++outsideNear;
+			if (cz > cw) ++outsideFar;
+
+			if (cw > 0)
+			{
+				final float nx = cx / cw, ny = cy / cw;
+				minX = Math.min(minX, nx);
+				maxX = Math.max(maxX, nx);
+				minY = Math.min(minY, ny);
+				maxY = Math.max(maxY, ny);
+			}
+		}
+
+		if (outsideLeft == cornerCount || outsideRight == cornerCount || outsideBottom == cornerCount ||
+			outsideTop == cornerCount || outsideNear == cornerCount || outsideFar == cornerCount)
+		{
+			return false;
+		}
+
+		// Size on screen is only meaningful if no corner is behind the camera
+		if (outsideNear == 0)
+		{
+			final float width = (maxX - minX) * 0.5f * mViewportWidth;
+			final float height = (maxY - minY) * 0.5f * mViewportHeight;
+			if (width < mMinPixels && height < mMinPixels)
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Set the minimum size on screen in pixels below which overlays are culled
+	 */
+	public void setMinPixels(float minPixels)
+	{
+		mMinPixels = minPixels;
+	}
+
+	/**
+	 * Set the projection of the current frame
+	 *
+	 * @param projectionMatrix Right-handed projection matrix of the metaio SDK, column-major
+	 * @param scaleX Factor for the X axis, see CameraImageRenderer.getScaleX()
+	 * @param scaleY Factor for the Y axis, see CameraImageRenderer.getScaleY()
+	 */
+	public void setProjection(float[] projectionMatrix, float scaleX, float scaleY)
+	{
+		System.arraycopy(projectionMatrix, 0, mProjection, 0, 16);
+		mProjection[0] *= scaleX;
+		mProjection[5] *= scaleY;
+	}
+
+	/**
+	 * Must be called from onSurfaceChanged()
+	 */
+	public void setViewportSize(int width, int height)
+	{
+		mViewportWidth = width;
+		mViewportHeight = height;
+	}
+}
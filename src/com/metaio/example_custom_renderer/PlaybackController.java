@@ -0,0 +1,213 @@
+package com.metaio.example_custom_renderer;
+
+/**
+ * Decides whether the video of a target is shown, with hysteresis so that a flickering tracking
+ * state does not make the overlay blink and the decoder thrash between start and pause. A target
+ * is shown after it was tracked for a number of consecutive frames. When tracking is lost, the last
+ * good pose is held for a grace period and playback continues. If the target is found again within
+ * that period, nothing is restarted; otherwise the target is hidden and its video paused, and it
+ * resumes from the paused position when the target is shown again. Frames are counted in camera
+ * frames, a camera frame that is rendered several times counts once.
+ *
+ * Pure Java and allocation-free, one instance per target.
+ */
+public final class PlaybackController
+{
+	public enum State
+	{
+		/**
+		 * Not shown
+		 */
+		HIDDEN,
+
+		/**
+		 * Tracked, but not yet for enough consecutive frames to be shown
+		 */
+		ACQUIRING,
+
+		/**
+		 * Tracked and shown
+		 */
+		VISIBLE,
+
+		/**
+		 * Tracking lost, shown with the last good pose until the grace period ends
+		 */
+		HOLDING
+	}
+
+	/**
+	 * Capture time of the camera frame of the previous update
+	 */
+	private long mCameraFrameTime;
+
+	/**
+	 * Whether the raw tracking state was tracked in the previous update
+	 */
+	private boolean mLastTracked = false;
+
+	/**
+	 * Time at which tracking was lost while visible
+	 */
+	private long mLostTime;
+
+	/**
+	 * How long the last good pose is held after tracking was lost
+	 */
+	private long mLossGraceNanos = 500000000L;
+
+	/**
+	 * Last good pose, or the current pose while tracked
+	 */
+	private final float[] mPose = new float[16];
+
+	/**
+	 * Number of start/pause transitions a player that follows the raw tracking state would have
+	 * made
+	 */
+	private long mRawTransitions = 0;
+
+	/**
+	 * Consecutive tracked frames needed before a hidden target is shown
+	 */
+	private int mReacquireFrames = 3;
+
+	private State mState = State.HIDDEN;
+
+	/**
+	 * Consecutive tracked frames while acquiring
+	 */
+	private int mTrackedFrames = 0;
+
+	/**
+	 * Number of start/pause transitions actually made
+	 */
+	private long mTransitions = 0;
+
+	/**
+	 * Number of start/pause transitions avoided compared to following the raw tracking state
+	 */
+	public long getAvoidedTransitions()
+	{
+		return Math.max(0, mRawTransitions - mTransitions);
+	}
+
+	/**
+	 * Pose to render while isVisible() is true: the latest pose while tracked, the last good one
+	 * while holding. The returned array is reused and must not be modified.
+	 */
+	public float[] getPose()
+	{
+		return mPose;
+	}
+
+	public State getState()
+	{
+		return mState;
+	}
+
+	public long getTransitions()
+	{
+		return mTransitions;
+	}
+
+	/**
+	 * Whether the video should be drawn and playing
+	 */
+	public boolean isVisible()
+	{
+		return mState == State.VISIBLE || mState == State.HOLDING;
+	}
+
+	/**
+	 * Hide immediately, e.g. when the tracking configuration changes
+	 */
+	public void reset()
+	{
+		setState(State.HIDDEN);
+		mLastTracked = false;
+		mTrackedFrames = 0;
+	}
+
+	public void setLossGraceNanos(long lossGraceNanos)
+	{
+		mLossGraceNanos = lossGraceNanos;
+	}
+
+	public void setReacquireFrames(int reacquireFrames)
+	{
+		mReacquireFrames = Math.max(1, reacquireFrames);
+	}
+
+	/**
+	 * Advance the state machine by one rendered frame
+	 *
+	 * @param tracked Raw tracking state of the target
+	 * @param pose Current pose, only read if tracked
+	 * @param cameraFrameTime Capture time of the camera frame the tracking state belongs to.
+	 *        Consecutive tracked frames are only counted when it changes, rendering the same camera
+	 *        frame again (e.g. for a video frame) gives no new tracking result.
+	 * @param timestampNanos Frame time
+	 */
+	public void update(boolean tracked, float[] pose, long cameraFrameTime, long timestampNanos)
+	{
+		final boolean newCameraFrame = cameraFrameTime != mCameraFrameTime;
+		mCameraFrameTime = cameraFrameTime;
+
+		if (tracked != mLastTracked)
+		{
+			++mRawTransitions;
+			mLastTracked = tracked;
+		}
+
+		if (tracked)
+			System.arraycopy(pose, 0, mPose, 0, 16);
+
+		switch (mState)
+		{
+			case HIDDEN:
+			case ACQUIRING:
+				if (!tracked)
+				{
+					mTrackedFrames = 0;
+					setState(State.HIDDEN);
+				}
+				else if (newCameraFrame)
+				{
+					if (++mTrackedFrames >= mReacquireFrames)
+					{
+						mTrackedFrames = 0;
+						setState(State.VISIBLE);
+					}
+					else
+					{
+						setState(State.ACQUIRING);
+					}
+				}
+				break;
+
+			case VISIBLE:
+				if (!tracked)
+				{
+					mLostTime = timestampNanos;
+					setState(State.HOLDING);
+				}
+				break;
+
+			case HOLDING:
+				if (tracked)
+					setState(State.VISIBLE);
+				else if (timestampNanos - mLostTime > mLossGraceNanos)
+					setState(State.HIDDEN);
+				break;
+		}
+	}
+
+	private void setState(State state)
+	{
+		if (isVisible() != (state == State.VISIBLE || state == State.HOLDING))
+			++mTransitions;
+
+		mState = state;
+	}
+}
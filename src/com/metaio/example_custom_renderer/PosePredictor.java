@@ -0,0 +1,385 @@
+package com.metaio.example_custom_renderer;
+
+/**
+ * Predicts the tracking pose at the time a frame will be displayed, to make up for the latency
+ * between camera capture and display. Keeps a short history of timestamped poses, extrapolates
+ * the translation linearly and the rotation by spherical linear interpolation (slerp) between the
+ * oldest and newest pose of the velocity window. Optionally, the rotation is instead extrapolated
+ * with angular velocity measurements from a gyroscope, which react faster than the tracker.
+ *
+ * Memory is bounded by the history size and no objects are allocated per frame. Matrices are
+ * column-major 4x4 rigid transformations as used by OpenGL and the metaio SDK.
+ */
+public final class PosePredictor
+{
+	/**
+	 * Poses per entry: translation x, y, z followed by rotation quaternion x, y, z, w
+	 */
+	private static final int POSE_SIZE = 7;
+
+	private final long[] mTimestamps;
+
+	private final float[] mPoses;
+
+	/**
+	 * Index of the newest pose in the ring
+	 */
+	private int mNewest = -1;
+
+	private int mCount = 0;
+
+	/**
+	 * Only poses younger than this (relative to the newest pose) are used for velocity estimation
+	 */
+	private long mVelocityWindowNanos = 100000000L;
+
+	/**
+	 * Upper limit for how far a pose is extrapolated beyond the newest measurement
+	 */
+	private long mMaxPredictionNanos = 100000000L;
+
+	/**
+	 * Latest angular velocity in camera coordinates (rad/s), valid if mAngularVelocityTimestamp > 0
+	 */
+	private final float[] mAngularVelocity = new float[3];
+
+	private long mAngularVelocityTimestamp = 0;
+
+	/**
+	 * Scratch quaternions, only used inside addPose() and predict()
+	 */
+	private final float[] mQuaternion = new float[4];
+
+	private final float[] mDeltaQuaternion = new float[4];
+
+	public PosePredictor()
+	{
+		this(8);
+	}
+
+	public PosePredictor(int historySize)
+	{
+		mTimestamps = new long[historySize];
+		mPoses = new float[historySize * POSE_SIZE];
+	}
+
+	/**
+	 * Add a measured pose. Identical consecutive poses (the tracker did not produce a new result)
+	 * are ignored so that they do not distort the velocity estimate.
+	 *
+	 * @param timestampNanos Time the pose refers to, i.e. the capture time of the camera frame it was
+	 *        tracked in
+	 * @param modelMatrix Column-major 4x4 rigid transformation
+	 */
+	public void addPose(long timestampNanos, float[] modelMatrix)
+	{
+		if (mCount > 0 && timestampNanos <= mTimestamps[mNewest])
+			return;
+
+		if (mCount > 0 && isSamePose(mNewest, modelMatrix))
+			return;
+
+		mNewest = (mNewest + 1) % mTimestamps.length;
+		mCount = Math.min(mCount + 1, mTimestamps.length);
+
+		final int base = mNewest * POSE_SIZE;
+		mTimestamps[mNewest] = timestampNanos;
+		mPoses[base] = modelMatrix[12];
+		mPoses[base+1] = modelMatrix[13];
+		mPoses[base+2] = modelMatrix[14];
+		matrixToQuaternion(modelMatrix, mPoses, base + 3);
+
+		// Keep consecutive quaternions in the same hemisphere so that interpolation takes the
+		// short way
+		if (mCount > 1)
+		{
+			final int previous = ((mNewest - 1 + mTimestamps.length) % mTimestamps.length) * POSE_SIZE + 3;
+			if (dot(mPoses, previous, mPoses, base + 3) < 0)
+			{
+				for (int i = 0; i < 4; ++i)
+					mPoses[base + 3 + i] = -mPoses[base + 3 + i];
+			}
+		}
+	}
+
+	/**
+	 * Set the latest gyroscope measurement, expressed in camera coordinates. While gyroscope data
+	 * is fresh, it is used to extrapolate the rotation instead of the pose history.
+	 */
+	public void addAngularVelocity(long timestampNanos, float x, float y, float z)
+	{
+		mAngularVelocity[0] = x;
+		mAngularVelocity[1] = y;
+		mAngularVelocity[2] = z;
+		mAngularVelocityTimestamp = timestampNanos;
+	}
+
+	/**
+	 * Forget all poses, e.g. when tracking was lost
+	 */
+	public void clear()
+	{
+		mCount = 0;
+		mNewest = -1;
+	}
+
+	public int getPoseCount()
+	{
+		return mCount;
+	}
+
+	/**
+	 * Predict the pose at the given time.
+	 *
+	 * @param timestampNanos Time at which the frame will be displayed
+	 * @param result Receives the predicted column-major 4x4 matrix
+	 * @return false if there is no pose at all (result is untouched)
+	 */
+	public boolean predict(long timestampNanos, float[] result)
+	{
+		if (mCount == 0)
+			return false;
+
+		final int newestBase = mNewest * POSE_SIZE;
+		final long newestTime = mTimestamps[mNewest];
+		final long targetTime = Math.min(timestampNanos, newestTime + mMaxPredictionNanos);
+
+		// Oldest pose in the velocity window
+		int oldest = mNewest;
+		for (int i = 1; i < mCount; ++i)
+		{
+			final int index = (mNewest - i + mTimestamps.length) % mTimestamps.length;
+			if (newestTime - mTimestamps[index] > mVelocityWindowNanos)
+				break;
+			oldest = index;
+		}
+
+		final int oldestBase = oldest * POSE_SIZE;
+		final float[] q = mQuaternion;
+
+		if (oldest == mNewest || targetTime <= newestTime)
+		{
+			result[12] = mPoses[newestBase];
+			result[13] = mPoses[newestBase+1];
+			result[14] = mPoses[newestBase+2];
+			System.arraycopy(mPoses, newestBase + 3, q, 0, 4);
+		}
+		else
+		{
+			// Fraction along the window, > 1 when extrapolating beyond the newest pose
+			final float s = (float)(targetTime - mTimestamps[oldest]) / (newestTime - mTimestamps[oldest]);
+
+			for (int i = 0; i < 3; ++i)
+				result[12+i] = mPoses[oldestBase+i] + s * (mPoses[newestBase+i] - mPoses[oldestBase+i]);
+
+			slerp(mPoses, oldestBase + 3, mPoses, newestBase + 3, s, q);
+		}
+
+		if (mAngularVelocityTimestamp > 0 && targetTime > newestTime &&
+			Math.abs(mAngularVelocityTimestamp - newestTime) < mVelocityWindowNanos)
+		{
+			// The camera rotates by w*dt, so the pose (model to camera) rotates by the inverse
+			final float dt = (targetTime - newestTime) * 1e-9f;
+			angularVelocityToQuaternion(-mAngularVelocity[0] * dt, -mAngularVelocity[1] * dt,
+				-mAngularVelocity[2] * dt, mDeltaQuaternion);
+
+			System.arraycopy(mPoses, newestBase + 3, q, 0, 4);
+			multiply(mDeltaQuaternion, q, q);
+
+			// Translation rotates with the camera as well
+			rotate(mDeltaQuaternion, mPoses[newestBase], mPoses[newestBase+1], mPoses[newestBase+2], result);
+		}
+
+		quaternionToMatrix(q, result);
+		result[3] = 0;
+		result[7] = 0;
+		result[11] = 0;
+		result[15] = 1;
+		return true;
+	}
+
+	public void setMaxPredictionNanos(long maxPredictionNanos)
+	{
+		mMaxPredictionNanos = maxPredictionNanos;
+	}
+
+	public void setVelocityWindowNanos(long velocityWindowNanos)
+	{
+		mVelocityWindowNanos = velocityWindowNanos;
+	}
+
+	private boolean isSamePose(int index, float[] m)
+	{
+		final int base = index * POSE_SIZE;
+		if (mPoses[base] != m[12] || mPoses[base+1] != m[13] || mPoses[base+2] != m[14])
+			return false;
+
+		// A pure rotation keeps the translation, and the stored quaternion may have been negated
+		// to stay in the same hemisphere as its predecessor
+		final float[] q = mQuaternion;
+		matrixToQuaternion(m, q, 0);
+		final float sign = dot(mPoses, base + 3, q, 0) < 0 ? -1 : 1;
+		for (int i = 0; i < 4; ++i)
+		{
+			if (mPoses[base + 3 + i] != sign * q[i])
+				return false;
+		}
+
+		return true;
+	}
+
+	private static void angularVelocityToQuaternion(float x, float y, float z, float[] q)
+	{
+		final float angle = (float)Math.sqrt(x*x + y*y + z*z);
+		if (angle < 1e-9f)
+		{
+			q[0] = 0;
+			q[1] = 0;
+			q[2] = 0;
+			q[3] = 1;
+			return;
+		}
+
+		final float s = (float)Math.sin(angle / 2) / angle;
+		q[0] = x * s;
+		q[1] = y * s;
+		q[2] = z * s;
+		q[3] = (float)Math.cos(angle / 2);
+	}
+
+	private static float dot(float[] a, int aOffset, float[] b, int bOffset)
+	{
+		return a[aOffset]*b[bOffset] + a[aOffset+1]*b[bOffset+1] + a[aOffset+2]*b[bOffset+2] + a[aOffset+3]*b[bOffset+3];
+	}
+
+	/**
+	 * Extract the rotation of a column-major matrix as quaternion (x, y, z, w)
+	 */
+	static void matrixToQuaternion(float[] m, float[] q, int offset)
+	{
+		final float trace = m[0] + m[5] + m[10];
+		float x, y, z, w;
+
+		if (trace > 0)
+		{
+			final float s = (float)Math.sqrt(trace + 1) * 2;
+			w = 0.25f * s;
+			x = (m[6] - m[9]) / s;
+			y = (m[8] - m[2]) / s;
+			z = (m[1] - m[4]) / s;
+		}
+		else if (m[0] > m[5] && m[0] > m[10])
+		{
+			final float s = (float)Math.sqrt(1 + m[0] - m[5] - m[10]) * 2;
+			w = (m[6] - m[9]) / s;
+			x = 0.25f * s;
+			y = (m[4] + m[1]) / s;
+			z = (m[8] + m[2]) / s;
+		}
+		else if (m[5] > m[10])
+		{
+			final float s = (float)Math.sqrt(1 + m[5] - m[0] - m[10]) * 2;
+			w = (m[8] - m[2]) / s;
+			x = (m[4] + m[1]) / s;
+			y = 0.25f * s;
+			z = (m[9] + m[6]) / s;
+		}
+		else
+		{
+			final float s = (float)Math.sqrt(1 + m[10] - m[0] - m[5]) * 2;
+			w = (m[1] - m[4]) / s;
+			x = (m[8] + m[2]) / s;
+			y = (m[9] + m[6]) / s;
+			z = 0.25f * s;
+		}
+
+		q[offset] = x;
+		q[offset+1] = y;
+		q[offset+2] = z;
+		q[offset+3] = w;
+	}
+
+	/**
+	 * Hamilton product result = a * b (result may be the same array as a or b)
+	 */
+	private static void multiply(float[] a, float[] b, float[] result)
+	{
+		final float x = a[3]*b[0] + a[0]*b[3] + a[1]*b[2] - a[2]*b[1];
+		final float y = a[3]*b[1] - a[0]*b[2] + a[1]*b[3] + a[2]*b[0];
+		final float z = a[3]*b[2] + a[0]*b[1] - a[1]*b[0] + a[2]*b[3];
+		final float w = a[3]*b[3] - a[0]*b[0] - a[1]*b[1] - a[2]*b[2];
+		result[0] = x;
+		result[1] = y;
+		result[2] = z;
+		result[3] = w;
+	}
+
+	/**
+	 * Write the rotation part of a column-major matrix from a unit quaternion
+	 */
+	static void quaternionToMatrix(float[] q, float[] m)
+	{
+		final float x = q[0], y = q[1], z = q[2], w = q[3];
+
+		m[0] = 1 - 2*(y*y + z*z);
+		m[1] = 2*(x*y + z*w);
+		m[2] = 2*(x*z - y*w);
+		m[4] = 2*(x*y - z*w);
+		m[5] = 1 - 2*(x*x + z*z);
+		m[6] = 2*(y*z + x*w);
+		m[8] = 2*(x*z + y*w);
+		m[9] = 2*(y*z - x*w);
+		m[10] = 1 - 2*(x*x + y*y);
+	}
+
+	/**
+	 * Rotate the vector (x, y, z) by a unit quaternion, result goes to m[12..14]
+	 */
+	private static void rotate(float[] q, float x, float y, float z, float[] m)
+	{
+		// v' = v + 2w(u x v) + 2u x (u x v), with u = (q.x, q.y, q.z)
+		final float cx = q[1]*z - q[2]*y;
+		final float cy = q[2]*x - q[0]*z;
+		final float cz = q[0]*y - q[1]*x;
+
+		m[12] = x + 2*(q[3]*cx + q[1]*cz - q[2]*cy);
+		m[13] = y + 2*(q[3]*cy + q[2]*cx - q[0]*cz);
+		m[14] = z + 2*(q[3]*cz + q[0]*cy - q[1]*cx);
+	}
+
+	/**
+	 * Spherical linear interpolation between two unit quaternions. Values of t > 1 extrapolate
+	 * along the same great circle.
+	 */
+	static void slerp(float[] a, int aOffset, float[] b, int bOffset, float t, float[] result)
+	{
+		float cosAngle = dot(a, aOffset, b, bOffset);
+		cosAngle = Math.max(-1, Math.min(1, cosAngle));
+
+		float wa, wb;
+		if (cosAngle > 0.9995f)
+		{
+			// Nearly identical rotations, linear interpolation is precise enough
+			wa = 1 - t;
+			wb = t;
+		}
+		else
+		{
+			final double angle = Math.acos(cosAngle);
+			final double sinAngle = Math.sin(angle);
+			wa = (float)(Math.sin((1 - t) * angle) / sinAngle);
+			wb = (float)(Math.sin(t * angle) / sinAngle);
+		}
+
+		float length = 0;
+		for (int i = 0; i < 4; ++i)
+		{
+			result[i] = wa * a[aOffset+i] + wb * b[bOffset+i];
+			length += result[i] * result[i];
+		}
+
+		length = (float)Math.sqrt(length);
+		for (int i = 0; i < 4; ++i)
+			result[i] /= length;
+	}
+}
@@ -0,0 +1,217 @@
+package com.metaio.example_custom_renderer;
+
+/**
+ * Chooses a quality profile (camera capture resolution and tracker load) from the measured frame
+ * time. Frame times are evaluated in windows: the profile is lowered after consecutive windows in
+ * which too many frames missed the budget (low-end or thermally throttled devices), and raised
+ * after a longer run of windows with plenty of headroom (flagships). Every switch is followed by a
+ * settling period, because restarting the camera stalls a few frames by itself. An upgrade that
+ * has to be taken back doubles the time until the next upgrade is attempted, so the governor does
+ * not oscillate between two profiles.
+ *
+ * Pure Java and allocation-free, only called from the render thread.
+ */
+public final class QualityGovernor
+{
+	public static final class Profile
+	{
+		public final int cameraHeight;
+
+		public final int cameraWidth;
+
+		/**
+		 * Value of MaxObjectsToDetectPerFrame in the tracking configuration
+		 */
+		public final int maxObjectsToDetectPerFrame;
+
+		public Profile(int cameraWidth, int cameraHeight, int maxObjectsToDetectPerFrame)
+		{
+			this.cameraWidth = cameraWidth;
+			this.cameraHeight = cameraHeight;
+			this.maxObjectsToDetectPerFrame = maxObjectsToDetectPerFrame;
+		}
+
+		@Override
+		public String toString()
+		{
+			return cameraWidth + "x" + cameraHeight + ", " + maxObjectsToDetectPerFrame + " detections per frame";
+		}
+	}
+
+	/**
+	 * Consecutive overloaded windows before the profile is lowered
+	 */
+	private static final int DOWNGRADE_WINDOWS = 2;
+
+	/**
+	 * Share of frames over budget that makes a window overloaded
+	 */
+	private static final float OVERLOAD_RATIO = 0.2f;
+
+	/**
+	 * Mean frame time relative to the budget below which a window has headroom
+	 */
+	private static final float HEADROOM_RATIO = 0.5f;
+
+	/**
+	 * Upper limit for the number of windows with headroom before an upgrade
+	 */
+	private static final int MAX_UPGRADE_WINDOWS = 64;
+
+	private int mBadWindows = 0;
+
+	private final long mFrameBudgetNanos;
+
+	private int mGoodWindows = 0;
+
+	/**
+	 * Whether the last switch was an upgrade that has not proven itself yet
+	 */
+	private boolean mLastSwitchWasUpgrade = false;
+
+	private int mProfile;
+
+	private final Profile[] mProfiles;
+
+	/**
+	 * Frames are ignored until this time after a switch
+	 */
+	private long mSettleUntil = 0;
+
+	private long mSettleNanos = 3000000000L;
+
+	/**
+	 * Windows with headroom needed before the next upgrade
+	 */
+	private int mUpgradeWindows = 8;
+
+	private int mWindowFrames = 0;
+
+	private long mWindowNanos = 1000000000L;
+
+	private int mWindowOverBudgetFrames = 0;
+
+	private long mWindowStart = 0;
+
+	private long mWindowTotalNanos = 0;
+
+	/**
+	 * @param profiles Profiles from lowest to highest quality
+	 * @param initialProfile Index of the profile to start with
+	 * @param frameBudgetNanos Target frame time, e.g. 1 / camera frame rate
+	 */
+	public QualityGovernor(Profile[] profiles, int initialProfile, long frameBudgetNanos)
+	{
+		mProfiles = profiles;
+		mProfile = Math.max(0, Math.min(profiles.length - 1, initialProfile));
+		mFrameBudgetNanos = frameBudgetNanos;
+	}
+
+	public Profile getProfile()
+	{
+		return mProfiles[mProfile];
+	}
+
+	public int getProfileIndex()
+	{
+		return mProfile;
+	}
+
+	/**
+	 * Set how long frame times are ignored after a switch
+	 */
+	public void setSettleNanos(long settleNanos)
+	{
+		mSettleNanos = settleNanos;
+	}
+
+	/**
+	 * Set the length of the windows in which frame times are evaluated
+	 */
+	public void setWindowNanos(long windowNanos)
+	{
+		mWindowNanos = windowNanos;
+	}
+
+	private void switchTo(int profile, long timestampNanos)
+	{
+		mLastSwitchWasUpgrade = profile > mProfile;
+		mProfile = profile;
+		mBadWindows = 0;
+		mGoodWindows = 0;
+		mSettleUntil = timestampNanos + mSettleNanos;
+		mWindowStart = 0;
+	}
+
+	/**
+	 * Account one frame
+	 *
+	 * @param frameTimeNanos Time the frame took, or the tracking time of its camera frame if that
+	 *        is longer and runs in parallel
+	 * @param timestampNanos Current time
+	 * @return Whether the profile changed, see getProfile()
+	 */
+	public boolean update(long frameTimeNanos, long timestampNanos)
+	{
+		if (timestampNanos < mSettleUntil)
+			return false;
+
+		if (mWindowStart == 0)
+		{
+			mWindowStart = timestampNanos;
+			mWindowFrames = 0;
+			mWindowOverBudgetFrames = 0;
+			mWindowTotalNanos = 0;
+		}
+
+		++mWindowFrames;
+		mWindowTotalNanos += frameTimeNanos;
+		if (frameTimeNanos > mFrameBudgetNanos)
+			++mWindowOverBudgetFrames;
+
+		if (timestampNanos - mWindowStart < mWindowNanos)
+			return false;
+
+		final boolean overloaded = mWindowOverBudgetFrames > mWindowFrames * OVERLOAD_RATIO;
+		final boolean headroom = mWindowOverBudgetFrames == 0 &&
+			mWindowTotalNanos < mWindowFrames * (long)(mFrameBudgetNanos * HEADROOM_RATIO);
+		mWindowStart = 0;
+
+		if (overloaded)
+		{
+			mGoodWindows = 0;
+			if (++mBadWindows >= DOWNGRADE_WINDOWS && mProfile > 0)
+			{
+				// Upgrading again right away would likely end up here again
+				if (mLastSwitchWasUpgrade)
+					mUpgradeWindows = Math.min(MAX_UPGRADE_WINDOWS, mUpgradeWindows * 2);
+
+				switchTo(mProfile - 1, timestampNanos);
+				return true;
+			}
+		}
+		else if (!headroom)
+		{
+			mBadWindows = 0;
+			mGoodWindows = 0;
+		}
+		else if (++mGoodWindows >= mUpgradeWindows)
+		{
+			// The current profile held up as long as an upgrade takes, so it is not a failed upgrade
+			mBadWindows = 0;
+			mLastSwitchWasUpgrade = false;
+
+			if (mProfile < mProfiles.length - 1)
+			{
+				switchTo(mProfile + 1, timestampNanos);
+				return true;
+			}
+		}
+		else
+		{
+			mBadWindows = 0;
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,49 @@
+package com.metaio.example_custom_renderer;
+
+/**
+ * File format of the recordings written by FrameRecorder and read by FrameReplayer. Kept apart from
+ * both so that the replayer does not depend on the metaio SDK classes the recorder takes.
+ *
+ * All values are little endian. The data file starts with MAGIC and VERSION, followed by records
+ * of RECORD_HEADER_SIZE bytes (type, payload size, timestamp) plus payload:
+ * <ul>
+ * <li>TYPE_FRAME: width, height, color format (ECOLOR_FORMAT.swigValue()), flags, image data</li>
+ * <li>TYPE_TRACKING: target count, tracked bit mask, projection matrix, one model matrix per
+ * target (as returned by the metaio SDK, before pose prediction)</li>
+ * </ul>
+ * The index file (data file name plus INDEX_SUFFIX) starts with INDEX_MAGIC and VERSION, followed
+ * by one INDEX_ENTRY_SIZE entry (record offset, type, payload size) per record. An entry is only
+ * written after its record is complete, and unused space at the end of a file that was not closed
+ * properly is zero, so a recording cut short by a crash stays readable.
+ */
+final class RecordingFormat
+{
+	static final int MAGIC = 0x4345524d;
+
+	static final int INDEX_MAGIC = 0x5844494d;
+
+	/**
+	 * 2: color format stored as the metaio SDK's value instead of the enum ordinal
+	 */
+	static final int VERSION = 2;
+
+	static final String INDEX_SUFFIX = ".index";
+
+	static final int FILE_HEADER_SIZE = 8;
+
+	static final int RECORD_HEADER_SIZE = 16;
+
+	static final int INDEX_ENTRY_SIZE = 16;
+
+	static final int FRAME_HEADER_SIZE = 16;
+
+	static final int FLAG_ORIGIN_UPPER_LEFT = 1;
+
+	static final int TYPE_FRAME = 1;
+
+	static final int TYPE_TRACKING = 2;
+
+	private RecordingFormat()
+	{
+	}
+}
@@ -0,0 +1,172 @@
+package com.metaio.example_custom_renderer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.content.Context;
+import android.util.Log;
+
+/**
+ * Keeps the resources of the GLES 1.x renderer across pause/resume and stop/start of the activity:
+ * the camera image renderer with its frame ring and converters, the video player pool with its
+ * prepared decoders, and the meshes. Only the GL objects (textures, SurfaceTextures, buffer
+ * objects) are re-created, and only when the GL context was truly lost, i.e. when onSurfaceCreated()
+ * is called. A context that is preserved while paused (see
+ * GLSurfaceView.setPreserveEGLContextOnPause()) does not cause any work at all.
+ *
+ * The GLES 2.0 compositor keeps its shader programs in final fields and is still created for every
+ * context by the caller; the video player pool is kept for both backends.
+ *
+ * onSurfaceCreated() must be called on the GL thread, the other methods on the UI thread while the
+ * GL thread is paused or gone.
+ */
+public final class RenderResources
+{
+	private static final String TAG = "RenderResources";
+
+	public enum ContextState
+	{
+		/**
+		 * Everything was created, i.e. the first context
+		 */
+		NEW,
+
+		/**
+		 * The previous context was lost, only its GL objects were re-created
+		 */
+		RECREATED,
+
+		/**
+		 * The context survived a pause and onSurfaceCreated() was not called, never returned by
+		 * onSurfaceCreated()
+		 */
+		PRESERVED
+	}
+
+	/**
+	 * GLES 1.x camera renderer, null with GLES 2.0 or before the first onSurfaceCreated()
+	 */
+	private CameraImageRenderer mCameraImageRenderer;
+
+	private final Context mContext;
+
+	/**
+	 * Number of GL contexts the resources were used with
+	 */
+	private int mContexts = 0;
+
+	private final MeshRegistry mMeshes;
+
+	private final GpuResourceRegistry mResources;
+
+	private final boolean mUseGLES20;
+
+	/**
+	 * Null before the first onSurfaceCreated()
+	 */
+	private VideoPlayerPool mVideoPlayerPool;
+
+	private final int mVideoPlayerPoolSize;
+
+	/**
+	 * @param resources Registry all GPU resources are accounted in, see checkLeaks()
+	 * @param meshes Registry of all meshes, set up for each new context by onSurfaceCreated()
+	 * @param useGLES20 Whether the GLES 2.0 backend is used, no camera renderer is kept then
+	 * @param videoPlayerPoolSize Capacity of the video player pool
+	 */
+	public RenderResources(Context context, GpuResourceRegistry resources, MeshRegistry meshes, boolean useGLES20,
+		int videoPlayerPoolSize)
+	{
+		mContext = context;
+		mResources = resources;
+		mMeshes = meshes;
+		mUseGLES20 = useGLES20;
+		mVideoPlayerPoolSize = videoPlayerPoolSize;
+	}
+
+	/**
+	 * GLES 1.x camera renderer, null with GLES 2.0 or before the first onSurfaceCreated()
+	 */
+	public CameraImageRenderer getCameraImageRenderer()
+	{
+		return mCameraImageRenderer;
+	}
+
+	/**
+	 * Video player pool, null before the first onSurfaceCreated()
+	 */
+	public VideoPlayerPool getVideoPlayerPool()
+	{
+		return mVideoPlayerPool;
+	}
+
+	/**
+	 * Must be called from onSurfaceCreated(), before anything else may draw or delete GL objects
+	 *
+	 * @return NEW if the camera renderer and the video player pool were created and have to be
+	 *         configured, RECREATED if the existing ones only got new GL objects
+	 */
+	public ContextState onSurfaceCreated(GL10 gl)
+	{
+		// GL objects of the previous context are gone
+		mResources.onContextLost();
+		mMeshes.onSurfaceCreated(gl);
+
+		if (mContexts++ == 0)
+		{
+			if (!mUseGLES20)
+				mCameraImageRenderer = new CameraImageRenderer(gl, mMeshes, mResources);
+
+			mVideoPlayerPool = new VideoPlayerPool(mContext, mUseGLES20 ? null : gl, mMeshes, mResources,
+				mVideoPlayerPoolSize);
+			return ContextState.NEW;
+		}
+
+		Log.i(TAG, "GL context " + mContexts + ", re-creating GL objects only");
+
+		if (mCameraImageRenderer != null)
+			mCameraImageRenderer.recreateTextures();
+
+		mVideoPlayerPool.recreateTextures(mUseGLES20 ? null : gl);
+
+		// Everything of the previous context must have been re-created or released by now
+		mResources.checkLeaks();
+		return ContextState.RECREATED;
+	}
+
+	/**
+	 * Must be called from onStop(). Pauses the videos but keeps their decoders prepared, and drops
+	 * the frame listener, which belongs to the stopped GL surface.
+	 */
+	public void onStop()
+	{
+		if (mVideoPlayerPool != null)
+		{
+			mVideoPlayerPool.pause();
+			mVideoPlayerPool.setFrameListener(null);
+		}
+	}
+
+	/**
+	 * Release the decoders and conversion threads, must be called from onDestroy(). GL objects are
+	 * left to the GL context, which is already destroyed at this point. Anything still registered
+	 * with the resource registry afterwards is reported as a leak.
+	 */
+	public void release()
+	{
+		if (mCameraImageRenderer != null)
+		{
+			mCameraImageRenderer.release();
+			mCameraImageRenderer = null;
+		}
+
+		if (mVideoPlayerPool != null)
+		{
+			mVideoPlayerPool.release();
+			mVideoPlayerPool = null;
+		}
+
+		mResources.onContextLost();
+		mResources.checkLeaks();
+		Log.i(TAG, "GPU memory peak " + mResources.getPeakBytes() / 1024 + " KiB");
+	}
+}
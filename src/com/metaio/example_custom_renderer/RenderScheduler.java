@@ -0,0 +1,160 @@
+package com.metaio.example_custom_renderer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.opengl.GLSurfaceView;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Renders a GLSurfaceView on demand instead of continuously at display rate. Render requests from
+ * any thread (new camera frame, new video frame) are coalesced into one GLSurfaceView.requestRender()
+ * per frame and limited to a maximum frame rate.
+ *
+ * A heartbeat keeps requesting frames at a minimum rate. Rendering on demand needs another thread
+ * that pumps the camera (TrackingPipeline): the metaio SDK only delivers camera frames while
+ * render() runs, so with render() on the GL thread a frame rendered before the next camera frame
+ * arrived triggers no further request by itself. Continuous rendering is used then, and can be
+ * switched on as fallback, e.g. for devices where rendering on demand stalls.
+ */
+public final class RenderScheduler implements Runnable
+{
+	private volatile boolean mContinuous = false;
+
+	/**
+	 * Issues a request that was deferred because of the frame rate limit
+	 */
+	private final Runnable mDeferredRender = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			mView.requestRender();
+		}
+	};
+
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	/**
+	 * Requests a frame regularly while started, reposts itself
+	 */
+	private final Runnable mHeartbeat = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			requestRender();
+			mHandler.postDelayed(this, mHeartbeatIntervalMillis);
+		}
+	};
+
+	private long mHeartbeatIntervalMillis = 33;
+
+	/**
+	 * Start time of the last frame (SystemClock.uptimeMillis)
+	 */
+	private volatile long mLastFrameTime;
+
+	private long mMinFrameIntervalMillis = 33;
+
+	/**
+	 * Whether a frame has been requested but not started yet
+	 */
+	private final AtomicBoolean mRequested = new AtomicBoolean(false);
+
+	private volatile boolean mStarted = false;
+
+	private final GLSurfaceView mView;
+
+	/**
+	 * @param view View to schedule, its renderer must already be set
+	 */
+	public RenderScheduler(GLSurfaceView view)
+	{
+		mView = view;
+		mView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+	}
+
+	public boolean isContinuous()
+	{
+		return mContinuous;
+	}
+
+	/**
+	 * Must be called at the beginning of every frame on the GL thread. Requests arriving after
+	 * this call trigger another frame.
+	 */
+	public void onFrameStarted()
+	{
+		mLastFrameTime = SystemClock.uptimeMillis();
+		mRequested.set(false);
+	}
+
+	/**
+	 * Request a frame, can be called from any thread. Does nothing if a frame is already pending.
+	 */
+	public void requestRender()
+	{
+		if (mContinuous || !mStarted || !mRequested.compareAndSet(false, true))
+			return;
+
+		final long delay = mLastFrameTime + mMinFrameIntervalMillis - SystemClock.uptimeMillis();
+		if (delay <= 0)
+			mView.requestRender();
+		else
+			mHandler.postDelayed(mDeferredRender, delay);
+	}
+
+	/**
+	 * Same as requestRender(), so that the scheduler can be used directly as frame listener
+	 */
+	@Override
+	public void run()
+	{
+		requestRender();
+	}
+
+	/**
+	 * Render continuously at display rate instead of on demand
+	 */
+	public void setContinuous(boolean continuous)
+	{
+		mContinuous = continuous;
+		mView.setRenderMode(continuous ? GLSurfaceView.RENDERMODE_CONTINUOUSLY : GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+	}
+
+	/**
+	 * Set the minimum frame rate at which frames are requested without any signal
+	 */
+	public void setMinFrameRate(float framesPerSecond)
+	{
+		mHeartbeatIntervalMillis = Math.max(1, (long)(1000 / framesPerSecond));
+	}
+
+	public void setMaxFrameRate(float framesPerSecond)
+	{
+		mMinFrameIntervalMillis = (long)(1000 / framesPerSecond);
+	}
+
+	/**
+	 * Start scheduling, e.g. in onResume()
+	 */
+	public void start()
+	{
+		mStarted = true;
+		mRequested.set(false);
+		mHandler.removeCallbacks(mHeartbeat);
+		mHandler.post(mHeartbeat);
+	}
+
+	/**
+	 * Stop scheduling, e.g. in onPause()
+	 */
+	public void stop()
+	{
+		mStarted = false;
+		mHandler.removeCallbacks(mHeartbeat);
+		mHandler.removeCallbacks(mDeferredRender);
+	}
+}
@@ -0,0 +1,108 @@
+package com.metaio.example_custom_renderer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Converts RGBA camera frames (ECF_A8R8G8B8 from the metaio SDK, which is RGBA in memory) to the
+ * upload formats of CameraImageRenderer, optionally flipping the image vertically in the same
+ * pass. Works row by row: each row is moved in and out of preallocated arrays with bulk transfers,
+ * and the per-pixel loops are plain branch-free array code that the JIT can unroll and vectorize.
+ * No objects are allocated per frame.
+ */
+public final class RgbaConverter
+{
+	/**
+	 * GL reads GL_UNSIGNED_SHORT_5_6_5 pixels in native byte order
+	 */
+	private static final boolean NATIVE_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+	/**
+	 * Scratch row of the destination format
+	 */
+	private final byte[] mDestinationRow;
+
+	/**
+	 * Scratch RGBA row
+	 */
+	private final byte[] mSourceRow;
+
+	private final int mWidth;
+
+	/**
+	 * @param width Width of the frames that will be converted
+	 */
+	public RgbaConverter(int width)
+	{
+		mWidth = width;
+		mSourceRow = new byte[width * 4];
+		mDestinationRow = new byte[width * 2];
+	}
+
+	/**
+	 * Convert an RGBA frame. Positions and limits of the buffers are left unchanged.
+	 *
+	 * @param source RGBA data of size width*height*4
+	 * @param destination Target of size width*height*format.bytesPerPixel
+	 * @param height Frame height
+	 * @param flip Whether the source's first row is the bottom row of the image
+	 */
+	public void convert(ByteBuffer source, ByteBuffer destination, int height, CameraImageRenderer.UploadFormat format,
+		boolean flip)
+	{
+		final int sourcePosition = source.position();
+		final int destinationPosition = destination.position();
+		final int sourceRowBytes = mWidth * 4;
+		final int destinationRowBytes = mWidth * format.bytesPerPixel;
+
+		for (int row = 0; row < height; ++row)
+		{
+			source.position(sourcePosition + (flip ? height - 1 - row : row) * sourceRowBytes);
+			source.get(mSourceRow, 0, sourceRowBytes);
+
+			switch (format)
+			{
+				case RGBA:
+					destination.put(mSourceRow, 0, sourceRowBytes);
+					continue;
+
+				case RGB565:
+					convertRowRgb565(mSourceRow, mDestinationRow, mWidth);
+					break;
+
+				case LUMINANCE:
+					convertRowLuminance(mSourceRow, mDestinationRow, mWidth);
+					break;
+			}
+
+			destination.put(mDestinationRow, 0, destinationRowBytes);
+		}
+
+		source.position(sourcePosition);
+		destination.position(destinationPosition);
+	}
+
+	/**
+	 * BT.601 luma in 8 bit fixed point, 1 byte per pixel
+	 */
+	static void convertRowLuminance(byte[] src, byte[] dst, int width)
+	{
+		for (int i = 0, j = 0; i < width; ++i, j += 4)
+			dst[i] = (byte)((77 * (src[j] & 0xff) + 150 * (src[j + 1] & 0xff) + 29 * (src[j + 2] & 0xff)) >> 8);
+	}
+
+	/**
+	 * Truncate to 5/6/5 bits, 2 bytes per pixel in native byte order
+	 */
+	static void convertRowRgb565(byte[] src, byte[] dst, int width)
+	{
+		final int low = NATIVE_LITTLE_ENDIAN ? 0 : 1;
+
+		for (int i = 0, j = 0; i < width; ++i, j += 4)
+		{
+			final int pixel = ((src[j] & 0xf8) << 8) | ((src[j + 1] & 0xfc) << 3) | ((src[j + 2] & 0xf8) >> 3);
+			dst[2 * i + low] = (byte)pixel;
+			dst[2 * i + 1 - low] = (byte)(pixel >> 8);
+		}
+	}
+}
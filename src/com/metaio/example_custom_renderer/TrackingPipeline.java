@@ -0,0 +1,368 @@
+package com.metaio.example_custom_renderer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import android.util.Log;
+
+import com.metaio.sdk.jni.IMetaioSDKAndroid;
+import com.metaio.sdk.jni.TrackingValues;
+
+/**
+ * Runs camera acquisition and tracking (IMetaioSDKAndroid.requestCameraImage() and render()) on a
+ * dedicated thread instead of at the start of every GL frame, so that tracking camera frame N+1
+ * overlaps with rendering frame N.
+ *
+ * Camera frames and tracking state are kept in sync by their capture time: the camera renderer
+ * holds back each frame (see CameraImageRenderer.setHoldFrames()) until its tracking state was
+ * published here, and the GL thread then reads the tracking state of exactly the camera frame it
+ * draws with getTrackingState(). Tracking states live in a small history of slots that are claimed
+ * with a compare-and-set by either side, so neither thread ever waits for the other; a slot that
+ * is busy is simply skipped. The tracking time read by getTrackingNanos() is published with a
+ * seqlock, the GL thread only retries while the tracking thread is in the middle of updating it.
+ *
+ * The metaio SDK must not be used by two threads at once: calls from other threads, e.g. switching
+ * the camera on the main thread, must be made while the tracking thread is stopped, see stop().
+ */
+public final class TrackingPipeline
+{
+	private static final String TAG = "TrackingPipeline";
+
+	/**
+	 * Number of tracking states kept, the GL thread can draw a camera frame this many frames
+	 * after it was tracked
+	 */
+	private static final int HISTORY_SIZE = 4;
+
+	/**
+	 * Time the tracking thread sleeps if the metaio SDK delivered no new camera frame
+	 */
+	private static final long IDLE_SLEEP_MILLIS = 2;
+
+	public interface Listener
+	{
+		/**
+		 * Called on the tracking thread after the tracking state of a camera frame was published,
+		 * the held camera frame can be published to the GL thread now
+		 *
+		 * @param captureTime Capture time passed to onNewCameraFrame()
+		 */
+		void onFrameTracked(long captureTime);
+	}
+
+	/**
+	 * Tracking state of one camera frame
+	 */
+	private static final class Slot
+	{
+		/**
+		 * Set while one of the threads reads or writes the slot
+		 */
+		final AtomicBoolean busy = new AtomicBoolean(false);
+
+		/**
+		 * Capture time of the camera frame, 0 if the slot is empty
+		 */
+		long captureTime = 0;
+
+		final float[] modelMatrices;
+
+		final float[] projectionMatrix = new float[16];
+
+		final boolean[] tracked;
+
+		/**
+		 * Time render() took for the camera frame
+		 */
+		long trackingNanos;
+
+		Slot(int targetCount)
+		{
+			modelMatrices = new float[targetCount * 16];
+			tracked = new boolean[targetCount];
+		}
+	}
+
+	/**
+	 * Capture time of the camera frame delivered during the current render() call, 0 if none.
+	 * Only accessed by the tracking thread.
+	 */
+	private long mFrameCaptureTime = 0;
+
+	private final FrameMetrics mFrameMetrics;
+
+	private final Listener mListener;
+
+	private final IMetaioSDKAndroid mMetaioSDK;
+
+	/**
+	 * Scratch model matrix, only used by the tracking thread
+	 */
+	private final float[] mModelMatrix = new float[16];
+
+	/**
+	 * Next slot the tracking thread writes to, only accessed by the tracking thread
+	 */
+	private int mNextSlot = 0;
+
+	/**
+	 * Tracking time of the state returned by the last successful getTrackingState() call, only
+	 * accessed by the GL thread
+	 */
+	private long mReadTrackingNanos = 0;
+
+	private final Slot[] mSlots = new Slot[HISTORY_SIZE];
+
+	/**
+	 * Start of the render() call in progress, 0 if none. Written under mTrackingTimeVersion.
+	 */
+	private volatile long mTrackingStartTime = 0;
+
+	/**
+	 * Seqlock version of mTrackingStartTime and mTrackingTotalNanos, odd while the tracking thread
+	 * updates them
+	 */
+	private volatile int mTrackingTimeVersion = 0;
+
+	/**
+	 * Time spent in finished render() calls. Written under mTrackingTimeVersion.
+	 */
+	private volatile long mTrackingTotalNanos = 0;
+
+	private volatile Thread mThread;
+
+	/**
+	 * @param targetCount Number of coordinate systems tracked, starting at ID 1
+	 * @param frameMetrics Metrics that REQUEST_CAMERA_IMAGE and TRACKING are recorded into
+	 */
+	public TrackingPipeline(IMetaioSDKAndroid metaioSDK, int targetCount, FrameMetrics frameMetrics, Listener listener)
+	{
+		mMetaioSDK = metaioSDK;
+		mFrameMetrics = frameMetrics;
+		mListener = listener;
+
+		for (int i = 0; i < mSlots.length; ++i)
+			mSlots[i] = new Slot(targetCount);
+	}
+
+	/**
+	 * Tracking time of the state returned by the last successful getTrackingState() call
+	 */
+	public long getReadTrackingNanos()
+	{
+		return mReadTrackingNanos;
+	}
+
+	/**
+	 * Time the tracking thread has spent in render() so far, including the call in progress. The
+	 * difference of two calls is the tracking time that overlapped with the time between them.
+	 */
+	public long getTrackingNanos()
+	{
+		while (true)
+		{
+			final int version = mTrackingTimeVersion;
+			final long startTime = mTrackingStartTime;
+			final long totalNanos = mTrackingTotalNanos;
+
+			if ((version & 1) == 0 && version == mTrackingTimeVersion)
+				return startTime == 0 ? totalNanos : totalNanos + System.nanoTime() - startTime;
+		}
+	}
+
+	/**
+	 * Read the tracking state of a camera frame, called on the GL thread
+	 *
+	 * @param captureTime Capture time of the camera frame that is drawn
+	 * @param tracked Receives the tracking state per target
+	 * @param modelMatrices Receives the model matrix per target, only written for tracked targets
+	 * @param projectionMatrix Receives the right-handed projection matrix
+	 * @return false if the state is not available (any more), the arrays are unchanged then
+	 */
+	public boolean getTrackingState(long captureTime, boolean[] tracked, float[] modelMatrices, float[] projectionMatrix)
+	{
+		for (Slot slot : mSlots)
+		{
+			if (!slot.busy.compareAndSet(false, true))
+				continue;
+
+			try
+			{
+				if (slot.captureTime != captureTime || captureTime == 0)
+					continue;
+
+				for (int i = 0; i < tracked.length; ++i)
+				{
+					tracked[i] = slot.tracked[i];
+					if (tracked[i])
+						System.arraycopy(slot.modelMatrices, i * 16, modelMatrices, i * 16, 16);
+				}
+				System.arraycopy(slot.projectionMatrix, 0, projectionMatrix, 0, 16);
+				mReadTrackingNanos = slot.trackingNanos;
+				return true;
+			}
+			finally
+			{
+				slot.busy.set(false);
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Must be called from IMetaioSDKCallback.onNewCameraFrame(), which runs on the tracking thread
+	 * while the pipeline is running
+	 *
+	 * @param captureTime Time the frame was received, as passed to the camera renderer
+	 */
+	public void onNewCameraFrame(long captureTime)
+	{
+		mFrameCaptureTime = captureTime;
+	}
+
+	/**
+	 * Publish the tracking state of the current camera frame into the next free slot
+	 */
+	private void publish(long captureTime, long trackingNanos)
+	{
+		Slot slot = null;
+		for (int i = 0; i < mSlots.length && slot == null; ++i)
+		{
+			final Slot candidate = mSlots[mNextSlot];
+			mNextSlot = (mNextSlot + 1) % mSlots.length;
+
+			// Skip the slot the GL thread is reading right now
+			if (candidate.busy.compareAndSet(false, true))
+				slot = candidate;
+		}
+
+		if (slot == null)
+			return;
+
+		try
+		{
+			for (int i = 0; i < slot.tracked.length; ++i)
+			{
+				// Coordinate system IDs start at 1
+				final TrackingValues trackingValues = mMetaioSDK.getTrackingValues(i + 1);
+				slot.tracked[i] = trackingValues.isTrackingState();
+				if (slot.tracked[i])
+				{
+					// preMultiplyWithStandardViewMatrix=false like in MainActivity.onDrawFrame()
+					mMetaioSDK.getTrackingValues(i + 1, mModelMatrix, false, true);
+					System.arraycopy(mModelMatrix, 0, slot.modelMatrices, i * 16, 16);
+				}
+			}
+
+			mMetaioSDK.getProjectionMatrix(slot.projectionMatrix, true);
+			slot.trackingNanos = trackingNanos;
+			slot.captureTime = captureTime;
+		}
+		finally
+		{
+			slot.busy.set(false);
+		}
+	}
+
+	/**
+	 * Tracking loop, runs until stop()
+	 */
+	private void run()
+	{
+		final Thread thread = Thread.currentThread();
+
+		while (mThread == thread)
+		{
+			final long startTime = System.nanoTime();
+			mMetaioSDK.requestCameraImage();
+			final long trackingStartTime = System.nanoTime();
+			setTrackingTime(trackingStartTime, mTrackingTotalNanos);
+
+			// Delivers the camera frame through onNewCameraFrame() and updates tracking
+			mFrameCaptureTime = 0;
+			mMetaioSDK.render();
+			final long trackingNanos = System.nanoTime() - trackingStartTime;
+
+			setTrackingTime(0, mTrackingTotalNanos + trackingNanos);
+
+			final long captureTime = mFrameCaptureTime;
+			if (captureTime == 0)
+			{
+				try
+				{
+					Thread.sleep(IDLE_SLEEP_MILLIS);
+				}
+				catch (InterruptedException e)
+				{
+					// Only stop() ends the loop
+				}
+				continue;
+			}
+
+			mFrameMetrics.record(FrameMetrics.Stage.REQUEST_CAMERA_IMAGE, trackingStartTime - startTime);
+			mFrameMetrics.record(FrameMetrics.Stage.TRACKING, trackingNanos);
+
+			publish(captureTime, trackingNanos);
+			mListener.onFrameTracked(captureTime);
+		}
+	}
+
+	/**
+	 * Update the tracking time read by getTrackingNanos(), only called on the tracking thread
+	 */
+	private void setTrackingTime(long startTime, long totalNanos)
+	{
+		++mTrackingTimeVersion;
+		mTrackingStartTime = startTime;
+		mTrackingTotalNanos = totalNanos;
+		++mTrackingTimeVersion;
+	}
+
+	/**
+	 * Start the tracking thread, e.g. in onResume() after resuming the metaio SDK
+	 */
+	public synchronized void start()
+	{
+		if (mThread != null)
+			return;
+
+		mThread = new Thread("TrackingPipeline")
+		{
+			@Override
+			public void run()
+			{
+				TrackingPipeline.this.run();
+			}
+		};
+		mThread.start();
+	}
+
+	/**
+	 * Stop the tracking thread and wait until it no longer uses the metaio SDK, e.g. in onPause()
+	 * before pausing the metaio SDK, or around calls into the metaio SDK from another thread
+	 *
+	 * @return Whether the thread was running, i.e. has to be start()ed again after such calls
+	 */
+	public synchronized boolean stop()
+	{
+		final Thread thread = mThread;
+		if (thread == null)
+			return false;
+
+		// Not interrupted: render() may be converting a camera frame, the loop ends within the idle
+		// sleep or after the current frame
+		mThread = null;
+
+		try
+		{
+			thread.join();
+		}
+		catch (InterruptedException e)
+		{
+			Log.w(TAG, "Interrupted while stopping the tracking thread");
+			Thread.currentThread().interrupt();
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,194 @@
+package com.metaio.example_custom_renderer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.content.Context;
+import android.media.MediaPlayer;
+import android.util.Log;
+
+/**
+ * Bounded pool of video players, each with its own decoder and GL texture. Players keep their
+ * prepared video when a target goes out of view, so a target that comes back is shown without
+ * preparing the video again. If more videos are needed than the pool holds, the least recently
+ * used player that is not drawn in the current frame is reused for the new video.
+ *
+ * Must only be used on the GL thread. The pool can outlive its GL context, see recreateTextures().
+ */
+public final class VideoPlayerPool
+{
+	private static final String TAG = "VideoPlayerPool";
+
+	/**
+	 * Number of the current frame, starts at 1 so that 0 marks players never used
+	 */
+	private long mFrame = 1;
+
+	/**
+	 * Frame in which each player was last acquired
+	 */
+	private final long[] mLastUsedFrames;
+
+	private final VideoRenderer[] mRenderers;
+
+	/**
+	 * Number of players that had to be loaded with another video
+	 */
+	private int mReloads;
+
+	/**
+	 * @param gl GL of a GLES 1.x context, or null in a GLES 2.0 context
+	 * @param meshes Registry for the video quad, only used with a GLES 1.x context
+	 * @param resources Registry the video textures and SurfaceTextures are accounted in
+	 * @param capacity Maximum number of players, i.e. decoders, that exist at the same time
+	 */
+	public VideoPlayerPool(Context context, GL10 gl, MeshRegistry meshes, GpuResourceRegistry resources, int capacity)
+	{
+		mLastUsedFrames = new long[capacity];
+		mRenderers = new VideoRenderer[capacity];
+
+		// All players draw the same quad
+		final MeshRegistry.Mesh quad = gl != null ? VideoRenderer.registerQuad(meshes) : null;
+		for (int i = 0; i < capacity; ++i)
+			mRenderers[i] = new VideoRenderer(context, gl, new MediaPlayer(), gl != null ? meshes : null, quad,
+				resources);
+	}
+
+	/**
+	 * Get the player for a video to draw it in the current frame, loading the video if needed
+	 *
+	 * @return Player, or null if all players are already used in this frame or the video could
+	 *         not be loaded
+	 */
+	public VideoRenderer acquire(String assetName)
+	{
+		final int index = getPlayer(assetName, true);
+		if (index < 0)
+			return null;
+
+		mLastUsedFrames[index] = mFrame;
+		return mRenderers[index];
+	}
+
+	/**
+	 * Pause the players that were not acquired in the current frame and start the next frame
+	 */
+	public void endFrame()
+	{
+		for (int i = 0; i < mRenderers.length; ++i)
+		{
+			if (mLastUsedFrames[i] != mFrame)
+				mRenderers[i].pause();
+		}
+
+		++mFrame;
+	}
+
+	public int getCapacity()
+	{
+		return mRenderers.length;
+	}
+
+	public int getReloads()
+	{
+		return mReloads;
+	}
+
+	/**
+	 * Pause all players, e.g. when the activity is stopped. The prepared videos are kept.
+	 */
+	public void pause()
+	{
+		for (VideoRenderer renderer : mRenderers)
+			renderer.pause();
+	}
+
+	/**
+	 * Prepare a video ahead of time so that it can be shown as soon as its target is found. Only
+	 * uses empty players, a prepared video is never evicted by pre-warming.
+	 */
+	public void prewarm(String assetName)
+	{
+		getPlayer(assetName, false);
+	}
+
+	/**
+	 * Re-create the textures of all players in a new GL context, see VideoRenderer.recreateTexture().
+	 * The quad is re-uploaded by the mesh registry.
+	 *
+	 * @param gl GL of the new GLES 1.x context, or null in a GLES 2.0 context
+	 */
+	public void recreateTextures(GL10 gl)
+	{
+		for (VideoRenderer renderer : mRenderers)
+			renderer.recreateTexture(gl);
+	}
+
+	/**
+	 * Release all players. GL textures are not deleted, see VideoRenderer.release().
+	 */
+	public void release()
+	{
+		for (VideoRenderer renderer : mRenderers)
+			renderer.release();
+	}
+
+	/**
+	 * Set a listener that is run when any player has a new video frame, see
+	 * VideoRenderer.setFrameListener()
+	 */
+	public void setFrameListener(Runnable frameListener)
+	{
+		for (VideoRenderer renderer : mRenderers)
+			renderer.setFrameListener(frameListener);
+	}
+
+	/**
+	 * Find the player that has the video loaded, or load it into an empty or the least recently
+	 * used player
+	 *
+	 * @param evict Whether a player with another video may be reused
+	 * @return Index of the player or -1
+	 */
+	private int getPlayer(String assetName, boolean evict)
+	{
+		int empty = -1;
+		int leastRecentlyUsed = -1;
+
+		for (int i = 0; i < mRenderers.length; ++i)
+		{
+			final String loaded = mRenderers[i].getAssetName();
+			if (assetName.equals(loaded))
+				return i;
+
+			if (loaded == null)
+			{
+				if (empty < 0)
+					empty = i;
+			}
+			else if (mLastUsedFrames[i] != mFrame &&
+				(leastRecentlyUsed < 0 || mLastUsedFrames[i] < mLastUsedFrames[leastRecentlyUsed]))
+			{
+				leastRecentlyUsed = i;
+			}
+		}
+
+		int index = empty;
+		if (index < 0 && evict)
+		{
+			index = leastRecentlyUsed;
+			if (index >= 0)
+				++mReloads;
+		}
+
+		if (index < 0)
+			return -1;
+
+		if (!mRenderers[index].load(assetName))
+		{
+			Log.e(TAG, "Failed to load video " + assetName);
+			return -1;
+		}
+
+		return index;
+	}
+}
@@ -1,63 +1,119 @@
 package com.metaio.example_custom_renderer;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
 
 import javax.microedition.khronos.opengles.GL10;
 
 import android.annotation.TargetApi;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.SurfaceTexture;
 import android.graphics.SurfaceTexture.OnFrameAvailableListener;
 import android.media.MediaPlayer;
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
 import android.os.Build;
 import android.util.Log;
 import android.view.Surface;
 
-import com.metaio.sdk.jni.ESCREEN_ROTATION;
-
 @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
 public class VideoRenderer {
 	private static final String TAG = "VideoRenderer";
 	private static int GL_TEXTURE_EXTERNAL_OES = GLES11Ext.GL_TEXTURE_EXTERNAL_OES;
 
+	// Decoders usually output YUV 4:2:0 into a queue of up to three buffers
+	private static final int SURFACE_TEXTURE_BUFFERS = 3;
+
+	// Interleaved x, y, z, u, v of the video quad
+	private static final float[] QUAD = {
+			// 四角形, テクスチャ
+			-1, 1, 0, 0, 0, // 左上
+			-1, -1, 0, 0, 1, // 左下
+			1, 1, 0, 1, 0, // 右上
+			1, -1, 0, 1, 1 // 右下
+	};
+
+	private String mAssetName;
 	private Context mContext;
 	private int mTextureId;
 	private MediaPlayer mMediaPlayer;
 	private SurfaceTexture mSurfaceTexture;
-	private FloatBuffer mVertexBuffer;
+	// Key of mSurfaceTexture in mResources
+	private int mSurfaceTextureKey;
+	private MeshRegistry mMeshes;
+	private MeshRegistry.Mesh mQuad;
+	private GpuResourceRegistry mResources;
 	private boolean mSurfaceUpdated;
+	// Whether the current texture received a video frame, it has no content before
+	private boolean mTextureHasFrame;
+	private volatile Runnable mFrameListener;
+
+	// Whether start() was called, so that isPlaying() does not have to be polled every frame
+	private boolean mPlaying;
+
+	// prepareAsync() completion is reported on the UI thread
+	private volatile boolean mPrepared;
+	private long mLoadStartTime;
+	private volatile long mPreparedTime;
+	private boolean mFirstFrameShown;
+	private long mTimeToFirstFrame = -1;
+	private long mLastUpdateTime;
 
-	public VideoRenderer(Context context, GL10 gl, MediaPlayer mediaPlayer) {
+	/**
+	 * @param gl GL of a GLES 1.x context, or null in a GLES 2.0 context (the texture is then
+	 *        created through GLES20)
+	 * @param meshes Registry the quad was registered with, null in a GLES 2.0 context
+	 * @param quad Video quad shared by all renderers, see registerQuad()
+	 * @param resources Registry the texture and SurfaceTexture are accounted in
+	 */
+	public VideoRenderer(Context context, GL10 gl, MediaPlayer mediaPlayer, MeshRegistry meshes,
+			MeshRegistry.Mesh quad, GpuResourceRegistry resources) {
 		mContext = context;
 		mMediaPlayer = mediaPlayer;
+		mMeshes = meshes;
+		mQuad = quad;
+		mResources = resources;
 
-		final float[] vertices = {
-				// 四角形
-				-1, 1, 0, // 左上
-				-1, -1, 0, // 左下
-				1, 1, 0, // 右上
-				1, -1, 0 // 右下
-		};
-
-		ByteBuffer buffer = ByteBuffer.allocateDirect(vertices.length * 4);
-		buffer.order(ByteOrder.nativeOrder());
-		mVertexBuffer = buffer.asFloatBuffer();
-		mVertexBuffer.put(vertices);
-		mVertexBuffer.rewind();
-
-		// Generate texture
+		createTexture(gl);
+
+		mMediaPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+			@Override
+			public void onPrepared(MediaPlayer mp) {
+				mPreparedTime = System.nanoTime();
+				mPrepared = true;
+			}
+		});
+		mMediaPlayer.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+			@Override
+			public boolean onError(MediaPlayer mp, int what, int extra) {
+				Log.e(TAG, "media player error " + what + "/" + extra + ": " + mAssetName);
+				mPrepared = false;
+				return true;
+			}
+		});
+
+		setSurface();
+	}
+
+	/**
+	 * Generate the external texture and the SurfaceTexture the player decodes into, in the current
+	 * GL context
+	 */
+	private void createTexture(GL10 gl) {
 		int[] tmp = new int[1];
-		gl.glGenTextures(1, tmp, 0);
-		mTextureId = tmp[0];
-		gl.glBindTexture(GL_TEXTURE_EXTERNAL_OES, mTextureId);
-		gl.glTexParameterx(GL_TEXTURE_EXTERNAL_OES, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
-		gl.glTexParameterx(GL_TEXTURE_EXTERNAL_OES, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
+		if (gl != null) {
+			gl.glGenTextures(1, tmp, 0);
+			mTextureId = tmp[0];
+			gl.glBindTexture(GL_TEXTURE_EXTERNAL_OES, mTextureId);
+			gl.glTexParameterx(GL_TEXTURE_EXTERNAL_OES, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
+			gl.glTexParameterx(GL_TEXTURE_EXTERNAL_OES, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
+		} else {
+			GLES20.glGenTextures(1, tmp, 0);
+			mTextureId = tmp[0];
+			GLES20.glBindTexture(GL_TEXTURE_EXTERNAL_OES, mTextureId);
+			GLES20.glTexParameteri(GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+			GLES20.glTexParameteri(GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+		}
 
 		mSurfaceTexture = new SurfaceTexture(mTextureId);
 		mSurfaceTexture
@@ -65,62 +121,241 @@ public class VideoRenderer {
 					@Override
 					public void onFrameAvailable(SurfaceTexture surfaceTexture) {
 						mSurfaceUpdated = true;
+
+						final Runnable frameListener = mFrameListener;
+						if (frameListener != null)
+							frameListener.run();
 					}
 				});
+		mSurfaceUpdated = false;
+		mTextureHasFrame = false;
 
-		Surface surface = new Surface(mSurfaceTexture);
-		mMediaPlayer.setSurface(surface);
-		surface.release();
+		// The frames live in the SurfaceTexture's buffers, which are accounted once the video size
+		// is known
+		mResources.add(GpuResourceRegistry.Type.TEXTURE, mTextureId, 0, TAG);
+		mSurfaceTextureKey = mResources.newSurfaceTextureKey();
+		mResources.add(GpuResourceRegistry.Type.SURFACE_TEXTURE, mSurfaceTextureKey, 0, TAG);
+	}
 
+	/**
+	 * Asset currently loaded into the player, or null
+	 */
+	public String getAssetName() {
+		return mAssetName;
+	}
+
+	/**
+	 * Time the last updateTexture() call spent in updateTexImage() in nanoseconds
+	 */
+	public long getLastUpdateTime() {
+		return mLastUpdateTime;
+	}
+
+	/**
+	 * External (OES) texture the video frames are streamed into
+	 */
+	public int getTextureId() {
+		return mTextureId;
+	}
+
+	/**
+	 * Time from load() until the first video frame was drawn in nanoseconds, or -1 if no frame
+	 * has been drawn yet
+	 */
+	public long getTimeToFirstFrame() {
+		return mTimeToFirstFrame;
+	}
+
+	/**
+	 * Whether the video is prepared and can be played
+	 */
+	public boolean isPrepared() {
+		return mPrepared;
+	}
+
+	/**
+	 * Load a video from the assets, replacing the current one. The player is reused, so no new
+	 * decoder has to be created. Preparation runs in the background, frames are drawn once the
+	 * player reports that it is prepared.
+	 */
+	public boolean load(String assetName) {
+		mAssetName = null;
+		mPrepared = false;
+		mFirstFrameShown = false;
+		mPlaying = false;
+		mTimeToFirstFrame = -1;
+		mLoadStartTime = System.nanoTime();
+		mMediaPlayer.reset();
+
+		AssetFileDescriptor afd = null;
 		try {
-			mMediaPlayer.prepare();
-		} catch (IOException t) {
-			Log.e(TAG, "media player prepare failed");
+			afd = mContext.getAssets().openFd(assetName);
+			mMediaPlayer.setDataSource(afd.getFileDescriptor(),
+					afd.getStartOffset(), afd.getLength());
+
+			// reset() detaches the output surface
+			setSurface();
+
+			// Loop like before, when draw() restarted a finished video
+			mMediaPlayer.setLooping(true);
+			mMediaPlayer.prepareAsync();
+		} catch (IOException e) {
+			Log.e(TAG, "media player prepare failed: " + assetName);
+			return false;
+		} catch (IllegalStateException e) {
+			Log.e(TAG, "media player prepare failed: " + assetName);
+			return false;
+		} finally {
+			// The player keeps its own duplicate of the file descriptor
+			if (afd != null) {
+				try {
+					afd.close();
+				} catch (IOException e) {
+					Log.w(TAG, "closing asset failed: " + assetName);
+				}
+			}
 		}
 
+		mAssetName = assetName;
+		return true;
 	}
 
-	public void draw(GL10 gl, ESCREEN_ROTATION screenRotation) {
-		if (!mMediaPlayer.isPlaying())
-			mMediaPlayer.start();
-		
-		synchronized (this) {
-			if (mSurfaceUpdated) {
-				mSurfaceTexture.updateTexImage();
-				mSurfaceUpdated = false;
-			}
+	/**
+	 * Pause playback, the next drawFrame() resumes from the same position
+	 */
+	public void pause() {
+		if (mPlaying) {
+			mMediaPlayer.pause();
+			mPlaying = false;
 		}
+	}
+
+	/**
+	 * Register the quad all videos are drawn with, once per registry
+	 */
+	public static MeshRegistry.Mesh registerQuad(MeshRegistry meshes) {
+		return meshes.register(GL10.GL_TRIANGLE_STRIP, MeshRegistry.TEX_COORDS, QUAD);
+	}
+
+	/**
+	 * Re-create the texture and SurfaceTexture in a new GL context after the previous one was lost.
+	 * The player keeps its prepared video and only gets the new surface attached, so the video does
+	 * not have to be prepared again. The old texture died with its context and is not deleted.
+	 *
+	 * @param gl GL of the new GLES 1.x context, or null in a GLES 2.0 context
+	 */
+	public void recreateTexture(GL10 gl) {
+		mSurfaceTexture.release();
+		mResources.remove(GpuResourceRegistry.Type.SURFACE_TEXTURE, mSurfaceTextureKey);
+		createTexture(gl);
+		setSurface();
+	}
+
+	/**
+	 * Release the player and surface texture. The GL texture is left to the GL context, which is
+	 * usually already destroyed at this point.
+	 */
+	public void release() {
+		mAssetName = null;
+		mPrepared = false;
+		mPlaying = false;
+		mMediaPlayer.release();
+		mSurfaceTexture.release();
+		mResources.remove(GpuResourceRegistry.Type.SURFACE_TEXTURE, mSurfaceTextureKey);
+	}
+
+	/**
+	 * Set a listener that is run when a new video frame is available, e.g. to request rendering.
+	 * It is called on an arbitrary thread.
+	 */
+	public void setFrameListener(Runnable frameListener) {
+		mFrameListener = frameListener;
+	}
 
+	/**
+	 * Set up the GL state shared by all videos. Several videos can be drawn with drawFrame()
+	 * between beginDraw() and endDraw().
+	 */
+	public void beginDraw(GL10 gl) {
 		gl.glEnable(GL_TEXTURE_EXTERNAL_OES);
 		gl.glActiveTexture(GLES20.GL_TEXTURE0);
+
+		mMeshes.bind(gl, mQuad);
+	}
+
+	/**
+	 * Draw the current video frame with the current model-view matrix, must be called between
+	 * beginDraw() and endDraw()
+	 */
+	public void drawFrame(GL10 gl) {
+		if (!updateTexture(gl))
+			return;
+
 		gl.glBindTexture(GL_TEXTURE_EXTERNAL_OES, mTextureId);
-		
-		// テクスチャ
-		float uv[] = { // ! u v
-				0, 0, // 左上
-				0, 1, // 左下
-				1, 0, // 右上
-				1, 1 // 右下
-		};
-		
-		ByteBuffer buffer = ByteBuffer.allocateDirect(uv.length * 4);
-		buffer.order(ByteOrder.nativeOrder());
-		FloatBuffer fb = buffer.asFloatBuffer();
-		fb.put(uv);
-		fb.rewind();
-		
-		gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
-		gl.glTexCoordPointer(2, GL10.GL_FLOAT, 0, fb);
 
 		// 四角形を描画
-		gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
-		gl.glVertexPointer(3, GL10.GL_FLOAT, 0, mVertexBuffer);
 //		gl.glColor4f(1, 0, 0, 1);
-		gl.glDrawArrays(GL10.GL_TRIANGLE_STRIP, 0, 4);
+		mMeshes.draw(gl, mQuad);
+	}
 
+	/**
+	 * Start playback if needed and latch the newest video frame into the texture
+	 *
+	 * @param gl GL10 to keep the state cache consistent with, or null
+	 * @return false if the video is not prepared yet or the texture has no frame yet, nothing
+	 *         should be drawn then
+	 */
+	public boolean updateTexture(GL10 gl) {
+		mLastUpdateTime = 0;
+
+		// Nothing to show while the video is being prepared
+		if (!mPrepared)
+			return false;
+
+		if (!mPlaying) {
+			mMediaPlayer.start();
+			mPlaying = true;
+		}
+
+		synchronized (this) {
+			if (mSurfaceUpdated) {
+				final long updateStartTime = System.nanoTime();
+				mSurfaceTexture.updateTexImage();
+				mSurfaceUpdated = false;
+				mLastUpdateTime = System.nanoTime() - updateStartTime;
+
+				if (!mTextureHasFrame) {
+					mTextureHasFrame = true;
+					mResources.resize(GpuResourceRegistry.Type.SURFACE_TEXTURE, mSurfaceTextureKey,
+							(long) mMediaPlayer.getVideoWidth() * mMediaPlayer.getVideoHeight() * 3 / 2
+									* SURFACE_TEXTURE_BUFFERS);
+				}
+
+				if (!mFirstFrameShown) {
+					mFirstFrameShown = true;
+					mTimeToFirstFrame = System.nanoTime() - mLoadStartTime;
+					Log.i(TAG, mAssetName + ": prepared after " + (mPreparedTime - mLoadStartTime) / 1000000
+							+ " ms, first frame after " + mTimeToFirstFrame / 1000000 + " ms");
+				}
+
+				// updateTexImage() binds the texture itself, bypassing the state cache
+				if (gl instanceof GLStateCache)
+					((GLStateCache) gl).invalidateBindings();
+			}
+		}
+
+		return mTextureHasFrame;
+	}
+
+	public void endDraw(GL10 gl) {
 		// Disables
-		gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
-		gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+		mMeshes.unbind(gl, mQuad);
 		gl.glDisable(GL_TEXTURE_EXTERNAL_OES);
 	}
+
+	private void setSurface() {
+		Surface surface = new Surface(mSurfaceTexture);
+		mMediaPlayer.setSurface(surface);
+		surface.release();
+	}
 }
@@ -0,0 +1,409 @@
+package com.metaio.example_custom_renderer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Precomputed geometry for drawing the camera image into the viewport. For each of the four
+ * screen rotations, this holds an interleaved vertex/texture coordinate table for the camera quad
+ * (with the rotation already applied to the vertices) and the factors by which the projection
+ * matrix must be scaled so that overlays match the displayed camera image.
+ *
+ * The tables are only recomputed if camera, texture or viewport size change or after
+ * invalidate(), so drawing a frame only requires binding the precomputed arrays.
+ */
+public final class ViewportLayout
+{
+	public enum ScaleMode
+	{
+		/**
+		 * Camera image covers the whole viewport and is cropped if aspect ratios differ
+		 */
+		FILL,
+
+		/**
+		 * Camera image is stretched to the viewport, ignoring its aspect ratio
+		 */
+		FIT,
+
+		/**
+		 * Whole camera image is visible, with bars on two sides if aspect ratios differ
+		 */
+		LETTERBOX
+	}
+
+	public static final int ROTATION_0 = 0;
+
+	public static final int ROTATION_90 = 1;
+
+	public static final int ROTATION_180 = 2;
+
+	public static final int ROTATION_270 = 3;
+
+	/**
+	 * Floats per vertex: x, y, z, u, v
+	 */
+	public static final int FLOATS_PER_VERTEX = 5;
+
+	/**
+	 * Distance in bytes between two vertices in the interleaved tables
+	 */
+	public static final int STRIDE = FLOATS_PER_VERTEX * 4;
+
+	public static final int VERTEX_COUNT = 4;
+
+	/**
+	 * Triangle strip corners of the camera quad before rotation
+	 */
+	private static final float[] CORNERS = {
+		-1, -1,
+		 1, -1,
+		-1,  1,
+		 1,  1
+	};
+
+	/**
+	 * All four tables in one direct buffer, rotation after rotation
+	 */
+	private final FloatBuffer mTable;
+
+	private final FloatBuffer[] mVertices = new FloatBuffer[4];
+
+	private final FloatBuffer[] mTexCoords = new FloatBuffer[4];
+
+	/**
+	 * Crop offsets in texture space per rotation, as fraction of the camera image
+	 */
+	private final float[] mOffsetX = new float[4];
+
+	private final float[] mOffsetY = new float[4];
+
+	/**
+	 * Size of the camera quad before rotation per rotation (1 = whole viewport axis)
+	 */
+	private final float[] mQuadScaleX = new float[4];
+
+	private final float[] mQuadScaleY = new float[4];
+
+	private final float[] mScaleX = new float[4];
+
+	private final float[] mScaleY = new float[4];
+
+	/**
+	 * Scratch array for one rotation's table, only used while recomputing
+	 */
+	private final float[] mScratch = new float[VERTEX_COUNT * FLOATS_PER_VERTEX];
+
+	private ScaleMode mScaleMode = ScaleMode.FILL;
+
+	private boolean mValid = false;
+
+	private int mCameraWidth;
+
+	private int mCameraHeight;
+
+	private int mTextureWidth;
+
+	private int mTextureHeight;
+
+	private int mViewportWidth;
+
+	private int mViewportHeight;
+
+	public ViewportLayout()
+	{
+		final int floatsPerRotation = VERTEX_COUNT * FLOATS_PER_VERTEX;
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(4 * floatsPerRotation * 4);
+		buffer.order(ByteOrder.nativeOrder());
+		mTable = buffer.asFloatBuffer();
+
+		for (int rotation = 0; rotation < 4; ++rotation)
+		{
+			mTable.position(rotation * floatsPerRotation);
+			mVertices[rotation] = mTable.slice();
+
+			mTable.position(rotation * floatsPerRotation + 3);
+			mTexCoords[rotation] = mTable.slice();
+		}
+
+		mTable.rewind();
+
+		for (int rotation = 0; rotation < 4; ++rotation)
+		{
+			mScaleX[rotation] = 1;
+			mScaleY[rotation] = 1;
+		}
+	}
+
+	public ScaleMode getScaleMode()
+	{
+		return mScaleMode;
+	}
+
+	/**
+	 * Value by which the X axis of the projection matrix must be scaled so that overlays match the
+	 * displayed camera image (e.g. > 1 if the camera image is cropped horizontally)
+	 */
+	public float getScaleX(int rotation)
+	{
+		return mScaleX[rotation];
+	}
+
+	public float getScaleY(int rotation)
+	{
+		return mScaleY[rotation];
+	}
+
+	/**
+	 * All four tables, rotation after rotation, i.e. VERTEX_COUNT vertices per rotation
+	 */
+	public FloatBuffer getTable()
+	{
+		return mTable;
+	}
+
+	/**
+	 * Texture coordinates for the given rotation, to be used with a stride of STRIDE bytes
+	 */
+	public FloatBuffer getTexCoords(int rotation)
+	{
+		return mTexCoords[rotation];
+	}
+
+	/**
+	 * Vertex positions (x, y, z) for the given rotation, to be used with a stride of STRIDE bytes
+	 */
+	public FloatBuffer getVertices(int rotation)
+	{
+		return mVertices[rotation];
+	}
+
+	/**
+	 * Force recomputation on the next update() call
+	 */
+	public void invalidate()
+	{
+		mValid = false;
+	}
+
+	public boolean isValid()
+	{
+		return mValid;
+	}
+
+	public void setScaleMode(ScaleMode scaleMode)
+	{
+		if (scaleMode != mScaleMode)
+		{
+			mScaleMode = scaleMode;
+			mValid = false;
+		}
+	}
+
+	/**
+	 * Recompute the tables if any of the sizes changed or the layout was invalidated.
+	 *
+	 * @param cameraWidth Camera image width in pixels
+	 * @param cameraHeight Camera image height in pixels
+	 * @param textureWidth Width of the texture that holds the camera image (>= cameraWidth)
+	 * @param textureHeight Height of the texture that holds the camera image (>= cameraHeight)
+	 * @param viewportWidth Viewport width in the current orientation
+	 * @param viewportHeight Viewport height in the current orientation
+	 * @return true if the tables were recomputed
+	 */
+	public boolean update(int cameraWidth, int cameraHeight, int textureWidth, int textureHeight,
+		int viewportWidth, int viewportHeight)
+	{
+		if (mValid &&
+			cameraWidth == mCameraWidth && cameraHeight == mCameraHeight &&
+			textureWidth == mTextureWidth && textureHeight == mTextureHeight &&
+			viewportWidth == mViewportWidth && viewportHeight == mViewportHeight)
+		{
+			return false;
+		}
+
+		mCameraWidth = cameraWidth;
+		mCameraHeight = cameraHeight;
+		mTextureWidth = textureWidth;
+		mTextureHeight = textureHeight;
+		mViewportWidth = viewportWidth;
+		mViewportHeight = Math.max(1, viewportHeight);
+
+		for (int rotation = 0; rotation < 4; ++rotation)
+			computeRotation(rotation);
+
+		mValid = true;
+		return true;
+	}
+
+	private void computeRotation(int rotation)
+	{
+		final float xRatio = (float)mCameraWidth / mTextureWidth;
+		final float yRatio = (float)mCameraHeight / mTextureHeight;
+
+		// The camera image is rendered with +-90 degrees rotation in portrait orientations, so its
+		// aspect ratio on screen is inverted
+		final boolean cameraIsRotated = rotation == ROTATION_90 || rotation == ROTATION_270;
+		final float cameraAspect = cameraIsRotated ?
+			(float)mCameraHeight / mCameraWidth : (float)mCameraWidth / mCameraHeight;
+		final float screenAspect = (float)mViewportWidth / mViewportHeight;
+
+		// Cropping offsets in texture space and quad size in screen space
+		float offsetX = 0, offsetY = 0;
+		float quadScaleX = 1, quadScaleY = 1;
+		float scaleX = 1, scaleY = 1;
+
+		switch (mScaleMode)
+		{
+			case FILL:
+				if (cameraAspect > screenAspect)
+				{
+					// Camera image is wider (e.g. 480x640 camera image vs. a 480x800 device,
+					// example in portrait mode), so crop the width of the camera image
+					offsetX = 0.5f * (1 - screenAspect / cameraAspect);
+					scaleX = cameraAspect / screenAspect;
+				}
+				else
+				{
+					// Screen is wider, so crop the height of the camera image
+					offsetY = 0.5f * (1 - cameraAspect / screenAspect);
+					scaleY = screenAspect / cameraAspect;
+				}
+				break;
+
+			case LETTERBOX:
+				if (cameraAspect > screenAspect)
+				{
+					// Camera image is wider, so add bars above and below
+					quadScaleY = screenAspect / cameraAspect;
+					scaleY = quadScaleY;
+				}
+				else
+				{
+					// Screen is wider, so add bars left and right
+					quadScaleX = cameraAspect / screenAspect;
+					scaleX = quadScaleX;
+				}
+				break;
+
+			case FIT:
+				break;
+		}
+
+		mScaleX[rotation] = scaleX;
+		mScaleY[rotation] = scaleY;
+
+		if (cameraIsRotated)
+		{
+			// Offsets and quad size were computed in screen space, but are applied before rotation
+			float tmp = offsetX;
+			offsetX = offsetY;
+			offsetY = tmp;
+
+			tmp = quadScaleX;
+			quadScaleX = quadScaleY;
+			quadScaleY = tmp;
+		}
+
+		mOffsetX[rotation] = offsetX;
+		mOffsetY[rotation] = offsetY;
+		mQuadScaleX[rotation] = quadScaleX;
+		mQuadScaleY[rotation] = quadScaleY;
+
+		final float cos = getCos(rotation);
+		final float sin = getSin(rotation);
+
+		// Texture coordinates: offsetX/offsetY are for cropping if camera and screen aspect ratios
+		// differ. xRatio/yRatio are here because the OpenGL texture may be larger than the camera
+		// image (e.g. camera image 640x480 vs. texture size 1024x512).
+		for (int i = 0; i < VERTEX_COUNT; ++i)
+		{
+			final float x = CORNERS[2*i] * quadScaleX;
+			final float y = CORNERS[2*i+1] * quadScaleY;
+			final int base = i * FLOATS_PER_VERTEX;
+
+			mScratch[base] = x * cos - y * sin;
+			mScratch[base+1] = x * sin + y * cos;
+			mScratch[base+2] = 0;
+
+			// Left corners start at the crop offset, bottom corners (y = -1) sample the last row
+			final float u = CORNERS[2*i] < 0 ? offsetX : 1 - offsetX;
+			final float v = CORNERS[2*i+1] < 0 ? 1 - offsetY : offsetY;
+			mScratch[base+3] = u * xRatio;
+			mScratch[base+4] = v * yRatio;
+		}
+
+		mTable.position(rotation * VERTEX_COUNT * FLOATS_PER_VERTEX);
+		mTable.put(mScratch);
+		mTable.rewind();
+	}
+
+	/**
+	 * Compute the interleaved table for one tile of a camera image that is split over several
+	 * textures. The layout must have been updated with texture size == camera size.
+	 *
+	 * @param rotation Screen rotation index
+	 * @param u0 Left edge of the tile as fraction of the camera image width
+	 * @param v0 Top edge of the tile as fraction of the camera image height
+	 * @param u1 Right edge of the tile
+	 * @param v1 Bottom edge of the tile
+	 * @param maxU Texture coordinate of the tile's right edge in its texture (tile width / texture width)
+	 * @param maxV Texture coordinate of the tile's bottom edge in its texture
+	 * @param table Destination, VERTEX_COUNT * FLOATS_PER_VERTEX floats are written at its position
+	 * @return false if the tile is cropped away completely (nothing is written then)
+	 */
+	public boolean computeTile(int rotation, float u0, float v0, float u1, float v1, float maxU, float maxV,
+		FloatBuffer table)
+	{
+		final float offsetX = mOffsetX[rotation];
+		final float offsetY = mOffsetY[rotation];
+
+		// Part of the tile that lies in the visible (not cropped) region of the camera image
+		final float visibleU0 = Math.max(u0, offsetX);
+		final float visibleU1 = Math.min(u1, 1 - offsetX);
+		final float visibleV0 = Math.max(v0, offsetY);
+		final float visibleV1 = Math.min(v1, 1 - offsetY);
+
+		if (visibleU0 >= visibleU1 || visibleV0 >= visibleV1)
+			return false;
+
+		final float cos = getCos(rotation);
+		final float sin = getSin(rotation);
+
+		for (int i = 0; i < VERTEX_COUNT; ++i)
+		{
+			final float u = CORNERS[2*i] < 0 ? visibleU0 : visibleU1;
+			final float v = CORNERS[2*i+1] < 0 ? visibleV1 : visibleV0;
+
+			// Map from the visible image region to [-1, 1], top of the image is at y = 1
+			final float x = (-1 + 2 * (u - offsetX) / (1 - 2 * offsetX)) * mQuadScaleX[rotation];
+			final float y = (1 - 2 * (v - offsetY) / (1 - 2 * offsetY)) * mQuadScaleY[rotation];
+			final int base = i * FLOATS_PER_VERTEX;
+
+			mScratch[base] = x * cos - y * sin;
+			mScratch[base+1] = x * sin + y * cos;
+			mScratch[base+2] = 0;
+			mScratch[base+3] = (u - u0) / (u1 - u0) * maxU;
+			mScratch[base+4] = (v - v0) / (v1 - v0) * maxV;
+		}
+
+		table.put(mScratch);
+		return true;
+	}
+
+	/**
+	 * Rotation applied to the camera quad: Portrait (270) is rotated by -90 degrees, reverse
+	 * portrait (90) by +90 degrees and reverse landscape by 180 degrees
+	 */
+	private static float getCos(int rotation)
+	{
+		return rotation == ROTATION_0 ? 1 : (rotation == ROTATION_180 ? -1 : 0);
+	}
+
+	private static float getSin(int rotation)
+	{
+		return rotation == ROTATION_90 ? 1 : (rotation == ROTATION_270 ? -1 : 0);
+	}
+}
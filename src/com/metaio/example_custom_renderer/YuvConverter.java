@@ -0,0 +1,298 @@
+package com.metaio.example_custom_renderer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Converts YUV420SP (NV21) camera frames to RGBA or RGB565. The image is split into horizontal
+ * stripes which are converted in parallel by a fixed set of worker threads and the calling thread.
+ * No objects are allocated per frame.
+ */
+public final class YuvConverter
+{
+	/**
+	 * GL reads GL_UNSIGNED_SHORT_5_6_5 pixels in native byte order
+	 */
+	private static final boolean NATIVE_LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+	/**
+	 * Buffer to read the NV21 frame from (Y plane followed by interleaved V/U plane)
+	 */
+	private ByteBuffer mSource;
+
+	/**
+	 * Buffer to write pixels to (no row padding)
+	 */
+	private ByteBuffer mDestination;
+
+	private CameraImageRenderer.UploadFormat mFormat;
+
+	private int mWidth;
+
+	private int mHeight;
+
+	/**
+	 * Number of stripes the image is split into (workers + calling thread)
+	 */
+	private final int mStripeCount;
+
+	private final Worker[] mWorkers;
+
+	private final Object mLock = new Object();
+
+	/**
+	 * Incremented for every frame so that workers know when there is new work
+	 */
+	private int mGeneration = 0;
+
+	/**
+	 * Number of workers which have not finished their stripe of the current frame yet
+	 */
+	private int mPendingWorkers = 0;
+
+	private boolean mReleased = false;
+
+	public YuvConverter()
+	{
+		this(Math.min(4, Runtime.getRuntime().availableProcessors()));
+	}
+
+	public YuvConverter(int stripeCount)
+	{
+		mStripeCount = Math.max(1, stripeCount);
+
+		// The calling thread converts the first stripe itself
+		mWorkers = new Worker[mStripeCount - 1];
+		for (int i = 0; i < mWorkers.length; ++i)
+		{
+			mWorkers[i] = new Worker(i + 1);
+			mWorkers[i].start();
+		}
+	}
+
+	/**
+	 * Convert an NV21 frame to RGBA. Blocks until all stripes are done.
+	 *
+	 * @param source NV21 data of size width*height*3/2, read with absolute accesses
+	 * @param destination RGBA target of size width*height*4, written with absolute accesses
+	 * @param width Frame width (must be even)
+	 * @param height Frame height (must be even)
+	 */
+	public void convert(ByteBuffer source, ByteBuffer destination, int width, int height)
+	{
+		convert(source, destination, width, height, CameraImageRenderer.UploadFormat.RGBA);
+	}
+
+	/**
+	 * Same as convert() with the given destination format
+	 *
+	 * @param format RGBA or RGB565 (the luminance is just the Y plane, it needs no conversion)
+	 */
+	public void convert(ByteBuffer source, ByteBuffer destination, int width, int height,
+		CameraImageRenderer.UploadFormat format)
+	{
+		if (mReleased)
+			throw new IllegalStateException("YuvConverter already released");
+
+		if (format == CameraImageRenderer.UploadFormat.LUMINANCE)
+			throw new IllegalArgumentException("Luminance needs no conversion, copy the Y plane instead");
+
+		mFormat = format;
+		mSource = source;
+		mDestination = destination;
+		mWidth = width;
+		mHeight = height;
+
+		if (mWorkers.length == 0)
+		{
+			convertStripe(0);
+			return;
+		}
+
+		synchronized (mLock)
+		{
+			++mGeneration;
+			mPendingWorkers = mWorkers.length;
+			mLock.notifyAll();
+		}
+
+		convertStripe(0);
+
+		// The workers still write into destination, so an interrupt must not end the wait early
+		boolean interrupted = false;
+		synchronized (mLock)
+		{
+			while (mPendingWorkers > 0)
+			{
+				try
+				{
+					mLock.wait();
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+				}
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Stop the worker threads. The converter cannot be used afterwards.
+	 */
+	public void release()
+	{
+		synchronized (mLock)
+		{
+			mReleased = true;
+			mLock.notifyAll();
+		}
+	}
+
+	private void convertStripe(int stripe)
+	{
+		// Stripes always start on an even row because two Y rows share one row of chroma samples
+		final int rowPairs = mHeight / 2;
+		final int firstRow = 2 * (rowPairs * stripe / mStripeCount);
+		final int endRow = 2 * (rowPairs * (stripe + 1) / mStripeCount);
+
+		if (mFormat == CameraImageRenderer.UploadFormat.RGB565)
+			convertRowsRgb565(mSource, mDestination, mWidth, mHeight, firstRow, endRow);
+		else
+			convertRows(mSource, mDestination, mWidth, mHeight, firstRow, endRow);
+	}
+
+	/**
+	 * Convert rows [firstRow, endRow) using fixed-point BT.601 coefficients. The destination
+	 * buffer must use big endian byte order so that the written ints end up as R, G, B, A bytes.
+	 */
+	static void convertRows(ByteBuffer src, ByteBuffer dst, int width, int height, int firstRow, int endRow)
+	{
+		final int frameSize = width * height;
+
+		for (int row = firstRow; row < endRow; ++row)
+		{
+			int yIndex = row * width;
+			int uvIndex = frameSize + (row >> 1) * width;
+			int dstIndex = yIndex * 4;
+			int u = 0, v = 0;
+
+			for (int col = 0; col < width; ++col, ++yIndex, dstIndex += 4)
+			{
+				int y = (src.get(yIndex) & 0xff) - 16;
+				if (y < 0)
+					y = 0;
+
+				if ((col & 1) == 0)
+				{
+					v = (src.get(uvIndex++) & 0xff) - 128;
+					u = (src.get(uvIndex++) & 0xff) - 128;
+				}
+
+				final int y1192 = 1192 * y;
+				int r = y1192 + 1634 * v;
+				int g = y1192 - 833 * v - 400 * u;
+				int b = y1192 + 2066 * u;
+
+				if (r < 0) r = 0; else if (r > 262143) r = 262143;
+				if (g < 0) g = 0; else if (g > 262143) g = 262143;
+				if (b < 0) b = 0; else if (b > 262143) b = 262143;
+
+				dst.putInt(dstIndex, ((r << 14) & 0xff000000) | ((g << 6) & 0xff0000) | ((b >> 2) & 0xff00) | 0xff);
+			}
+		}
+	}
+
+	/**
+	 * Same as convertRows() with RGB565 output, 2 bytes per pixel in native byte order
+	 */
+	static void convertRowsRgb565(ByteBuffer src, ByteBuffer dst, int width, int height, int firstRow, int endRow)
+	{
+		final int frameSize = width * height;
+
+		for (int row = firstRow; row < endRow; ++row)
+		{
+			int yIndex = row * width;
+			int uvIndex = frameSize + (row >> 1) * width;
+			int dstIndex = yIndex * 2;
+			int u = 0, v = 0;
+
+			for (int col = 0; col < width; ++col, ++yIndex, dstIndex += 2)
+			{
+				int y = (src.get(yIndex) & 0xff) - 16;
+				if (y < 0)
+					y = 0;
+
+				if ((col & 1) == 0)
+				{
+					v = (src.get(uvIndex++) & 0xff) - 128;
+					u = (src.get(uvIndex++) & 0xff) - 128;
+				}
+
+				final int y1192 = 1192 * y;
+				int r = y1192 + 1634 * v;
+				int g = y1192 - 833 * v - 400 * u;
+				int b = y1192 + 2066 * u;
+
+				if (r < 0) r = 0; else if (r > 262143) r = 262143;
+				if (g < 0) g = 0; else if (g > 262143) g = 262143;
+				if (b < 0) b = 0; else if (b > 262143) b = 262143;
+
+				// 18 bit channels to 5/6/5 bits
+				final short pixel = (short)(((r >> 2) & 0xf800) | ((g >> 7) & 0x07e0) | (b >> 13));
+				dst.putShort(dstIndex, NATIVE_LITTLE_ENDIAN ? Short.reverseBytes(pixel) : pixel);
+			}
+		}
+	}
+
+	private final class Worker extends Thread
+	{
+		private final int mStripe;
+
+		Worker(int stripe)
+		{
+			super("YuvConverter-" + stripe);
+			mStripe = stripe;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run()
+		{
+			int seenGeneration = 0;
+
+			while (true)
+			{
+				synchronized (mLock)
+				{
+					while (mGeneration == seenGeneration && !mReleased)
+					{
+						try
+						{
+							mLock.wait();
+						}
+						catch (InterruptedException e)
+						{
+							return;
+						}
+					}
+
+					if (mReleased)
+						return;
+
+					seenGeneration = mGeneration;
+				}
+
+				convertStripe(mStripe);
+
+				synchronized (mLock)
+				{
+					if (--mPendingWorkers == 0)
+						mLock.notifyAll();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,322 @@
+package com.metaio.example_custom_renderer;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import org.junit.Test;
+
+/**
+ * The pure Java parts of a steady-state frame must not allocate. Runs each part warmed up and
+ * counts the bytes the test thread allocated, on the host instead of AllocationMonitor on the
+ * device. Escape analysis is disabled in host/pom.xml, since ART would not remove allocations
+ * either.
+ */
+public class FrameAllocationTest
+{
+	/**
+	 * GL10 that counts the calls a frame makes instead of recording them, GLRecorder's proxy
+	 * allocates per call. Other calls go to the headless recorder.
+	 */
+	private static final class CountingGL extends ForwardingGL10
+	{
+		int calls;
+
+		CountingGL()
+		{
+			super((GL10)new GLRecorder(null).getGL());
+		}
+
+		@Override
+		public void glActiveTexture(int texture)
+		{
+			++calls;
+		}
+
+		@Override
+		public void glBindBuffer(int target, int buffer)
+		{
+			++calls;
+		}
+
+		@Override
+		public void glBindTexture(int target, int texture)
+		{
+			++calls;
+		}
+
+		@Override
+		public void glColorPointer(int size, int type, int stride, int offset)
+		{
+			++calls;
+		}
+
+		@Override
+		public void glDisable(int cap)
+		{
+			++calls;
+		}
+
+		@Override
+		public void glDisableClientState(int array)
+		{
+			++calls;
+		}
+
+		@Override
+		public void glDrawArrays(int mode, int first, int count)
+		{
+			++calls;
+		}
+
+		@Override
+		public void glEnable(int cap)
+		{
+			++calls;
+		}
+
+		@Override
+		public void glEnableClientState(int array)
+		{
+			++calls;
+		}
+
+		@Override
+		public void glLoadIdentity()
+		{
+			++calls;
+		}
+
+		@Override
+		public void glMatrixMode(int mode)
+		{
+			++calls;
+		}
+
+		@Override
+		public void glTexEnvx(int target, int pname, int param)
+		{
+			++calls;
+		}
+
+		@Override
+		public void glVertexPointer(int size, int type, int stride, int offset)
+		{
+			++calls;
+		}
+	}
+
+	private static final int WARM_UP_FRAMES = 20000;
+
+	private static final int FRAMES = 10000;
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+		(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Run frame warmed up and check that it allocates nothing, i.e. less than a byte per frame on
+	 * top of what the measurement itself allocates
+	 */
+	private static void assertNoAllocations(String name, Runnable frame)
+	{
+		assumeTrue(THREADS.isThreadAllocatedMemorySupported());
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+
+		final Runnable empty = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+			}
+		};
+
+		for (int i = 0; i < WARM_UP_FRAMES; ++i)
+			frame.run();
+
+		final long allocated = measure(frame) - measure(empty);
+		assertTrue(name + " allocated " + allocated + " bytes in " + FRAMES + " frames", allocated < FRAMES);
+	}
+
+	private static long measure(Runnable frame)
+	{
+		final long threadId = Thread.currentThread().getId();
+		final long start = THREADS.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < FRAMES; ++i)
+			frame.run();
+		return THREADS.getThreadAllocatedBytes(threadId) - start;
+	}
+
+	/**
+	 * Rigid pose slowly moving in front of the camera
+	 */
+	private static void getPose(int frame, float[] result)
+	{
+		final float angle = frame * 0.01f;
+		result[0] = (float)Math.cos(angle);
+		result[1] = (float)Math.sin(angle);
+		result[4] = -result[1];
+		result[5] = result[0];
+		result[10] = 1;
+		result[12] = 10 * (float)Math.sin(angle);
+		result[14] = -500;
+		result[15] = 1;
+	}
+
+	@Test
+	public void viewportLayout()
+	{
+		final ViewportLayout layout = new ViewportLayout();
+		assertNoAllocations("ViewportLayout", new Runnable()
+		{
+			float mScale;
+
+			@Override
+			public void run()
+			{
+				layout.update(1280, 720, 2048, 1024, 1920, 1080);
+				mScale += layout.getScaleX(ViewportLayout.ROTATION_0) * layout.getScaleY(ViewportLayout.ROTATION_0);
+			}
+		});
+	}
+
+	@Test
+	public void frameRing()
+	{
+		final FrameRing frames = new FrameRing(640 * 480, FrameRing.DropPolicy.DROP_OLDEST);
+		final ByteBuffer image = ByteBuffer.allocateDirect(640 * 480);
+		assertNoAllocations("FrameRing", new Runnable()
+		{
+			long mTime;
+
+			@Override
+			public void run()
+			{
+				final ByteBuffer buffer = frames.beginWrite();
+				image.clear();
+				buffer.put(image);
+				frames.publish(++mTime);
+				if (frames.consume())
+					frames.getFrontBuffer().get(0);
+			}
+		});
+	}
+
+	@Test
+	public void posePredictor()
+	{
+		final PosePredictor posePredictor = new PosePredictor();
+		assertNoAllocations("PosePredictor", new Runnable()
+		{
+			int mFrame;
+
+			final float[] mPose = new float[16];
+
+			@Override
+			public void run()
+			{
+				getPose(++mFrame, mPose);
+				final long time = mFrame * 33333333L;
+				posePredictor.addPose(time, mPose);
+				posePredictor.predict(time + 16666666, mPose);
+			}
+		});
+	}
+
+	@Test
+	public void playbackController()
+	{
+		final PlaybackController playbackController = new PlaybackController();
+		assertNoAllocations("PlaybackController", new Runnable()
+		{
+			int mFrame;
+
+			final float[] mPose = new float[16];
+
+			@Override
+			public void run()
+			{
+				getPose(++mFrame, mPose);
+
+				// Short losses and long ones that hide the target
+				final boolean tracked = mFrame % 7 != 0 && mFrame % 200 >= 50;
+				playbackController.update(tracked, mPose, mFrame * 33333333L, mFrame * 33333333L);
+				if (playbackController.isVisible())
+					playbackController.getPose();
+			}
+		});
+	}
+
+	@Test
+	public void overlayCuller()
+	{
+		final OverlayCuller overlayCuller = new OverlayCuller(new float[] {
+			-40, -40, 40,
+			 40, -40, 40,
+			-40,  40, 40,
+			 40,  40, 40
+		});
+		overlayCuller.setViewportSize(1920, 1080);
+		overlayCuller.setProjection(new float[] {
+			1, 0, 0, 0,
+			0, 1, 0, 0,
+			0, 0, -1.002f, -1,
+			0, 0, -20.02f, 0
+		}, 1, 1);
+
+		assertNoAllocations("OverlayCuller", new Runnable()
+		{
+			int mFrame;
+
+			int mVisible;
+
+			final float[] mPose = new float[16];
+
+			@Override
+			public void run()
+			{
+				getPose(++mFrame, mPose);
+				if (overlayCuller.isVisible(mPose, 0))
+					++mVisible;
+			}
+		});
+	}
+
+	@Test
+	public void glStateCache()
+	{
+		final CountingGL counter = new CountingGL();
+		final GL10 gl = new GLStateCache(counter);
+		final MeshRegistry meshes = new MeshRegistry(new GpuResourceRegistry());
+		meshes.onSurfaceCreated(gl);
+		final Cube cube = new Cube(meshes);
+		final int[] textures = {1, 2};
+
+		assertNoAllocations("GLStateCache", new Runnable()
+		{
+			int mFrame;
+
+			@Override
+			public void run()
+			{
+				// State changes of the camera image and the overlays
+				gl.glActiveTexture(GL10.GL_TEXTURE0);
+				gl.glEnable(GL10.GL_TEXTURE_2D);
+				gl.glBindTexture(GL10.GL_TEXTURE_2D, textures[++mFrame & 1]);
+				gl.glTexEnvx(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE, GL10.GL_REPLACE);
+				gl.glMatrixMode(GL10.GL_PROJECTION);
+				gl.glLoadIdentity();
+				gl.glMatrixMode(GL10.GL_MODELVIEW);
+				gl.glLoadIdentity();
+				gl.glTexEnvx(GL10.GL_TEXTURE_ENV, GL10.GL_TEXTURE_ENV_MODE, GL10.GL_MODULATE);
+				gl.glDisable(GL10.GL_TEXTURE_2D);
+				cube.render(gl);
+			}
+		});
+
+		assertTrue(counter.calls > 0);
+	}
+}
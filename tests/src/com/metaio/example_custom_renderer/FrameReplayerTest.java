@@ -0,0 +1,102 @@
+package com.metaio.example_custom_renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.metaio.sdk.jni.ECOLOR_FORMAT;
+import com.metaio.sdk.jni.ImageStruct;
+
+public class FrameReplayerTest
+{
+	private File mFile;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		mFile = File.createTempFile("recording", ".bin");
+	}
+
+	@After
+	public void tearDown()
+	{
+		mFile.delete();
+		new File(mFile.getPath() + RecordingFormat.INDEX_SUFFIX).delete();
+	}
+
+	private static ImageStruct frame(int width, int height, byte value)
+	{
+		final ByteBuffer data = ByteBuffer.allocate(width * height * 3 / 2);
+		for (int i = 0; i < data.capacity(); ++i)
+			data.put(i, value);
+		return new ImageStruct(data, width, height, ECOLOR_FORMAT.ECF_YUV420SP, true);
+	}
+
+	@Test
+	public void replaysWhatWasRecorded() throws IOException
+	{
+		final float[] projection = new float[16];
+		final float[] models = new float[32];
+		for (int i = 0; i < 16; ++i)
+		{
+			projection[i] = i;
+			models[16 + i] = 100 + i;
+		}
+
+		final FrameRecorder recorder = new FrameRecorder(mFile);
+		recorder.recordFrame(frame(8, 4, (byte)7), 1000);
+		recorder.recordTracking(2000, new boolean[] { false, true }, models, projection);
+		recorder.close();
+
+		final FrameReplayer replayer = new FrameReplayer(mFile);
+		try
+		{
+			assertEquals(2, replayer.getRecordCount());
+
+			assertTrue(replayer.next());
+			assertEquals(RecordingFormat.TYPE_FRAME, replayer.getType());
+			assertEquals(1000, replayer.getTimestamp());
+			assertEquals(8, replayer.getFrameWidth());
+			assertEquals(4, replayer.getFrameHeight());
+			assertEquals(ECOLOR_FORMAT.ECF_YUV420SP,
+				ECOLOR_FORMAT.swigToEnum(replayer.getFrameColorFormat()));
+			assertTrue(replayer.isFrameOriginUpperLeft());
+			final ByteBuffer data = replayer.getFrameData();
+			assertEquals(8 * 4 * 3 / 2, data.remaining());
+			assertEquals(7, data.get(0));
+
+			assertTrue(replayer.next());
+			assertEquals(RecordingFormat.TYPE_TRACKING, replayer.getType());
+			assertEquals(2, replayer.getTargetCount());
+			assertFalse(replayer.isTracked(0));
+			assertTrue(replayer.isTracked(1));
+
+			final float[] matrix = new float[16];
+			replayer.getProjectionMatrix(matrix);
+			assertEquals(15, matrix[15], 0);
+			replayer.getModelMatrix(1, matrix, 0);
+			assertEquals(100, matrix[0], 0);
+
+			assertFalse(replayer.next());
+		}
+		finally
+		{
+			replayer.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsOtherFiles() throws IOException
+	{
+		new File(mFile.getPath() + RecordingFormat.INDEX_SUFFIX).createNewFile();
+		new FrameReplayer(mFile);
+	}
+}
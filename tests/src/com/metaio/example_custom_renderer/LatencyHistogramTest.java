@@ -0,0 +1,69 @@
+package com.metaio.example_custom_renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest
+{
+	@Test
+	public void smallValuesHaveTheirOwnBucket()
+	{
+		for (int micros = 0; micros < 8; ++micros)
+		{
+			assertEquals(micros, LatencyHistogram.getBucket(micros));
+			assertEquals(micros, LatencyHistogram.getBucketLowerBound(micros));
+		}
+	}
+
+	@Test
+	public void lowerBoundFallsIntoItsBucket()
+	{
+		for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT; ++bucket)
+		{
+			final long lower = LatencyHistogram.getBucketLowerBound(bucket);
+			assertEquals("bucket " + bucket, bucket, LatencyHistogram.getBucket(lower));
+			if (bucket > 0)
+				assertEquals("bucket " + bucket, bucket - 1, LatencyHistogram.getBucket(lower - 1));
+		}
+	}
+
+	@Test
+	public void highestOctaveIsNotMergedWithThePreviousOne()
+	{
+		final int previousOctave = LatencyHistogram.getBucket((1L << 31) - 1);
+		final int highestOctave = LatencyHistogram.getBucket(1L << 31);
+		assertEquals(previousOctave + 1, highestOctave);
+		assertTrue(highestOctave < LatencyHistogram.OVERFLOW_BUCKET);
+		assertEquals(LatencyHistogram.OVERFLOW_BUCKET - 1, LatencyHistogram.getBucket((1L << 32) - 1));
+	}
+
+	@Test
+	public void longDurationsOverflow()
+	{
+		assertEquals(LatencyHistogram.OVERFLOW_BUCKET, LatencyHistogram.getBucket(1L << 32));
+		assertEquals(LatencyHistogram.OVERFLOW_BUCKET, LatencyHistogram.getBucket(Long.MAX_VALUE));
+		assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.OVERFLOW_BUCKET);
+	}
+
+	@Test
+	public void percentileOfDrainedCounts()
+	{
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 0; i < 99; ++i)
+			histogram.record(1000000L);
+		histogram.record(100000000L);
+
+		final int[] counts = new int[LatencyHistogram.BUCKET_COUNT];
+		final int total = histogram.drain(counts);
+		assertEquals(100, total);
+
+		final long median = LatencyHistogram.getPercentile(counts, total, 50);
+		assertTrue(median >= 1000 * 7 / 8 && median <= 1000 * 9 / 8);
+
+		final long max = LatencyHistogram.getPercentile(counts, total, 100);
+		assertTrue(max >= 100000 * 7 / 8 && max <= 100000 * 9 / 8);
+		assertEquals(100000, histogram.drainMaxMicros());
+	}
+}
@@ -0,0 +1,69 @@
+package com.metaio.example_custom_renderer;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class MeshRegistryTest
+{
+	private static final float[] TRIANGLE = {
+		0, 0, 0,
+		1, 0, 0,
+		0, 1, 0
+	};
+
+	private MeshRegistry mMeshes;
+
+	private GLRecorder mRecorder;
+
+	private GpuResourceRegistry mResources;
+
+	private GL10 mGL;
+
+	@Before
+	public void setUp()
+	{
+		mRecorder = new GLRecorder(null);
+		mGL = new GLStateCache(mRecorder.getGL());
+		mResources = new GpuResourceRegistry();
+		mMeshes = new MeshRegistry(mResources);
+		mMeshes.onSurfaceCreated(mGL);
+	}
+
+	@Test
+	public void bufferCallsPassTheWrappers()
+	{
+		final MeshRegistry.Mesh mesh = mMeshes.register(GL10.GL_TRIANGLES, 0, TRIANGLE);
+
+		mMeshes.bind(mGL, mesh);
+		mMeshes.draw(mGL, mesh);
+		mMeshes.unbind(mGL, mesh);
+
+		assertEquals(1, mRecorder.getCallCount("glGenBuffers"));
+		assertEquals(1, mRecorder.getCallCount("glBufferData"));
+		assertEquals(2, mRecorder.getCallCount("glBindBuffer"));
+		assertEquals(1, mRecorder.getCallCount("glVertexPointer"));
+		assertEquals(TRIANGLE.length * 4, mRecorder.getUploadedBytes());
+		assertEquals(1, mResources.getCount());
+	}
+
+	@Test
+	public void meshesAreUploadedOncePerContext()
+	{
+		final MeshRegistry.Mesh mesh = mMeshes.register(GL10.GL_TRIANGLES, 0, TRIANGLE);
+		for (int i = 0; i < 3; ++i)
+		{
+			mMeshes.bind(mGL, mesh);
+			mMeshes.unbind(mGL, mesh);
+		}
+		assertEquals(1, mRecorder.getCallCount("glBufferData"));
+
+		mResources.onContextLost();
+		mMeshes.onSurfaceCreated(mGL);
+		mMeshes.bind(mGL, mesh);
+		assertEquals(2, mRecorder.getCallCount("glBufferData"));
+	}
+}
@@ -0,0 +1,181 @@
+package com.metaio.example_custom_renderer;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OverlayCullerTest
+{
+	private static final float NEAR = 10;
+
+	private static final float FAR = 1000000;
+
+	/**
+	 * 80 x 80 quad in the XY plane, like the video overlays
+	 */
+	private static final float[] CORNERS = {
+		-40, -40, 0,
+		 40, -40, 0,
+		-40,  40, 0,
+		 40,  40, 0
+	};
+
+	private OverlayCuller mCuller;
+
+	/**
+	 * Column-major right-handed perspective projection with a field of view of 90 degrees
+	 */
+	private static float[] projection()
+	{
+		return new float[] {
+			1, 0, 0, 0,
+			0, 1, 0, 0,
+			0, 0, (FAR + NEAR) / (NEAR - FAR), -1,
+			0, 0, 2 * FAR * NEAR / (NEAR - FAR), 0
+		};
+	}
+
+	private static float[] translation(float x, float y, float z)
+	{
+		return new float[] {
+			1, 0, 0, 0,
+			0, 1, 0, 0,
+			0, 0, 1, 0,
+			x, y, z, 1
+		};
+	}
+
+	@Before
+	public void setUp()
+	{
+		mCuller = new OverlayCuller(CORNERS);
+		mCuller.setViewportSize(1000, 1000);
+		mCuller.setProjection(projection(), 1, 1);
+	}
+
+	@Test
+	public void insideIsVisible()
+	{
+		assertTrue(mCuller.isVisible(translation(0, 0, -500), 0));
+	}
+
+	@Test
+	public void matrixOffsetIsUsed()
+	{
+		final float[] matrices = new float[32];
+		System.arraycopy(translation(0, 0, 500), 0, matrices, 0, 16);
+		System.arraycopy(translation(0, 0, -500), 0, matrices, 16, 16);
+		assertFalse(mCuller.isVisible(matrices, 0));
+		assertTrue(mCuller.isVisible(matrices, 16));
+	}
+
+	@Test
+	public void outsideLeftIsCulled()
+	{
+		assertFalse(mCuller.isVisible(translation(-2000, 0, -500), 0));
+	}
+
+	@Test
+	public void outsideRightIsCulled()
+	{
+		assertFalse(mCuller.isVisible(translation(2000, 0, -500), 0));
+	}
+
+	@Test
+	public void outsideBottomIsCulled()
+	{
+		assertFalse(mCuller.isVisible(translation(0, -2000, -500), 0));
+	}
+
+	@Test
+	public void outsideTopIsCulled()
+	{
+		assertFalse(mCuller.isVisible(translation(0, 2000, -500), 0));
+	}
+
+	@Test
+	public void closerThanNearPlaneIsCulled()
+	{
+		assertFalse(mCuller.isVisible(translation(0, 0, -NEAR / 2), 0));
+	}
+
+	@Test
+	public void beyondFarPlaneIsCulled()
+	{
+		assertFalse(mCuller.isVisible(translation(0, 0, -2 * FAR), 0));
+	}
+
+	@Test
+	public void behindCameraIsCulled()
+	{
+		assertFalse(mCuller.isVisible(translation(0, 0, 500), 0));
+	}
+
+	@Test
+	public void straddlingViewportEdgeIsVisible()
+	{
+		// Spans -1.08..-0.92 in normalized device coordinates
+		assertTrue(mCuller.isVisible(translation(-500, 0, -500), 0));
+	}
+
+	@Test
+	public void straddlingCameraPlaneIsVisible()
+	{
+		// Rotated by 90 degrees about X, so that the quad extends from 20 behind to 60 in front of
+		// the camera
+		final float[] model = {
+			1, 0, 0, 0,
+			0, 0, 1, 0,
+			0, -1, 0, 0,
+			0, -20, -20, 1
+		};
+		assertTrue(mCuller.isVisible(model, 0));
+	}
+
+	@Test
+	public void subPixelIsCulled()
+	{
+		// 80 units at a distance of 100000 are 0.4 pixels
+		assertFalse(mCuller.isVisible(translation(0, 0, -100000), 0));
+		// ... and 2 pixels at 20000
+		assertTrue(mCuller.isVisible(translation(0, 0, -20000), 0));
+	}
+
+	@Test
+	public void minPixelsIsUsed()
+	{
+		mCuller.setMinPixels(4);
+		assertFalse(mCuller.isVisible(translation(0, 0, -20000), 0));
+	}
+
+	@Test
+	public void scaleAppliesToSubPixelThreshold()
+	{
+		// 1.6 pixels without scaling
+		final float[] model = translation(0, 0, -25000);
+		assertTrue(mCuller.isVisible(model, 0));
+
+		mCuller.setProjection(projection(), 0.5f, 0.5f);
+		assertFalse(mCuller.isVisible(model, 0));
+
+		mCuller.setProjection(projection(), 2, 2);
+		assertTrue(mCuller.isVisible(model, 0));
+	}
+
+	@Test
+	public void scaleAppliesToViewportBounds()
+	{
+		// Spans 1.12..1.28 in normalized device coordinates without scaling
+		final float[] model = translation(600, 0, -500);
+		assertFalse(mCuller.isVisible(model, 0));
+
+		mCuller.setProjection(projection(), 0.5f, 1);
+		assertTrue(mCuller.isVisible(model, 0));
+
+		// Scaling Y does not move the overlay horizontally
+		mCuller.setProjection(projection(), 1, 0.5f);
+		assertFalse(mCuller.isVisible(model, 0));
+	}
+}
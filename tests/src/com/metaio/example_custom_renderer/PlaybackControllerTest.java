@@ -0,0 +1,73 @@
+package com.metaio.example_custom_renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PlaybackControllerTest
+{
+	private static final long MILLIS = 1000000L;
+
+	private static final long CAMERA_FRAME_NANOS = 33 * MILLIS;
+
+	private static final float[] POSE = new float[16];
+
+	private PlaybackController mController;
+
+	@Before
+	public void setUp()
+	{
+		mController = new PlaybackController();
+		mController.setReacquireFrames(3);
+		mController.setLossGraceNanos(500 * MILLIS);
+	}
+
+	@Test
+	public void shownAfterConsecutiveTrackedCameraFrames()
+	{
+		mController.update(true, POSE, 1 * CAMERA_FRAME_NANOS, 1 * CAMERA_FRAME_NANOS);
+		mController.update(true, POSE, 2 * CAMERA_FRAME_NANOS, 2 * CAMERA_FRAME_NANOS);
+		assertEquals(PlaybackController.State.ACQUIRING, mController.getState());
+
+		mController.update(true, POSE, 3 * CAMERA_FRAME_NANOS, 3 * CAMERA_FRAME_NANOS);
+		assertTrue(mController.isVisible());
+		assertEquals(1, mController.getTransitions());
+	}
+
+	@Test
+	public void cameraFrameRenderedAgainCountsOnce()
+	{
+		// One camera frame drawn at several render frames, e.g. for new video frames
+		for (int i = 0; i < 10; ++i)
+			mController.update(true, POSE, CAMERA_FRAME_NANOS, CAMERA_FRAME_NANOS + i * MILLIS);
+		assertEquals(PlaybackController.State.ACQUIRING, mController.getState());
+
+		mController.update(true, POSE, 2 * CAMERA_FRAME_NANOS, 2 * CAMERA_FRAME_NANOS);
+		mController.update(true, POSE, 2 * CAMERA_FRAME_NANOS, 2 * CAMERA_FRAME_NANOS + MILLIS);
+		assertFalse(mController.isVisible());
+
+		mController.update(true, POSE, 3 * CAMERA_FRAME_NANOS, 3 * CAMERA_FRAME_NANOS);
+		assertTrue(mController.isVisible());
+	}
+
+	@Test
+	public void gracePeriodRunsWithoutNewCameraFrames()
+	{
+		for (int frame = 1; frame <= 3; ++frame)
+			mController.update(true, POSE, frame * CAMERA_FRAME_NANOS, frame * CAMERA_FRAME_NANOS);
+
+		final long lostTime = 4 * CAMERA_FRAME_NANOS;
+		mController.update(false, POSE, lostTime, lostTime);
+		assertEquals(PlaybackController.State.HOLDING, mController.getState());
+
+		// The camera stalls, rendering continues
+		mController.update(false, POSE, lostTime, lostTime + 400 * MILLIS);
+		assertTrue(mController.isVisible());
+		mController.update(false, POSE, lostTime, lostTime + 600 * MILLIS);
+		assertFalse(mController.isVisible());
+		assertEquals(2, mController.getTransitions());
+	}
+}
@@ -0,0 +1,195 @@
+package com.metaio.example_custom_renderer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PosePredictorTest
+{
+	private static final float EPSILON = 1e-4f;
+
+	private static final long MILLIS = 1000000L;
+
+	/**
+	 * Column-major rigid transformation rotating by angle (degrees) about Z, then translating
+	 */
+	private static float[] pose(float angle, float x, float y, float z)
+	{
+		final float c = (float)Math.cos(Math.toRadians(angle));
+		final float s = (float)Math.sin(Math.toRadians(angle));
+		return new float[] {
+			c, s, 0, 0,
+			-s, c, 0, 0,
+			0, 0, 1, 0,
+			x, y, z, 1
+		};
+	}
+
+	private static void assertPose(float angle, float x, float y, float z, float[] actual)
+	{
+		final float[] expected = pose(angle, x, y, z);
+		for (int i = 0; i < 16; ++i)
+			assertEquals("element " + i, expected[i], actual[i], EPSILON);
+	}
+
+	private static float[] quaternionZ(float angle)
+	{
+		final double half = Math.toRadians(angle) / 2;
+		return new float[] { 0, 0, (float)Math.sin(half), (float)Math.cos(half) };
+	}
+
+	@Test
+	public void predictWithoutPoses()
+	{
+		final float[] result = new float[16];
+		assertFalse(new PosePredictor().predict(0, result));
+	}
+
+	@Test
+	public void singlePoseIsHeld()
+	{
+		final PosePredictor predictor = new PosePredictor();
+		predictor.addPose(10 * MILLIS, pose(30, 1, 2, 3));
+
+		final float[] result = new float[16];
+		assertTrue(predictor.predict(40 * MILLIS, result));
+		assertPose(30, 1, 2, 3, result);
+	}
+
+	@Test
+	public void extrapolatesTranslationLinearly()
+	{
+		final PosePredictor predictor = new PosePredictor();
+		predictor.addPose(0, pose(0, 0, 0, -100));
+		predictor.addPose(10 * MILLIS, pose(0, 1, 2, -100));
+		predictor.addPose(20 * MILLIS, pose(0, 2, 4, -100));
+
+		final float[] result = new float[16];
+		predictor.predict(30 * MILLIS, result);
+		assertPose(0, 3, 6, -100, result);
+	}
+
+	@Test
+	public void extrapolatesRotationAlongGreatCircle()
+	{
+		final PosePredictor predictor = new PosePredictor();
+		predictor.addPose(0, pose(0, 0, 0, -100));
+		predictor.addPose(10 * MILLIS, pose(10, 0, 0, -100));
+		predictor.addPose(20 * MILLIS, pose(20, 0, 0, -100));
+
+		final float[] result = new float[16];
+		predictor.predict(40 * MILLIS, result);
+		assertPose(40, 0, 0, -100, result);
+	}
+
+	@Test
+	public void predictionIsLimited()
+	{
+		final PosePredictor predictor = new PosePredictor();
+		predictor.setMaxPredictionNanos(10 * MILLIS);
+		predictor.addPose(0, pose(0, 0, 0, 0));
+		predictor.addPose(10 * MILLIS, pose(0, 1, 0, 0));
+
+		final float[] result = new float[16];
+		predictor.predict(100 * MILLIS, result);
+		assertPose(0, 2, 0, 0, result);
+	}
+
+	@Test
+	public void onlyPosesInVelocityWindowAreUsed()
+	{
+		final PosePredictor predictor = new PosePredictor();
+		predictor.setVelocityWindowNanos(15 * MILLIS);
+
+		// The first pose belongs to an older, faster motion
+		predictor.addPose(0, pose(0, -10, 0, 0));
+		predictor.addPose(20 * MILLIS, pose(0, 0, 0, 0));
+		predictor.addPose(30 * MILLIS, pose(0, 1, 0, 0));
+
+		final float[] result = new float[16];
+		predictor.predict(40 * MILLIS, result);
+		assertPose(0, 2, 0, 0, result);
+	}
+
+	@Test
+	public void identicalPoseIsIgnored()
+	{
+		final PosePredictor predictor = new PosePredictor();
+		predictor.addPose(0, pose(10, 1, 2, 3));
+		predictor.addPose(10 * MILLIS, pose(10, 1, 2, 3));
+		assertEquals(1, predictor.getPoseCount());
+	}
+
+	@Test
+	public void pureRotationIsNotIgnored()
+	{
+		final PosePredictor predictor = new PosePredictor();
+		predictor.addPose(0, pose(0, 1, 2, 3));
+		predictor.addPose(10 * MILLIS, pose(10, 1, 2, 3));
+		assertEquals(2, predictor.getPoseCount());
+	}
+
+	@Test
+	public void olderPoseIsIgnored()
+	{
+		final PosePredictor predictor = new PosePredictor();
+		predictor.addPose(10 * MILLIS, pose(0, 1, 0, 0));
+		predictor.addPose(10 * MILLIS, pose(0, 2, 0, 0));
+		predictor.addPose(5 * MILLIS, pose(0, 3, 0, 0));
+		assertEquals(1, predictor.getPoseCount());
+	}
+
+	@Test
+	public void slerpInterpolates()
+	{
+		final float[] a = quaternionZ(0);
+		final float[] b = quaternionZ(90);
+		final float[] result = new float[4];
+
+		PosePredictor.slerp(a, 0, b, 0, 0.5f, result);
+		final float[] expected = quaternionZ(45);
+		for (int i = 0; i < 4; ++i)
+			assertEquals(expected[i], result[i], EPSILON);
+	}
+
+	@Test
+	public void slerpExtrapolates()
+	{
+		final float[] a = quaternionZ(10);
+		final float[] b = quaternionZ(40);
+		final float[] result = new float[4];
+
+		PosePredictor.slerp(a, 0, b, 0, 2, result);
+		final float[] expected = quaternionZ(70);
+		for (int i = 0; i < 4; ++i)
+			assertEquals(expected[i], result[i], EPSILON);
+	}
+
+	@Test
+	public void slerpOfNearlyIdenticalRotationsIsNormalized()
+	{
+		final float[] a = quaternionZ(1);
+		final float[] b = quaternionZ(1.5f);
+		final float[] result = new float[4];
+
+		PosePredictor.slerp(a, 0, b, 0, 3, result);
+		final float length = (float)Math.sqrt(result[0] * result[0] + result[1] * result[1] +
+			result[2] * result[2] + result[3] * result[3]);
+		assertEquals(1, length, EPSILON);
+		assertEquals(quaternionZ(2.5f)[2], result[2], EPSILON);
+	}
+
+	@Test
+	public void quaternionRoundTrip()
+	{
+		final float[] matrix = pose(123, 0, 0, 0);
+		final float[] q = new float[4];
+		PosePredictor.matrixToQuaternion(matrix, q, 0);
+
+		final float[] result = pose(0, 0, 0, 0);
+		PosePredictor.quaternionToMatrix(q, result);
+		assertPose(123, 0, 0, 0, result);
+	}
+}